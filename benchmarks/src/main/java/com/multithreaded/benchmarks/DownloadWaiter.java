@@ -0,0 +1,65 @@
+package com.multithreaded.benchmarks;
+
+import com.multithreaded.downloader.DownloadListener;
+
+import java.io.File;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Blocks a benchmark until a batch of downloads has ended.
+ * <p>
+ * A failed or stopped download fails the whole benchmark, so a broken download path
+ * never shows up as a fast one.
+ * </p>
+ */
+final class DownloadWaiter implements DownloadListener {
+
+    private static final long TIMEOUT_SECONDS = 300;
+
+    private volatile CountDownLatch remaining = new CountDownLatch(0);
+    private volatile String failure;
+
+    /**
+     * Prepares for a batch; must be called before the downloads are added.
+     *
+     * @param downloads The number of downloads in the batch
+     */
+    void expect(int downloads) {
+        failure = null;
+        remaining = new CountDownLatch(downloads);
+    }
+
+    /**
+     * Waits until every download of the batch has ended.
+     *
+     * @throws IllegalStateException If a download failed or was stopped
+     */
+    void await() throws InterruptedException, TimeoutException {
+        if (!remaining.await(TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException(remaining.getCount() + " downloads still running");
+        }
+        if (failure != null) {
+            throw new IllegalStateException(failure);
+        }
+    }
+
+    @Override
+    public void onCompleted(String url, File file) {
+        remaining.countDown();
+    }
+
+    @Override
+    public void onFailed(String url, String reason) {
+        failure = url + ": " + reason;
+        remaining.countDown();
+    }
+
+    @Override
+    public void onStopped(String url) {
+        failure = url + ": stopped";
+        remaining.countDown();
+    }
+}
@@ -0,0 +1,124 @@
+package com.multithreaded.benchmarks;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * An in-process HTTP server that serves synthetic files over the loopback interface.
+ * <p>
+ * The size of a file is part of its path, {@code /<size>/<name>}, so one server can
+ * serve files of any size without storing them. Content is a fixed 64 KB pattern
+ * repeated over the whole file, written straight from a shared array, so the server
+ * costs as little CPU and allocation as possible next to the client under test.
+ * </p>
+ * <p>
+ * Range support and a per-request latency (before the response headers, like a
+ * round trip to a distant server) are fixed per instance.
+ * </p>
+ */
+public final class LoopbackServer implements AutoCloseable {
+
+    private static final int BLOCK_SIZE = 64 * 1024;
+    private static final byte[] BLOCK = new byte[BLOCK_SIZE];      // Repeating file content
+
+    static {
+        // Without TCP_NODELAY every small response waits for a delayed ACK, which would
+        // make the fixture, not the client, the bottleneck of small-file benchmarks
+        System.setProperty("sun.net.httpserver.nodelay", "true");
+        for (int i = 0; i < BLOCK_SIZE; i++) {
+            BLOCK[i] = (byte) (i * 31 % 251);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean rangesSupported;
+    private final long latencyMillis;
+
+    /**
+     * Starts a server on an ephemeral loopback port.
+     *
+     * @param rangesSupported Whether {@code Range} requests are answered with {@code 206 Partial Content}
+     * @param latencyMillis   How long every request waits before the response headers are sent
+     * @throws IOException If the server cannot be bound
+     */
+    public LoopbackServer(boolean rangesSupported, long latencyMillis) throws IOException {
+        this.rangesSupported = rangesSupported;
+        this.latencyMillis = latencyMillis;
+        // Platform threads, so the server does not compete with the client's virtual threads for carriers
+        this.executor = Executors.newCachedThreadPool();
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+        server.setExecutor(executor);
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    /**
+     * Returns the URL of a synthetic file.
+     *
+     * @param name The file name, which becomes the name of the downloaded file
+     * @param size The size of the file in bytes
+     * @return The URL to download
+     */
+    public String url(String name, long size) {
+        return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort()
+                + "/" + size + "/" + name;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            long size = Long.parseLong(path[1]);
+            long start = 0;
+            long end = size - 1;
+            int status = 200;
+
+            String range = exchange.getRequestHeaders().getFirst("Range");
+            if (rangesSupported) {
+                exchange.getResponseHeaders().add("Accept-Ranges", "bytes");
+                if (range != null && range.startsWith("bytes=")) {
+                    String[] bounds = range.substring(6).split("-", 2);
+                    start = Long.parseLong(bounds[0]);
+                    if (!bounds[1].isEmpty()) end = Math.min(end, Long.parseLong(bounds[1]));
+                    status = 206;
+                    exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + size);
+                }
+            }
+            exchange.getResponseHeaders().add("ETag", "\"" + size + "\"");
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            exchange.sendResponseHeaders(status, end - start + 1);
+            OutputStream body = exchange.getResponseBody();
+            long position = start;
+            while (position <= end) {
+                int offset = (int) (position % BLOCK_SIZE);
+                int length = (int) Math.min(BLOCK_SIZE - offset, end - position + 1);
+                body.write(BLOCK, offset, length);
+                position += length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException | RuntimeException e) {
+            // The client went away, e.g. a benchmark iteration ended; nothing to clean up
+        }
+    }
+}
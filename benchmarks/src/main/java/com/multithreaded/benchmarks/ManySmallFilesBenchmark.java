@@ -0,0 +1,89 @@
+package com.multithreaded.benchmarks;
+
+import com.multithreaded.downloader.DownloadManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of downloading a batch of small files at once.
+ * <p>
+ * One operation adds the whole batch and waits for every file, so the result is
+ * dominated by per-download overhead: scheduling, the range probe, connection reuse
+ * and file creation, rather than by the copy loop.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ManySmallFilesBenchmark {
+
+    @Param({"256"})
+    public int fileCount;
+
+    @Param({"65536"})
+    public long fileSize;
+
+    @Param({"true"})
+    public boolean ranges;
+
+    @Param({"0", "20"})
+    public long latencyMillis;
+
+    private LoopbackServer server;
+    private DownloadManager downloadManager;
+    private DownloadWaiter waiter;
+    private Path downloadDir;
+    private String[] urls;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LoopbackServer(ranges, latencyMillis);
+        downloadDir = Files.createTempDirectory("download-bench");
+        waiter = new DownloadWaiter();
+        downloadManager = new DownloadManager();
+        downloadManager.addListener(waiter);
+        urls = new String[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            urls[i] = server.url("file-" + i + ".bin", fileSize);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        downloadManager.stopAllDownloads();
+        server.close();
+        BenchmarkFiles.deleteRecursively(downloadDir);
+    }
+
+    @Benchmark
+    public void downloadBatch(TransferCounters counters) throws Exception {
+        waiter.expect(fileCount);
+        for (String url : urls) {
+            downloadManager.addDownload(url, downloadDir.toString());
+        }
+        waiter.await();
+        counters.record(fileCount * fileSize);
+    }
+}
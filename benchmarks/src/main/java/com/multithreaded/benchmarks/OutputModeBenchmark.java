@@ -0,0 +1,86 @@
+package com.multithreaded.benchmarks;
+
+import com.multithreaded.downloader.DownloadManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Segmented download of a multi-GB file, written through channel writes or through
+ * memory-mapped windows.
+ * <p>
+ * Compare {@code cpuNanos / bytes} between the two modes: the transfer rate over
+ * loopback is usually bounded by the server, while the CPU cost per byte shows what the
+ * write path itself costs. Each operation downloads the whole file, so iterations are
+ * long enough for several downloads.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 20)
+@Measurement(iterations = 5, time = 30)
+@Fork(1)
+@State(Scope.Benchmark)
+public class OutputModeBenchmark {
+
+    @Param({"4294967296"})
+    public long fileSize;
+
+    @Param({"8"})
+    public int segments;
+
+    @Param({"false", "true"})
+    public boolean memoryMapped;
+
+    private LoopbackServer server;
+    private DownloadManager downloadManager;
+    private DownloadWaiter waiter;
+    private Path downloadDir;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LoopbackServer(true, 0);
+        downloadDir = Files.createTempDirectory("download-bench");
+        waiter = new DownloadWaiter();
+        downloadManager = new DownloadManager();
+        downloadManager.setSegmentsPerFile(segments);
+        downloadManager.setAdaptiveSegments(false);             // Measure exactly the segments asked for
+        downloadManager.setMemoryMappedOutput(memoryMapped);
+        downloadManager.addListener(waiter);
+        url = server.url("file.bin", fileSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        downloadManager.stopAllDownloads();
+        server.close();
+        BenchmarkFiles.deleteRecursively(downloadDir);
+    }
+
+    @Benchmark
+    public void download(TransferCounters counters) throws Exception {
+        waiter.expect(1);
+        downloadManager.addDownload(url, downloadDir.toString());
+        waiter.await();
+        counters.record(fileSize);
+    }
+}
@@ -0,0 +1,86 @@
+package com.multithreaded.benchmarks;
+
+import com.multithreaded.downloader.DownloadManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of downloading one large file, segmented or over a single connection.
+ * <p>
+ * One operation is one complete download into a temporary directory, including the
+ * range probe, preallocation and journaling. Adaptive splitting is turned off, so
+ * {@code segments} is the number of connections for the whole download.
+ * </p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SingleFileBenchmark {
+
+    @Param({"268435456"})
+    public long fileSize;
+
+    @Param({"1", "4"})
+    public int segments;
+
+    @Param({"true"})
+    public boolean ranges;
+
+    @Param({"0"})
+    public long latencyMillis;
+
+    private LoopbackServer server;
+    private DownloadManager downloadManager;
+    private DownloadWaiter waiter;
+    private Path downloadDir;
+    private String url;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new LoopbackServer(ranges, latencyMillis);
+        downloadDir = Files.createTempDirectory("download-bench");
+        waiter = new DownloadWaiter();
+        downloadManager = new DownloadManager();
+        downloadManager.setSegmentsPerFile(segments);
+        downloadManager.setAdaptiveSegments(false);             // Measure exactly the segments asked for
+        downloadManager.addListener(waiter);
+        url = server.url("file.bin", fileSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        downloadManager.stopAllDownloads();
+        server.close();
+        BenchmarkFiles.deleteRecursively(downloadDir);
+    }
+
+    @Benchmark
+    public void download(TransferCounters counters) throws Exception {
+        waiter.expect(1);
+        downloadManager.addDownload(url, downloadDir.toString());
+        waiter.await();
+        counters.record(fileSize);
+    }
+}
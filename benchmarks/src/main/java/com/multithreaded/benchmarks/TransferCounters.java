@@ -0,0 +1,49 @@
+package com.multithreaded.benchmarks;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Secondary results reported next to the download rate of every benchmark.
+ * <p>
+ * Both counters are reported per second: {@code bytes} is the payload throughput and
+ * {@code cpuNanos} the CPU time the whole process used, so
+ * {@code cpuNanos / bytes * 2^30} is the CPU cost of one GB. The in-process server is
+ * included in that cost; it stays the same between commits, so results remain comparable.
+ * </p>
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class TransferCounters {
+
+    private static final com.sun.management.OperatingSystemMXBean OS =
+            (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+
+    public long bytes;
+    public long cpuNanos;
+    private long cpuStart;
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        bytes = 0;
+        cpuNanos = 0;
+        cpuStart = OS.getProcessCpuTime();
+    }
+
+    /**
+     * Records a finished operation.
+     *
+     * @param transferred The number of payload bytes the operation downloaded
+     */
+    void record(long transferred) {
+        bytes += transferred;
+        long now = OS.getProcessCpuTime();
+        cpuNanos += now - cpuStart;
+        cpuStart = now;
+    }
+}
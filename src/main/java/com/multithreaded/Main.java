@@ -1,9 +1,18 @@
 package com.multithreaded;
 
+import com.multithreaded.downloaderCLI.HeadlessDownloader;
+import com.multithreaded.downloaderLog.LogRing;
+import com.multithreaded.downloaderLog.RotatingLogFile;
 import com.multithreaded.downloaderUI.MainApp;
 
 import javax.swing.SwingUtilities;
 
+import java.io.IOException;
+
+import java.nio.file.Path;
+
+import java.util.Arrays;
+
 /**
  * The entry point of the Multithreaded Downloader application.
  * <p>
@@ -11,15 +20,47 @@ import javax.swing.SwingUtilities;
  * Event Dispatch Thread (EDT) using {@link SwingUtilities#invokeLater}.
  * Running the GUI on the EDT ensures thread safety and responsiveness.
  * </p>
+ * <p>
+ * When started with {@code --headless} as the first argument, the remaining arguments are
+ * handed to {@link HeadlessDownloader} instead and no GUI classes are loaded.
+ * </p>
+ * <p>
+ * The GUI also copies its log to {@code ~/.download-manager/logs/download-manager.log},
+ * rotated at 10 MB; the {@code downloader.log.file} system property picks another file.
+ * </p>
  */
 public class Main {
 
+    private static final String LOG_FILE_PROPERTY = "downloader.log.file";
+
     /**
      * The main method that starts the application.
      *
-     * @param args Command-line arguments (not used in this application)
+     * @param args Command-line arguments; {@code --headless} followed by batch options runs without a GUI
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            HeadlessDownloader.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        startLogFile();
         SwingUtilities.invokeLater(MainApp::new);
     }
+
+    /**
+     * Starts copying the log to its file and closes the file when the JVM exits.
+     * Without a log file the GUI still works and shows the log in its console.
+     */
+    private static void startLogFile() {
+        Path file = System.getProperty(LOG_FILE_PROPERTY) != null
+                ? Path.of(System.getProperty(LOG_FILE_PROPERTY))
+                : Path.of(System.getProperty("user.home"), ".download-manager", "logs", "download-manager.log");
+        try {
+            RotatingLogFile logFile = RotatingLogFile.start(LogRing.shared(), file,
+                    RotatingLogFile.DEFAULT_MAX_BYTES, RotatingLogFile.DEFAULT_BACKUPS);
+            Runtime.getRuntime().addShutdownHook(new Thread(logFile::close, "log-writer-shutdown"));
+        } catch (IOException e) {
+            System.err.println("Cannot open log file " + file + ": " + e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,138 @@
+package com.multithreaded.downloader;
+
+import java.io.InterruptedIOException;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A token bucket that paces byte transfers to a configurable rate.
+ * <p>
+ * Every transferred byte costs one token, and tokens are refilled continuously at
+ * the configured rate. The bucket only holds {@value #BURST_MILLIS} ms worth of
+ * tokens, so an idle connection cannot save up a large burst. A caller that takes
+ * more tokens than are available leaves the bucket in debt and is parked until the
+ * debt is paid off, which spreads the transfer evenly over time instead of sleeping
+ * and then bursting. Because later callers inherit the debt, one limiter shared by
+ * many connections caps their combined rate.
+ * </p>
+ * <p>
+ * The rate can be changed at any time; waiting callers pick up the new rate the
+ * next time they reserve tokens.
+ * </p>
+ * <p>
+ * Without a limit, which is the default, reserving is a single volatile read: every
+ * read of every connection passes through the global limiter, so it must not become
+ * a lock they all contend for.
+ * </p>
+ */
+public class BandwidthLimiter {
+
+    private static final long BURST_MILLIS = 100;              // Largest burst an idle bucket allows
+    private static final long MIN_BURST_BYTES = 16 * 1024;     // Enough for a few socket reads
+
+    private volatile long bytesPerSecond;
+    private double tokens;                  // Guarded by this
+    private long lastRefillNanos;           // Guarded by this
+
+    /**
+     * Creates a limiter with the given rate.
+     *
+     * @param bytesPerSecond The maximum rate in bytes per second, or {@code 0} for no limit
+     */
+    public BandwidthLimiter(long bytesPerSecond) {
+        this.bytesPerSecond = Math.max(0, bytesPerSecond);
+        this.lastRefillNanos = System.nanoTime();
+    }
+
+    /**
+     * Changes the rate without interrupting transfers that use this limiter.
+     *
+     * @param bytesPerSecond The maximum rate in bytes per second, or {@code 0} for no limit
+     */
+    public synchronized void setRate(long bytesPerSecond) {
+        long rate = Math.max(0, bytesPerSecond);
+        if (rate == 0 || this.bytesPerSecond == 0) {
+            // Unlimited transfers do not touch the bucket, so start it afresh
+            tokens = 0;
+            lastRefillNanos = System.nanoTime();
+        }
+        this.bytesPerSecond = rate;
+    }
+
+    /**
+     * Returns the current rate.
+     *
+     * @return The maximum rate in bytes per second, or {@code 0} if unlimited
+     */
+    public long getRate() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Takes tokens for the given number of bytes and returns how long the caller must wait.
+     *
+     * @param bytes The number of bytes about to be (or just) transferred
+     * @return The pacing delay in nanoseconds, {@code 0} if the bytes may pass immediately
+     */
+    long reserve(int bytes) {
+        if (bytesPerSecond <= 0) return 0;
+
+        synchronized (this) {
+            long rate = bytesPerSecond;
+            if (rate <= 0) return 0;         // Lifted meanwhile
+
+            long now = System.nanoTime();
+            double capacity = Math.max(MIN_BURST_BYTES, rate * BURST_MILLIS / 1000.0);
+            tokens = Math.min(capacity, tokens + (now - lastRefillNanos) * rate / 1e9);
+            lastRefillNanos = now;
+
+            tokens -= bytes;
+            return tokens >= 0 ? 0 : (long) (-tokens * 1e9 / rate);
+        }
+    }
+
+    /**
+     * Charges the given bytes against both limiters and waits until both of them allow it.
+     * <p>
+     * Tokens are reserved from both limiters up front and the caller waits for the
+     * longer delay, so a per-download limit and a global limit are enforced together
+     * without adding their delays up.
+     * </p>
+     *
+     * @param bytes         The number of bytes transferred
+     * @param downloadLimit The limiter of the download, may be {@code null}
+     * @param globalLimit   The limiter shared by all downloads, may be {@code null}
+     * @throws InterruptedIOException If the thread is interrupted while waiting
+     */
+    public static void acquire(int bytes, BandwidthLimiter downloadLimit, BandwidthLimiter globalLimit)
+            throws InterruptedIOException {
+        long delay = 0;
+        if (downloadLimit != null) {
+            delay = downloadLimit.reserve(bytes);
+        }
+        if (globalLimit != null) {
+            delay = Math.max(delay, globalLimit.reserve(bytes));
+        }
+        if (delay <= 0) return;
+
+        long deadline = System.nanoTime() + delay;
+        long remaining = delay;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Download stopped");
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Converts a limit in KB/s, as entered in the settings, to bytes per second.
+     *
+     * @param kilobytesPerSecond The limit in KB/s, {@code 0} or less for no limit
+     * @return The limit in bytes per second
+     */
+    public static long fromKilobytes(long kilobytesPerSecond) {
+        return Math.max(0, kilobytesPerSecond) * 1024;
+    }
+}
@@ -0,0 +1,109 @@
+package com.multithreaded.downloader;
+
+import java.nio.ByteBuffer;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A shared, bounded pool of transfer buffers in power-of-two size classes from
+ * {@value #MIN_BUFFER_SIZE} to {@value #MAX_BUFFER_SIZE} bytes.
+ * <p>
+ * A transfer takes a buffer when its request starts and returns it when the request
+ * ends, so thousands of short requests reuse the same few buffers instead of each
+ * allocating its own. Idle buffers are kept in fixed-size array queues, one per class,
+ * which never allocate; once a class has as many idle buffers as its share of the
+ * pool's budget, returned buffers are left to the garbage collector.
+ * </p>
+ * <p>
+ * The buffers are heap buffers: both transports hand out the response body as an
+ * {@link java.io.InputStream}, which can only read into an array, and the JDK writes a
+ * heap buffer to a file through a direct buffer it caches per carrier thread.
+ * </p>
+ */
+class BufferPool {
+
+    static final int MIN_BUFFER_SIZE = 16 * 1024;
+    static final int MAX_BUFFER_SIZE = 256 * 1024;
+
+    private static final int CLASSES = Integer.numberOfTrailingZeros(MAX_BUFFER_SIZE / MIN_BUFFER_SIZE) + 1;
+
+    private final ArrayBlockingQueue<ByteBuffer>[] idle;
+    private final long maxPooledBytes;
+    private final AtomicLong pooledBytes = new AtomicLong();
+    private final AtomicInteger buffersInUse = new AtomicInteger();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates an empty pool.
+     *
+     * @param maxPooledBytes The most memory idle buffers may hold, split evenly between the size classes
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    BufferPool(long maxPooledBytes) {
+        this.maxPooledBytes = maxPooledBytes;
+        idle = new ArrayBlockingQueue[CLASSES];
+        for (int i = 0; i < CLASSES; i++) {
+            long buffers = maxPooledBytes / CLASSES / sizeOf(i);
+            idle[i] = new ArrayBlockingQueue<>((int) Math.max(1, Math.min(Integer.MAX_VALUE, buffers)));
+        }
+    }
+
+    /**
+     * Returns the size class that best fits the given number of bytes.
+     *
+     * @param bytes The number of bytes wanted per buffer
+     * @return The smallest class size not below {@code bytes}, within the limits of the pool
+     */
+    static int sizeFor(long bytes) {
+        if (bytes <= MIN_BUFFER_SIZE) return MIN_BUFFER_SIZE;
+        if (bytes >= MAX_BUFFER_SIZE) return MAX_BUFFER_SIZE;
+        return Integer.highestOneBit((int) bytes - 1) << 1;
+    }
+
+    /**
+     * Takes a buffer of the given size class out of the pool, or allocates one.
+     *
+     * @param size A size returned by {@link #sizeFor(long)}
+     * @return A cleared buffer with a backing array
+     */
+    ByteBuffer acquire(int size) {
+        buffersInUse.incrementAndGet();
+        ByteBuffer buffer = idle[classOf(size)].poll();
+        if (buffer == null) {
+            misses.increment();
+            return ByteBuffer.allocate(size);
+        }
+        hits.increment();
+        pooledBytes.addAndGet(-size);
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a buffer taken with {@link #acquire(int)}. The caller must not use it afterwards.
+     */
+    void release(ByteBuffer buffer) {
+        buffersInUse.decrementAndGet();
+        if (idle[classOf(buffer.capacity())].offer(buffer)) {
+            pooledBytes.addAndGet(buffer.capacity());
+        }
+    }
+
+    /**
+     * Returns the current occupancy and the hit and miss counts since the pool was created.
+     */
+    BufferPoolStats stats() {
+        return new BufferPoolStats(buffersInUse.get(), pooledBytes.get(), maxPooledBytes, hits.sum(), misses.sum());
+    }
+
+    private static int classOf(int size) {
+        return Integer.numberOfTrailingZeros(size / MIN_BUFFER_SIZE);
+    }
+
+    private static int sizeOf(int sizeClass) {
+        return MIN_BUFFER_SIZE << sizeClass;
+    }
+}
@@ -0,0 +1,13 @@
+package com.multithreaded.downloader;
+
+/**
+ * A snapshot of the transfer buffer pool shared by all downloads.
+ *
+ * @param buffersInUse   The number of buffers held by running transfers
+ * @param pooledBytes    The memory held by idle buffers waiting to be reused
+ * @param maxPooledBytes The most memory idle buffers may hold
+ * @param hits           How many buffers were reused since the manager was created
+ * @param misses         How many buffers had to be allocated since the manager was created
+ */
+public record BufferPoolStats(int buffersInUse, long pooledBytes, long maxPooledBytes, long hits, long misses) {
+}
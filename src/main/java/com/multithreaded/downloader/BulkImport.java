@@ -0,0 +1,329 @@
+package com.multithreaded.downloader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.charset.StandardCharsets;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Queues the downloads listed in a manifest, reading it only as fast as they are taken on.
+ * <p>
+ * Each non-blank line not starting with {@code #} holds a URL, optionally followed by
+ * mirrors of the same file and its expected checksum, e.g. {@code URL MIRROR sha256:HEX}.
+ * Lines are read one at a time on a virtual thread. At most {@code window} downloads of
+ * the import are queued or running at once; when the window is full, reading waits for
+ * one of them to end. A manifest of any length therefore keeps only the window in the
+ * scheduler, and the first download starts as soon as its line has been read.
+ * </p>
+ * <p>
+ * Repeated URLs are skipped. To stay small, the import remembers a 64-bit fingerprint of
+ * each URL rather than the URL itself, about 16 bytes per distinct URL; two different
+ * URLs sharing a fingerprint is too unlikely to matter even for millions of lines.
+ * Mirrors and checksums set from the manifest are removed again once their download ends.
+ * </p>
+ *
+ * @see DownloadManager#importUrls(Iterator, String, String)
+ */
+public final class BulkImport {
+
+    public static final int DEFAULT_WINDOW = 1024;
+
+    private final DownloadManager downloadManager;
+    private final String source;                                     // Named in messages
+    private final String downloadDir;
+    private final Semaphore window;
+    private final ConcurrentHashMap<String, Boolean> inFlight = new ConcurrentHashMap<>();   // Value: whether the line set mirrors or a checksum
+    private final FingerprintSet seen = new FingerprintSet();        // Only touched by the reading thread
+    private final CountDownLatch done = new CountDownLatch(1);
+    private final LongAdder queued = new LongAdder();
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final DownloadListener listener = new ImportListener();
+    private volatile boolean readingDone;
+    private volatile boolean cancelled;
+    private volatile IOException readError;
+    private Thread reader;
+
+    BulkImport(DownloadManager downloadManager, String source, String downloadDir, int window) {
+        this.downloadManager = downloadManager;
+        this.source = source;
+        this.downloadDir = downloadDir;
+        this.window = new Semaphore(Math.max(1, window));
+    }
+
+    /**
+     * Returns the lines of a reader one at a time, closing it once they run out.
+     * Reading errors surface as {@link UncheckedIOException} from the iterator.
+     *
+     * @param reader The manifest
+     * @return A lazy iterator over its lines
+     */
+    public static Iterator<String> lines(BufferedReader reader) {
+        Iterator<String> lines = reader.lines().iterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                if (lines.hasNext()) return true;
+                try {
+                    reader.close();
+                } catch (IOException ignored) {
+                }
+                return false;
+            }
+
+            @Override
+            public String next() {
+                return lines.next();
+            }
+        };
+    }
+
+    /**
+     * Starts reading the lines on a new virtual thread.
+     */
+    void start(Iterator<String> lines) {
+        downloadManager.addListener(listener);
+        reader = Thread.ofVirtual().name("bulk-import").start(() -> run(lines));
+    }
+
+    /**
+     * Stops reading the manifest. Downloads already queued by the import are left alone.
+     */
+    public void cancel() {
+        cancelled = true;
+        if (reader != null) reader.interrupt();
+    }
+
+    /**
+     * Waits until the manifest has been read and every download queued from it has ended.
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting
+     */
+    public void await() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Returns whether the manifest has been read and every download queued from it has ended.
+     */
+    public boolean isDone() {
+        return done.getCount() == 0;
+    }
+
+    /**
+     * Returns the number of downloads queued so far.
+     */
+    public long getQueuedCount() {
+        return queued.sum();
+    }
+
+    /**
+     * Returns the number of downloads queued by the import that have not ended yet.
+     */
+    public int getInFlightCount() {
+        return inFlight.size();
+    }
+
+    /**
+     * Returns the number of lines skipped because their URL was listed before or already downloading.
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Returns the number of lines skipped because they could not be parsed.
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Returns the error that ended reading the manifest early.
+     *
+     * @return The error, or {@code null} if the manifest was read to its end or cancelled
+     */
+    public IOException getReadError() {
+        return readError;
+    }
+
+    private void run(Iterator<String> lines) {
+        long lineNumber = 0;
+        try {
+            while (!cancelled && lines.hasNext()) {
+                lineNumber++;
+                String line = lines.next().trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                try {
+                    submit(line.split("\\s+"));
+                } catch (IllegalArgumentException e) {
+                    rejected.increment();
+                    message(null, "Skipping line " + lineNumber + " of " + source + ": " + e.getMessage());
+                }
+            }
+        } catch (InterruptedException e) {
+            // Cancelled while waiting for the window
+        } catch (UncheckedIOException e) {
+            readError = e.getCause();
+            message(null, "Cannot read " + source + ": " + e.getCause().getMessage());
+        } finally {
+            message(null, "Imported " + queued.sum() + " URLs from " + source + " ("
+                    + duplicates.sum() + " duplicates, " + rejected.sum() + " invalid lines)");
+            readingDone = true;
+            finishIfIdle();
+        }
+    }
+
+    /**
+     * Queues the download of one manifest line, waiting for room in the window first.
+     *
+     * @throws IllegalArgumentException If the URL or the checksum is malformed
+     */
+    private void submit(String[] fields) throws InterruptedException {
+        String url = fields[0];
+        if (!url.contains("://")) {
+            throw new IllegalArgumentException("Not a URL: " + url);
+        }
+        List<String> mirrors = new ArrayList<>();
+        ExpectedChecksum checksum = null;
+        for (int i = 1; i < fields.length; i++) {
+            if (fields[i].contains("://")) {
+                mirrors.add(fields[i]);
+            } else {
+                checksum = ExpectedChecksum.parse(fields[i]);
+            }
+        }
+        if (!seen.add(fingerprint(url)) || downloadManager.contains(url)) {
+            duplicates.increment();
+            return;
+        }
+
+        window.acquire();
+        boolean settings = !mirrors.isEmpty() || checksum != null;
+        inFlight.put(url, settings);
+        if (settings) {
+            downloadManager.setMirrors(url, mirrors);
+            downloadManager.setExpectedChecksum(url, checksum);
+        }
+        if (downloadManager.enqueue(url, downloadDir, DownloadPriority.NORMAL)) {
+            queued.increment();
+        } else {
+            duplicates.increment();
+            release(url);
+        }
+    }
+
+    /**
+     * Frees the window slot of a download the import queued, once it has ended.
+     */
+    private void release(String url) {
+        Boolean settings = inFlight.remove(url);
+        if (settings == null) return;
+
+        if (settings) {
+            downloadManager.setMirrors(url, null);
+            downloadManager.setExpectedChecksum(url, null);
+        }
+        window.release();
+        finishIfIdle();
+    }
+
+    private void finishIfIdle() {
+        if (readingDone && inFlight.isEmpty() && done.getCount() > 0) {
+            downloadManager.removeListener(listener);
+            downloadManager.forgetImport(this);
+            done.countDown();
+        }
+    }
+
+    private void message(String url, String message) {
+        downloadManager.notifyMessage(url, message);
+    }
+
+    /**
+     * Hashes a URL to 64 bits with FNV-1a over its UTF-8 bytes, followed by a final mix.
+     */
+    private static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+
+    /**
+     * Ends the window slot of a download when the manager reports its end.
+     */
+    private class ImportListener implements DownloadListener {
+
+        @Override
+        public void onCompleted(String url, File file) {
+            release(url);
+        }
+
+        @Override
+        public void onFailed(String url, String reason) {
+            release(url);
+        }
+
+        @Override
+        public void onStopped(String url) {
+            release(url);
+        }
+    }
+
+    /**
+     * An open-addressing hash set of 64-bit fingerprints, kept at most half full.
+     */
+    private static final class FingerprintSet {
+
+        private long[] table = new long[1024];
+        private int size;
+
+        /**
+         * Adds a fingerprint.
+         *
+         * @return {@code false} if it was already present
+         */
+        boolean add(long fingerprint) {
+            long key = fingerprint == 0 ? 1 : fingerprint;      // 0 marks an empty slot
+            int mask = table.length - 1;
+            int i = (int) key & mask;
+            while (table[i] != 0) {
+                if (table[i] == key) return false;
+                i = (i + 1) & mask;
+            }
+            table[i] = key;
+            if (++size * 2 > table.length) {
+                grow();
+            }
+            return true;
+        }
+
+        private void grow() {
+            long[] old = table;
+            table = new long[old.length * 2];
+            int mask = table.length - 1;
+            for (long key : old) {
+                if (key == 0) continue;
+                int i = (int) key & mask;
+                while (table[i] != 0) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = key;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.multithreaded.downloader;
+
+/**
+ * A checksum a download can be verified against while it is being written.
+ */
+public enum ChecksumAlgorithm {
+    SHA_256("SHA-256", 64),
+    SHA_1("SHA-1", 40),
+    MD5("MD5", 32),
+    CRC32C("CRC32C", 8);
+
+    private final String displayName;
+    private final int hexLength;        // Number of hex digits of a value
+
+    ChecksumAlgorithm(String displayName, int hexLength) {
+        this.displayName = displayName;
+        this.hexLength = hexLength;
+    }
+
+    /**
+     * Returns how many hex digits a checksum of this algorithm has.
+     */
+    public int getHexLength() {
+        return hexLength;
+    }
+
+    /**
+     * Returns whether checksums of separate byte ranges can be combined into the
+     * checksum of the whole file.
+     * <p>
+     * Only then can a segmented download be verified without reading the file back;
+     * message digests have to see the bytes in file order.
+     * </p>
+     *
+     * @return {@code true} for {@link #CRC32C}
+     */
+    public boolean isCombinable() {
+        return this == CRC32C;
+    }
+
+    /**
+     * Returns the algorithm for a name such as {@code sha256}, {@code SHA-256} or {@code crc32c}.
+     *
+     * @param name The name, case and dashes do not matter
+     * @return The algorithm
+     * @throws IllegalArgumentException If the name is not a supported algorithm
+     */
+    public static ChecksumAlgorithm fromName(String name) {
+        String normalized = name.replace("-", "").replace("_", "");
+        for (ChecksumAlgorithm algorithm : values()) {
+            if (algorithm.name().replace("_", "").equalsIgnoreCase(normalized)) {
+                return algorithm;
+            }
+        }
+        throw new IllegalArgumentException("Unsupported checksum algorithm: " + name);
+    }
+
+    @Override
+    public String toString() {
+        return displayName;
+    }
+}
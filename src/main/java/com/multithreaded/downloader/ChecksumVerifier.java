@@ -0,0 +1,241 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * Computes the checksum of a download from the bytes as they are written.
+ * <p>
+ * Every segment gets its own hasher, fed by the segment's transfer loop, so segments
+ * never contend on a shared digest. For {@link ChecksumAlgorithm#CRC32C} the checksums
+ * of the segments are combined into the checksum of the whole file at the end, which
+ * works for any number of segments. Message digests cannot be combined, so downloads
+ * verified with one are fetched as a single segment.
+ * </p>
+ * <p>
+ * The only bytes ever read back from disk are those an earlier, resumed run already
+ * wrote, since the state of a hash cannot be journaled.
+ * </p>
+ */
+class ChecksumVerifier {
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Receives the bytes of one segment in order.
+     */
+    interface SegmentHasher {
+        void update(byte[] bytes, int offset, int length);
+    }
+
+    private record CrcHasher(CRC32C crc) implements SegmentHasher {
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            crc.update(bytes, offset, length);
+        }
+    }
+
+    private record DigestHasher(MessageDigest digest) implements SegmentHasher {
+        @Override
+        public void update(byte[] bytes, int offset, int length) {
+            digest.update(bytes, offset, length);
+        }
+    }
+
+    private final ExpectedChecksum expected;
+    private final Map<Segment, SegmentHasher> hashers = new IdentityHashMap<>();
+    private List<Segment> segments;
+
+    private ChecksumVerifier(ExpectedChecksum expected) {
+        this.expected = expected;
+    }
+
+    /**
+     * Creates a verifier, or returns {@code null} if nothing is expected.
+     */
+    static ChecksumVerifier of(ExpectedChecksum expected) {
+        return expected != null ? new ChecksumVerifier(expected) : null;
+    }
+
+    /**
+     * Returns whether the download may be split into several segments.
+     */
+    boolean supportsSegments() {
+        return expected.algorithm().isCombinable();
+    }
+
+    /**
+     * Creates the hashers of the given segments, seeding them with the bytes an earlier
+     * run already wrote. Must be called before any segment is transferred.
+     *
+     * @param segments The segments that together cover the whole file
+     * @param file     The output file, open for reading
+     * @throws IOException If the already written bytes cannot be read
+     */
+    void prepare(List<Segment> segments, FileChannel file) throws IOException {
+        if (segments.size() > 1 && !supportsSegments()) {
+            throw new IllegalStateException(expected.algorithm() + " cannot verify a segmented download");
+        }
+        this.segments = new ArrayList<>(segments);
+        this.segments.sort(Comparator.comparingLong(Segment::getStart));
+
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        for (Segment segment : this.segments) {
+            SegmentHasher hasher = newHasher();
+            hashers.put(segment, hasher);
+
+            long position = segment.getStart();
+            while (position < segment.getPosition()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), segment.getPosition() - position));
+                int bytesRead = file.read(buffer, position);
+                if (bytesRead <= 0) {
+                    throw new IOException("Partial file is shorter than its journal");
+                }
+                hasher.update(buffer.array(), 0, bytesRead);
+                position += bytesRead;
+            }
+        }
+    }
+
+    /**
+     * Returns the hasher for the bytes of a segment. Only the segment's transfer loop may use it.
+     * <p>
+     * A segment split off a running one after {@link #prepare} gets a new hasher here, before
+     * any of its bytes are written. Only the thread coordinating the download may call this.
+     * </p>
+     */
+    SegmentHasher hasher(Segment segment) {
+        SegmentHasher hasher = hashers.get(segment);
+        if (hasher == null) {
+            if (!supportsSegments() || segment.getPosition() != segment.getStart()) {
+                throw new IllegalStateException("No checksum state for " + segment);
+            }
+            hasher = newHasher();
+            hashers.put(segment, hasher);
+            segments.add(segment);
+        }
+        return hasher;
+    }
+
+    /**
+     * Checks the checksum of the completed file.
+     *
+     * @throws IOException If the checksum does not match
+     */
+    void verify() throws IOException {
+        segments.sort(Comparator.comparingLong(Segment::getStart));
+
+        String actual;
+        if (expected.algorithm() == ChecksumAlgorithm.CRC32C) {
+            long crc = 0;
+            boolean first = true;
+            for (Segment segment : segments) {
+                long value = ((CrcHasher) hashers.get(segment)).crc().getValue();
+                crc = first ? value : Crc32cCombiner.combine(crc, value, segment.getEnd() - segment.getStart() + 1);
+                first = false;
+            }
+            actual = String.format("%08x", crc);
+        } else {
+            actual = HexFormat.of().formatHex(((DigestHasher) hashers.get(segments.get(0))).digest().digest());
+        }
+
+        if (!actual.equals(expected.value())) {
+            throw new IOException("Checksum mismatch: expected " + expected + ", got " + actual);
+        }
+    }
+
+    private SegmentHasher newHasher() {
+        if (expected.algorithm() == ChecksumAlgorithm.CRC32C) {
+            return new CrcHasher(new CRC32C());
+        }
+        try {
+            return new DigestHasher(MessageDigest.getInstance(expected.algorithm().toString()));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Combines CRC32C values of adjacent byte ranges.
+     * <p>
+     * Appending {@code n} bytes to a message is a linear operation on its CRC, so the CRC of
+     * {@code A} can be shifted over the length of {@code B} by multiplying it with a 32x32
+     * GF(2) matrix raised to the {@code n}-th power (by repeated squaring) and then be xored
+     * with the CRC of {@code B}. This is zlib's {@code crc32_combine} for the Castagnoli polynomial.
+     * </p>
+     */
+    static final class Crc32cCombiner {
+
+        private static final long POLYNOMIAL = 0x82F63B78L;    // Castagnoli, reflected
+
+        private Crc32cCombiner() {
+        }
+
+        /**
+         * Returns the CRC32C of {@code A + B}.
+         *
+         * @param crcA    The CRC32C of the first range
+         * @param crcB    The CRC32C of the second range
+         * @param lengthB The length of the second range in bytes
+         */
+        static long combine(long crcA, long crcB, long lengthB) {
+            if (lengthB <= 0) return crcA;
+
+            long[] even = new long[32];     // Operator for an even power of two zero bits
+            long[] odd = new long[32];      // Operator for an odd power of two zero bits
+
+            odd[0] = POLYNOMIAL;            // Operator for one zero bit
+            long row = 1;
+            for (int n = 1; n < 32; n++) {
+                odd[n] = row;
+                row <<= 1;
+            }
+            square(even, odd);              // Two zero bits
+            square(odd, even);              // Four zero bits
+
+            // Apply len(B) zero bytes to crcA, one bit of the length at a time
+            long crc = crcA;
+            long length = lengthB;
+            do {
+                square(even, odd);
+                if ((length & 1) != 0) crc = times(even, crc);
+                length >>= 1;
+                if (length == 0) break;
+
+                square(odd, even);
+                if ((length & 1) != 0) crc = times(odd, crc);
+                length >>= 1;
+            } while (length != 0);
+
+            return crc ^ crcB;
+        }
+
+        private static long times(long[] matrix, long vector) {
+            long sum = 0;
+            for (int i = 0; vector != 0; i++, vector >>>= 1) {
+                if ((vector & 1) != 0) sum ^= matrix[i];
+            }
+            return sum;
+        }
+
+        private static void square(long[] square, long[] matrix) {
+            for (int n = 0; n < 32; n++) {
+                square[n] = times(matrix, matrix[n]);
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.multithreaded.downloader;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Admission control for HTTP connections.
+ * <p>
+ * Downloads run on virtual threads, so the number of threads no longer limits how many
+ * connections are open at once. Instead every connection must hold a permit from a
+ * global semaphore and from a semaphore of its host. The host permit is taken first,
+ * so a download waiting for a busy host never holds a global permit that a download
+ * from another host could use.
+ * </p>
+ * <p>
+ * Both limits can be changed while connections are open. Raising a limit lets waiting
+ * connections through at once; lowering it closes nothing, it only holds back new
+ * connections until enough of the open ones have finished.
+ * </p>
+ * <p>
+ * A host is only tracked while connections to it are open or waiting, so importing
+ * URLs from many hosts does not leave a semaphore behind for each of them.
+ * </p>
+ */
+class ConnectionLimiter {
+
+    private final ResizableSemaphore connections;
+    private final ConcurrentHashMap<String, ResizableSemaphore> hostConnections;
+    private volatile int maxConnectionsPerHost;
+
+    /**
+     * Creates a limiter with the given connection limits.
+     *
+     * @param maxConnections        The maximum number of open connections overall
+     * @param maxConnectionsPerHost The maximum number of open connections to a single host
+     */
+    ConnectionLimiter(int maxConnections, int maxConnectionsPerHost) {
+        this.connections = new ResizableSemaphore(maxConnections);
+        this.hostConnections = new ConcurrentHashMap<>();
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+    }
+
+    /**
+     * Returns the number of hosts with open or waiting connections.
+     */
+    int getHostCount() {
+        return hostConnections.size();
+    }
+
+    /**
+     * Returns the maximum number of open connections to a single host.
+     */
+    int getMaxConnectionsPerHost() {
+        return maxConnectionsPerHost;
+    }
+
+    /**
+     * Changes both limits. Connections already open stay open.
+     *
+     * @param maxConnections        The maximum number of open connections overall
+     * @param maxConnectionsPerHost The maximum number of open connections to a single host
+     */
+    synchronized void setLimits(int maxConnections, int maxConnectionsPerHost) {
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        connections.resize(maxConnections);
+        for (ResizableSemaphore hostSemaphore : hostConnections.values()) {
+            hostSemaphore.resize(maxConnectionsPerHost);
+        }
+    }
+
+    /**
+     * Waits until a connection to the given host may be opened.
+     *
+     * @param host The host the connection goes to
+     * @return The permit, to be closed once the connection is closed
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    Permit acquire(String host) throws InterruptedException {
+        ResizableSemaphore hostSemaphore = hostConnections.compute(host, (key, semaphore) -> {
+            if (semaphore == null) semaphore = new ResizableSemaphore(maxConnectionsPerHost);
+            semaphore.users++;
+            return semaphore;
+        });
+        hostSemaphore.resize(maxConnectionsPerHost);       // Created with a limit that changed meanwhile
+
+        try {
+            hostSemaphore.acquire();
+        } catch (InterruptedException e) {
+            leave(host);
+            throw e;
+        }
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            hostSemaphore.release();
+            leave(host);
+            throw e;
+        }
+        return new Permit(host, hostSemaphore);
+    }
+
+    /**
+     * Stops tracking a host once nobody holds or waits for one of its permits.
+     */
+    private void leave(String host) {
+        hostConnections.computeIfPresent(host, (key, semaphore) -> --semaphore.users == 0 ? null : semaphore);
+    }
+
+    /**
+     * The right to keep one connection open. Closing it more than once has no effect.
+     */
+    final class Permit implements AutoCloseable {
+
+        private final String host;
+        private final ResizableSemaphore hostSemaphore;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(String host, ResizableSemaphore hostSemaphore) {
+            this.host = host;
+            this.hostSemaphore = hostSemaphore;
+        }
+
+        @Override
+        public void close() {
+            if (released.compareAndSet(false, true)) {
+                connections.release();
+                hostSemaphore.release();
+                leave(host);
+            }
+        }
+    }
+
+    /**
+     * A fair semaphore whose number of permits can be changed while they are held.
+     * Lowering the limit below the permits in use makes the count negative, so the
+     * releases of the holders pay it back before anyone else gets in.
+     */
+    private static final class ResizableSemaphore extends Semaphore {
+
+        private volatile int limit;         // Only changed while holding the lock on this
+        private int users;                  // Holders and waiters; only changed inside a map update
+
+        ResizableSemaphore(int limit) {
+            super(limit, true);
+            this.limit = limit;
+        }
+
+        void resize(int newLimit) {
+            if (newLimit == limit) return;      // The common case needs no lock
+            synchronized (this) {
+                int delta = newLimit - limit;
+                limit = newLimit;
+                if (delta > 0) {
+                    release(delta);
+                } else if (delta < 0) {
+                    reducePermits(-delta);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import java.time.Duration;
+
+import java.util.Properties;
+
+/**
+ * The settings of a {@link DownloadManager}, as one immutable value.
+ * <p>
+ * A configuration is applied as a whole with {@link DownloadManager#applyConfig(DownloadConfig)};
+ * limits on connections, running downloads and speed take effect on running transfers
+ * right away, without closing any connection. It is stored as a properties file, one
+ * {@code Key=value} line per setting; keys missing from the file keep their defaults.
+ * </p>
+ *
+ * @param downloadDir               The directory new downloads are saved to
+ * @param maxConnections            The maximum number of open connections overall
+ * @param maxConnectionsPerHost     The maximum number of open connections to a single host
+ * @param maxActiveDownloads        The maximum number of running downloads
+ * @param maxActiveDownloadsPerHost The maximum number of running downloads from one host
+ * @param segmentsPerFile           The number of connections a segmented download starts with
+ * @param bufferSize                The transfer buffer size in bytes, used until a connection's
+ *                                  throughput has been measured
+ * @param speedLimit                The maximum total rate in bytes per second, {@code 0} for no limit
+ * @param connectTimeout            How long to wait for a connection, {@link Duration#ZERO} for no limit
+ * @param readTimeout               How long to wait for data, {@link Duration#ZERO} for no limit
+ * @param maxRetries                How often a failed request is retried
+ * @param segmentedMode             Whether files are fetched as parallel byte ranges
+ * @param autoResume                Whether partial downloads are journaled and resumed
+ */
+public record DownloadConfig(String downloadDir, int maxConnections, int maxConnectionsPerHost,
+                             int maxActiveDownloads, int maxActiveDownloadsPerHost, int segmentsPerFile,
+                             int bufferSize, long speedLimit, Duration connectTimeout, Duration readTimeout,
+                             int maxRetries, boolean segmentedMode, boolean autoResume) {
+
+    public static final DownloadConfig DEFAULTS = new DownloadConfig("downloads", 256, 8, 64, 4, 4,
+            64 * 1024, 0, Duration.ofSeconds(30), Duration.ofSeconds(30), 3, true, true);
+
+    private static final String DOWNLOAD_DIR = "DownloadDir";
+    private static final String MAX_CONNECTIONS = "MaxConnections";
+    private static final String MAX_CONNECTIONS_PER_HOST = "MaxConnectionsPerHost";
+    private static final String MAX_ACTIVE_DOWNLOADS = "MaxActiveDownloads";
+    private static final String MAX_ACTIVE_DOWNLOADS_PER_HOST = "MaxActiveDownloadsPerHost";
+    private static final String SEGMENTS_PER_FILE = "SegmentsPerFile";
+    private static final String BUFFER_SIZE = "BufferSize";
+    private static final String SPEED_LIMIT = "SpeedLimit";
+    private static final String CONNECT_TIMEOUT = "ConnectTimeoutSeconds";
+    private static final String READ_TIMEOUT = "ReadTimeoutSeconds";
+    private static final String MAX_RETRIES = "MaxRetries";
+    private static final String SEGMENTED_MODE = "SegmentedMode";
+    private static final String AUTO_RESUME = "AutoResume";
+
+    /**
+     * Checks that every setting is in range.
+     *
+     * @throws IllegalArgumentException If a setting is out of range
+     */
+    public DownloadConfig {
+        if (downloadDir == null || downloadDir.isBlank()) {
+            throw new IllegalArgumentException("No download directory");
+        }
+        requireAtLeast(MAX_CONNECTIONS, maxConnections, 1);
+        requireAtLeast(MAX_CONNECTIONS_PER_HOST, maxConnectionsPerHost, 1);
+        requireAtLeast(MAX_ACTIVE_DOWNLOADS, maxActiveDownloads, 1);
+        requireAtLeast(MAX_ACTIVE_DOWNLOADS_PER_HOST, maxActiveDownloadsPerHost, 1);
+        requireAtLeast(SEGMENTS_PER_FILE, segmentsPerFile, 1);
+        if (bufferSize < BufferPool.MIN_BUFFER_SIZE || bufferSize > BufferPool.MAX_BUFFER_SIZE) {
+            throw new IllegalArgumentException(BUFFER_SIZE + " must be between " + BufferPool.MIN_BUFFER_SIZE
+                    + " and " + BufferPool.MAX_BUFFER_SIZE + " bytes: " + bufferSize);
+        }
+        requireAtLeast(SPEED_LIMIT, speedLimit, 0);
+        if (connectTimeout.isNegative() || readTimeout.isNegative()) {
+            throw new IllegalArgumentException("Timeouts must not be negative");
+        }
+        requireAtLeast(MAX_RETRIES, maxRetries, 0);
+    }
+
+    /**
+     * Returns a builder starting from this configuration.
+     */
+    public Builder toBuilder() {
+        return new Builder(this);
+    }
+
+    /**
+     * Reads a configuration from a properties file. Settings missing from the file keep
+     * their {@linkplain #DEFAULTS defaults}.
+     * <p>
+     * A file written by earlier versions, which saved the download directory as a bare
+     * {@code DownloadDir=} line, is read as written, so {@code D:\} keeps its backslash.
+     * </p>
+     *
+     * @param file The file to read
+     * @return The configuration
+     * @throws IOException              If the file cannot be read
+     * @throws IllegalArgumentException If a setting is malformed or out of range
+     */
+    public static DownloadConfig load(Path file) throws IOException {
+        String text = Files.readString(file, StandardCharsets.UTF_8);
+        Properties properties = new Properties();
+        properties.load(new StringReader(text));
+        String legacyDownloadDir = readLegacy(text, DOWNLOAD_DIR);
+        DownloadConfig defaults = DEFAULTS;
+        return new DownloadConfig(
+                legacyDownloadDir != null ? legacyDownloadDir
+                        : properties.getProperty(DOWNLOAD_DIR, defaults.downloadDir).trim(),
+                readInt(properties, MAX_CONNECTIONS, defaults.maxConnections),
+                readInt(properties, MAX_CONNECTIONS_PER_HOST, defaults.maxConnectionsPerHost),
+                readInt(properties, MAX_ACTIVE_DOWNLOADS, defaults.maxActiveDownloads),
+                readInt(properties, MAX_ACTIVE_DOWNLOADS_PER_HOST, defaults.maxActiveDownloadsPerHost),
+                readInt(properties, SEGMENTS_PER_FILE, defaults.segmentsPerFile),
+                readInt(properties, BUFFER_SIZE, defaults.bufferSize),
+                readLong(properties, SPEED_LIMIT, defaults.speedLimit),
+                Duration.ofSeconds(readLong(properties, CONNECT_TIMEOUT, defaults.connectTimeout.toSeconds())),
+                Duration.ofSeconds(readLong(properties, READ_TIMEOUT, defaults.readTimeout.toSeconds())),
+                readInt(properties, MAX_RETRIES, defaults.maxRetries),
+                readBoolean(properties, SEGMENTED_MODE, defaults.segmentedMode),
+                readBoolean(properties, AUTO_RESUME, defaults.autoResume));
+    }
+
+    /**
+     * Writes the configuration to a properties file.
+     * <p>
+     * The file is written next to its final place and then renamed over it, so a reader
+     * watching the file never sees it half written.
+     * </p>
+     *
+     * @param file The file to write
+     * @throws IOException If the file cannot be written
+     */
+    public void save(Path file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(DOWNLOAD_DIR, downloadDir);
+        properties.setProperty(MAX_CONNECTIONS, String.valueOf(maxConnections));
+        properties.setProperty(MAX_CONNECTIONS_PER_HOST, String.valueOf(maxConnectionsPerHost));
+        properties.setProperty(MAX_ACTIVE_DOWNLOADS, String.valueOf(maxActiveDownloads));
+        properties.setProperty(MAX_ACTIVE_DOWNLOADS_PER_HOST, String.valueOf(maxActiveDownloadsPerHost));
+        properties.setProperty(SEGMENTS_PER_FILE, String.valueOf(segmentsPerFile));
+        properties.setProperty(BUFFER_SIZE, String.valueOf(bufferSize));
+        properties.setProperty(SPEED_LIMIT, String.valueOf(speedLimit));
+        properties.setProperty(CONNECT_TIMEOUT, String.valueOf(connectTimeout.toSeconds()));
+        properties.setProperty(READ_TIMEOUT, String.valueOf(readTimeout.toSeconds()));
+        properties.setProperty(MAX_RETRIES, String.valueOf(maxRetries));
+        properties.setProperty(SEGMENTED_MODE, String.valueOf(segmentedMode));
+        properties.setProperty(AUTO_RESUME, String.valueOf(autoResume));
+
+        Path absolute = file.toAbsolutePath();
+        Path temp = absolute.resolveSibling(absolute.getFileName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+            properties.store(writer, "Download Manager settings; SpeedLimit and BufferSize are in bytes");
+        }
+        Files.move(temp, absolute, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Reads a setting from a file in the format of earlier versions: plain {@code Key=value}
+     * lines without escapes. {@link #save(Path)} always starts the file with a comment,
+     * which tells the two formats apart.
+     *
+     * @return The value as written, or {@code null} if the file is not in that format or lacks the key
+     */
+    private static String readLegacy(String text, String key) {
+        String value = null;
+        for (String line : text.lines().toList()) {
+            line = line.strip();
+            if (line.startsWith("#") || line.startsWith("!")) return null;
+            if (line.startsWith(key + "=")) {
+                value = line.substring(key.length() + 1).strip();
+            }
+        }
+        return value;
+    }
+
+    private static int readInt(Properties properties, String key, int defaultValue) {
+        long value = readLong(properties, key, defaultValue);
+        if (value != (int) value) {
+            throw new IllegalArgumentException(key + " is too large: " + value);
+        }
+        return (int) value;
+    }
+
+    private static long readLong(Properties properties, String key, long defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number: " + value);
+        }
+    }
+
+    private static boolean readBoolean(Properties properties, String key, boolean defaultValue) {
+        String value = properties.getProperty(key);
+        if (value == null || value.isBlank()) return defaultValue;
+        return switch (value.trim().toLowerCase()) {
+            case "true" -> true;
+            case "false" -> false;
+            default -> throw new IllegalArgumentException(key + " must be true or false: " + value);
+        };
+    }
+
+    private static void requireAtLeast(String key, long value, long min) {
+        if (value < min) {
+            throw new IllegalArgumentException(key + " must be at least " + min + ": " + value);
+        }
+    }
+
+    /**
+     * Builds a configuration one setting at a time, starting from an existing one.
+     */
+    public static final class Builder {
+
+        private String downloadDir;
+        private int maxConnections;
+        private int maxConnectionsPerHost;
+        private int maxActiveDownloads;
+        private int maxActiveDownloadsPerHost;
+        private int segmentsPerFile;
+        private int bufferSize;
+        private long speedLimit;
+        private Duration connectTimeout;
+        private Duration readTimeout;
+        private int maxRetries;
+        private boolean segmentedMode;
+        private boolean autoResume;
+
+        private Builder(DownloadConfig config) {
+            downloadDir = config.downloadDir;
+            maxConnections = config.maxConnections;
+            maxConnectionsPerHost = config.maxConnectionsPerHost;
+            maxActiveDownloads = config.maxActiveDownloads;
+            maxActiveDownloadsPerHost = config.maxActiveDownloadsPerHost;
+            segmentsPerFile = config.segmentsPerFile;
+            bufferSize = config.bufferSize;
+            speedLimit = config.speedLimit;
+            connectTimeout = config.connectTimeout;
+            readTimeout = config.readTimeout;
+            maxRetries = config.maxRetries;
+            segmentedMode = config.segmentedMode;
+            autoResume = config.autoResume;
+        }
+
+        public Builder downloadDir(String downloadDir) {
+            this.downloadDir = downloadDir;
+            return this;
+        }
+
+        public Builder maxConnections(int maxConnections, int maxConnectionsPerHost) {
+            this.maxConnections = maxConnections;
+            this.maxConnectionsPerHost = maxConnectionsPerHost;
+            return this;
+        }
+
+        public Builder maxActiveDownloads(int maxActiveDownloads, int maxActiveDownloadsPerHost) {
+            this.maxActiveDownloads = maxActiveDownloads;
+            this.maxActiveDownloadsPerHost = maxActiveDownloadsPerHost;
+            return this;
+        }
+
+        public Builder segmentsPerFile(int segmentsPerFile) {
+            this.segmentsPerFile = segmentsPerFile;
+            return this;
+        }
+
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        public Builder speedLimit(long speedLimit) {
+            this.speedLimit = speedLimit;
+            return this;
+        }
+
+        public Builder timeouts(Duration connectTimeout, Duration readTimeout) {
+            this.connectTimeout = connectTimeout;
+            this.readTimeout = readTimeout;
+            return this;
+        }
+
+        public Builder maxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder segmentedMode(boolean segmentedMode) {
+            this.segmentedMode = segmentedMode;
+            return this;
+        }
+
+        public Builder autoResume(boolean autoResume) {
+            this.autoResume = autoResume;
+            return this;
+        }
+
+        /**
+         * @throws IllegalArgumentException If a setting is out of range
+         */
+        public DownloadConfig build() {
+            return new DownloadConfig(downloadDir, maxConnections, maxConnectionsPerHost, maxActiveDownloads,
+                    maxActiveDownloadsPerHost, segmentsPerFile, bufferSize, speedLimit, connectTimeout,
+                    readTimeout, maxRetries, segmentedMode, autoResume);
+        }
+    }
+}
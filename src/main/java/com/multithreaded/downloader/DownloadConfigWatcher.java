@@ -0,0 +1,127 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Reloads a {@link DownloadConfig} whenever its file changes on disk.
+ * <p>
+ * The directory of the file is watched with a {@link WatchService} on a daemon thread.
+ * Editors often write a file in several steps, so after the first event the watcher
+ * waits until the directory has been quiet for {@value #SETTLE_MS} ms before reading it.
+ * A file that cannot be read or holds an invalid setting is reported and otherwise
+ * ignored, so the settings in use stay as they are until the file is fixed. Reading a
+ * file whose settings have not changed, e.g. after the application saved it itself, is
+ * not reported.
+ * </p>
+ */
+public final class DownloadConfigWatcher implements AutoCloseable {
+
+    private static final long SETTLE_MS = 200;
+
+    private final Path file;
+    private final Consumer<DownloadConfig> onChange;
+    private final Consumer<Exception> onError;
+    private final WatchService watchService;
+    private final Thread thread;
+    private DownloadConfig current;             // Only touched by the watcher thread
+
+    private DownloadConfigWatcher(Path file, DownloadConfig current, Consumer<DownloadConfig> onChange,
+                                  Consumer<Exception> onError) throws IOException {
+        this.file = file.toAbsolutePath();
+        this.current = current;
+        this.onChange = onChange;
+        this.onError = onError;
+        watchService = this.file.getFileSystem().newWatchService();
+        this.file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+        thread = new Thread(this::run, "config-watcher");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts watching a configuration file.
+     *
+     * @param file     The file to watch; it need not exist yet
+     * @param current  The settings in use, so an unchanged file is not reported
+     * @param onChange Called on the watcher thread with the settings read after each change
+     * @param onError  Called on the watcher thread when the changed file cannot be used
+     * @return The running watcher
+     * @throws IOException If the directory of the file cannot be watched
+     */
+    public static DownloadConfigWatcher start(Path file, DownloadConfig current, Consumer<DownloadConfig> onChange,
+                                              Consumer<Exception> onError) throws IOException {
+        DownloadConfigWatcher watcher = new DownloadConfigWatcher(file, current, onChange, onError);
+        watcher.thread.start();
+        return watcher;
+    }
+
+    /**
+     * Stops watching.
+     */
+    @Override
+    public void close() {
+        try {
+            watchService.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                WatchKey key = watchService.take();
+                boolean changed = drain(key);
+                // Let a multi-step write finish before reading
+                while ((key = watchService.poll(SETTLE_MS, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= drain(key);
+                }
+                if (changed) {
+                    reload();
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Closed
+        }
+    }
+
+    /**
+     * Takes the events of a key and re-arms it.
+     *
+     * @return Whether one of the events concerns the watched file
+     */
+    private boolean drain(WatchKey key) {
+        boolean changed = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW || file.getFileName().equals(event.context())) {
+                changed = true;
+            }
+        }
+        key.reset();
+        return changed;
+    }
+
+    private void reload() {
+        if (!Files.exists(file)) return;
+        try {
+            DownloadConfig config = DownloadConfig.load(file);
+            if (!config.equals(current)) {
+                current = config;
+                onChange.accept(config);
+            }
+        } catch (IOException | UncheckedIOException | IllegalArgumentException e) {
+            onError.accept(e);
+        }
+    }
+}
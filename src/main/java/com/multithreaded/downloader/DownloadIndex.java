@@ -0,0 +1,443 @@
+package com.multithreaded.downloader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A persistent index of completed downloads, used to skip files that have not changed.
+ * <p>
+ * The index is made of two files in one directory. {@code downloads.dat} is an
+ * append-only log of records holding the URL, {@code ETag}, {@code Last-Modified}, size
+ * and path of a completed download; a newer record for a URL supersedes the older one.
+ * {@code downloads.idx} is an open-addressing hash table, memory-mapped, that maps a
+ * 64-bit hash of the URL to the offset of its latest record. A lookup probes the table
+ * and reads a single record, so opening the index costs the same for a million entries
+ * as for ten, and the heap holds none of them.
+ * </p>
+ * <p>
+ * The log is the source of truth. The table keeps the committed length of the log in its
+ * header and is marked dirty while it is being resized; if it is found dirty or damaged,
+ * it is rebuilt from the log, and if it is behind the log, because the mapped table was
+ * not written back before a crash, the records it misses are added from the log. Either
+ * way the log is cut at its first unreadable record. Records are validated on every
+ * read, so a torn write after a crash reads as a missing entry rather than a wrong one. Nothing is
+ * forced to disk on every update: losing the last few entries in a power failure only
+ * means those files are checked again.
+ * </p>
+ */
+class DownloadIndex implements Closeable {
+
+    private static final String INDEX_FILE = "downloads.idx";
+    private static final String DATA_FILE = "downloads.dat";
+
+    private static final int MAGIC = 0x444D4958;                // "DMIX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int STATE_OFFSET = 8;                  // 0 = clean, 1 = being resized
+    private static final int CAPACITY_OFFSET = 16;
+    private static final int SIZE_OFFSET = 24;
+    private static final int DATA_END_OFFSET = 32;
+    private static final int STATE_CLEAN = 0;
+    private static final int STATE_DIRTY = 1;
+
+    private static final int SLOT_SIZE = 16;                    // URL hash and record offset
+    private static final int MIN_CAPACITY = 1 << 12;
+    private static final int MAX_CAPACITY = 1 << 26;            // 1 GB of slots, 32M entries
+
+    private static final int RECORD_MARKER = 0x52454331;        // "REC1"
+    private static final int RECORD_HEADER_SIZE = 8;            // Length and marker
+    private static final int MAX_RECORD_SIZE = 256 * 1024;
+
+    /**
+     * A completed download as recorded in the index.
+     *
+     * @param url          The URL of the download
+     * @param etag         The {@code ETag} of the downloaded version, or {@code null}
+     * @param lastModified The {@code Last-Modified} date of the downloaded version, or {@code null}
+     * @param size         The size of the file in bytes
+     * @param path         The absolute path of the file
+     * @param fileModified The modification time of the file right after it was written
+     */
+    record Entry(String url, String etag, String lastModified, long size, String path, long fileModified) {
+    }
+
+    private final FileChannel indexChannel;
+    private final FileChannel dataChannel;
+    private final ReentrantLock lock = new ReentrantLock();    // Not synchronized: callers run on virtual threads
+    private MappedByteBuffer table;
+    private int capacity;                                       // Number of slots, a power of two
+    private int size;                                           // Number of used slots
+    private long dataEnd;                                       // Committed length of the log
+
+    private DownloadIndex(FileChannel indexChannel, FileChannel dataChannel) {
+        this.indexChannel = indexChannel;
+        this.dataChannel = dataChannel;
+    }
+
+    /**
+     * Opens the index in the given directory, creating or repairing it as needed.
+     *
+     * @param directory The directory holding the index files
+     * @return The open index
+     * @throws IOException If the files cannot be opened
+     */
+    static DownloadIndex open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        FileChannel indexChannel = FileChannel.open(directory.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        FileChannel dataChannel;
+        try {
+            dataChannel = FileChannel.open(directory.resolve(DATA_FILE),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            indexChannel.close();
+            throw e;
+        }
+
+        DownloadIndex index = new DownloadIndex(indexChannel, dataChannel);
+        try {
+            if (!index.load()) {
+                index.rebuild();
+            }
+        } catch (IOException e) {
+            index.close();
+            throw e;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the latest record of a URL.
+     *
+     * @param url The URL of the download
+     * @return The entry, or {@code null} if the URL has not been recorded
+     * @throws IOException If the log cannot be read
+     */
+    Entry get(String url) throws IOException {
+        long hash = hash(url);
+        lock.lock();
+        try {
+            for (int slot = (int) (hash & (capacity - 1)); ; slot = (slot + 1) & (capacity - 1)) {
+                long slotHash = table.getLong(slotPosition(slot));
+                if (slotHash == 0) return null;
+                if (slotHash == hash) {
+                    Entry entry = readRecord(table.getLong(slotPosition(slot) + 8));
+                    if (entry != null && entry.url().equals(url)) return entry;
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records a completed download, replacing any earlier record of its URL.
+     *
+     * @param entry The download to record
+     * @throws IOException If the log cannot be written
+     */
+    void put(Entry entry) throws IOException {
+        byte[] record = encode(entry);
+        if (record == null) return;         // Too large to be worth caching
+
+        lock.lock();
+        try {
+            long offset = dataEnd;
+            FileUtils.writeFully(dataChannel, ByteBuffer.wrap(record), offset);
+            dataEnd += record.length;
+            table.putLong(DATA_END_OFFSET, dataEnd);
+            insert(hash(entry.url()), offset, entry.url());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of URLs in the index.
+     */
+    int size() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            if (table != null) {
+                table.force();
+            }
+            dataChannel.close();
+            indexChannel.close();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Maps an existing table if it is intact and adds the records of the log it is missing.
+     *
+     * @return {@code false} if the table has to be rebuilt
+     */
+    private boolean load() throws IOException {
+        if (indexChannel.size() < HEADER_SIZE) return false;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && indexChannel.read(header, header.position()) > 0) {
+            // Keep reading until the header is complete
+        }
+        header.flip();
+        long storedCapacity = header.getLong(CAPACITY_OFFSET);
+        long storedDataEnd = header.getLong(DATA_END_OFFSET);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION
+                || header.getInt(STATE_OFFSET) != STATE_CLEAN
+                || storedCapacity < MIN_CAPACITY || storedCapacity > MAX_CAPACITY
+                || Long.bitCount(storedCapacity) != 1
+                || indexChannel.size() < HEADER_SIZE + storedCapacity * SLOT_SIZE
+                || dataChannel.size() < storedDataEnd) {
+            return false;
+        }
+
+        capacity = (int) storedCapacity;
+        size = (int) header.getLong(SIZE_OFFSET);
+        dataEnd = storedDataEnd;
+        table = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, tableBytes(capacity));
+
+        // Records appended after the table was last written back
+        if (dataChannel.size() > storedDataEnd) {
+            replay(storedDataEnd);
+        }
+        return true;
+    }
+
+    /**
+     * Recreates the table from the log, keeping the latest record of every URL.
+     * The log is cut at the first record that cannot be read.
+     */
+    private void rebuild() throws IOException {
+        indexChannel.truncate(0);
+        capacity = MIN_CAPACITY;
+        size = 0;
+        dataEnd = 0;
+        table = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, tableBytes(capacity));
+        clearSlots();
+        writeHeader(STATE_DIRTY);
+        replay(0);
+    }
+
+    /**
+     * Adds the records of the log from the given offset on to the table.
+     * The log is cut at the first record that cannot be read.
+     */
+    private void replay(long offset) throws IOException {
+        long end = dataChannel.size();
+        while (offset < end) {
+            int length = readRecordLength(offset, end);
+            Entry entry = length > 0 ? readRecord(offset, length) : null;
+            if (entry == null) break;
+
+            dataEnd = offset + length;
+            insert(hash(entry.url()), offset, entry.url());
+            offset += length;
+        }
+        if (dataEnd < end) {
+            dataChannel.truncate(dataEnd);
+        }
+        writeHeader(STATE_CLEAN);
+    }
+
+    /**
+     * Points the slot of a URL at a record, growing the table if it gets too full.
+     */
+    private void insert(long hash, long offset, String url) throws IOException {
+        int slot = (int) (hash & (capacity - 1));
+        while (true) {
+            long slotHash = table.getLong(slotPosition(slot));
+            if (slotHash == 0) break;
+            if (slotHash == hash) {
+                Entry existing = readRecord(table.getLong(slotPosition(slot) + 8));
+                if (existing == null || existing.url().equals(url)) {
+                    table.putLong(slotPosition(slot) + 8, offset);
+                    return;
+                }
+            }
+            slot = (slot + 1) & (capacity - 1);
+        }
+
+        if ((size + 1) * 2L > capacity) {
+            if (capacity == MAX_CAPACITY) return;   // Full; the URL simply stays uncached
+            grow();
+            insert(hash, offset, url);
+            return;
+        }
+        table.putLong(slotPosition(slot) + 8, offset);
+        table.putLong(slotPosition(slot), hash);
+        size++;
+        table.putLong(SIZE_OFFSET, size);
+    }
+
+    /**
+     * Doubles the table in place.
+     * <p>
+     * The used slots are copied to the heap, the file is extended and remapped, and the
+     * slots are inserted again. The table is marked dirty meanwhile, so a crash half way
+     * leads to a rebuild from the log on the next start.
+     * </p>
+     */
+    private void grow() throws IOException {
+        long[] used = new long[size * 2];
+        int count = 0;
+        for (int slot = 0; slot < capacity; slot++) {
+            long hash = table.getLong(slotPosition(slot));
+            if (hash != 0) {
+                used[count++] = hash;
+                used[count++] = table.getLong(slotPosition(slot) + 8);
+            }
+        }
+
+        writeHeader(STATE_DIRTY);
+        capacity *= 2;
+        table = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, tableBytes(capacity));
+        clearSlots();
+        for (int i = 0; i < count; i += 2) {
+            int slot = (int) (used[i] & (capacity - 1));
+            while (table.getLong(slotPosition(slot)) != 0) {
+                slot = (slot + 1) & (capacity - 1);
+            }
+            table.putLong(slotPosition(slot), used[i]);
+            table.putLong(slotPosition(slot) + 8, used[i + 1]);
+        }
+        writeHeader(STATE_CLEAN);
+    }
+
+    private void clearSlots() {
+        for (int position = HEADER_SIZE; position < tableBytes(capacity); position += 8) {
+            table.putLong(position, 0);
+        }
+    }
+
+    private void writeHeader(int state) {
+        table.putInt(0, MAGIC);
+        table.putInt(4, VERSION);
+        table.putInt(STATE_OFFSET, state);
+        table.putLong(CAPACITY_OFFSET, capacity);
+        table.putLong(SIZE_OFFSET, size);
+        table.putLong(DATA_END_OFFSET, dataEnd);
+    }
+
+    /**
+     * Reads and validates the record at the given offset of the log.
+     *
+     * @return The entry, or {@code null} if there is no valid record at that offset
+     */
+    private Entry readRecord(long offset) throws IOException {
+        int length = readRecordLength(offset, dataEnd);
+        return length > 0 ? readRecord(offset, length) : null;
+    }
+
+    /**
+     * Returns the length of the record at the given offset, or {@code -1} if its header is invalid.
+     */
+    private int readRecordLength(long offset, long end) throws IOException {
+        if (offset < 0 || offset + RECORD_HEADER_SIZE > end) return -1;
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (dataChannel.read(header, offset + header.position()) < 0) return -1;
+        }
+        int length = header.getInt(0);
+        if (header.getInt(4) != RECORD_MARKER || length <= RECORD_HEADER_SIZE
+                || length > MAX_RECORD_SIZE || offset + length > end) {
+            return -1;
+        }
+        return length;
+    }
+
+    private Entry readRecord(long offset, int length) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(length - RECORD_HEADER_SIZE);
+        while (record.hasRemaining()) {
+            if (dataChannel.read(record, offset + RECORD_HEADER_SIZE + record.position()) < 0) return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record.array()))) {
+            long size = in.readLong();
+            long fileModified = in.readLong();
+            String url = in.readUTF();
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            String path = in.readUTF();
+            return new Entry(url, etag.isEmpty() ? null : etag, lastModified.isEmpty() ? null : lastModified,
+                    size, path, fileModified);
+        } catch (IOException e) {
+            return null;    // Torn or damaged record
+        }
+    }
+
+    /**
+     * Serializes an entry as a log record.
+     *
+     * @return The record, or {@code null} if it does not fit into a record
+     */
+    private static byte[] encode(Entry entry) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(0);                // Length, patched below
+            out.writeInt(RECORD_MARKER);
+            out.writeLong(entry.size());
+            out.writeLong(entry.fileModified());
+            out.writeUTF(entry.url());
+            out.writeUTF(entry.etag() != null ? entry.etag() : "");
+            out.writeUTF(entry.lastModified() != null ? entry.lastModified() : "");
+            out.writeUTF(entry.path());
+        } catch (IOException e) {
+            return null;    // A string longer than 64 KB
+        }
+
+        byte[] record = bytes.toByteArray();
+        if (record.length > MAX_RECORD_SIZE) return null;
+        ByteBuffer.wrap(record).putInt(0, record.length);
+        return record;
+    }
+
+    /**
+     * Returns a well-mixed, non-zero 64-bit hash of a URL; zero marks an empty slot.
+     */
+    private static long hash(String url) {
+        long hash = 0xcbf29ce484222325L;                        // FNV-1a
+        for (byte b : url.getBytes(StandardCharsets.UTF_8)) {
+            hash = (hash ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;                                    // Murmur3 finalizer
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    private static int slotPosition(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+
+    private static int tableBytes(int capacity) {
+        return HEADER_SIZE + capacity * SLOT_SIZE;
+    }
+}
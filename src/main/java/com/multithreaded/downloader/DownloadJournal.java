@@ -0,0 +1,156 @@
+package com.multithreaded.downloader;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A sidecar file recording how far each segment of a partial download has got.
+ * <p>
+ * The journal lives next to the target file as {@code <name>.journal} and stores the
+ * file length, {@code ETag}, {@code Last-Modified} and the byte ranges written so far in
+ * the same {@code key=value} format as {@code settings.config}. It is replaced atomically
+ * on every save, so a crash leaves either the previous or the new journal on disk, never a
+ * torn one. Callers must make the file data durable before saving positions that cover it.
+ * </p>
+ */
+class DownloadJournal {
+
+    private static final String SUFFIX = ".journal";
+
+    private final Path path;
+    private final Path tempPath;
+    private final RemoteFile remoteFile;
+
+    /**
+     * Creates a journal for the given target file and remote version.
+     *
+     * @param outputFile The file being downloaded into
+     * @param remoteFile The remote file as reported by the latest probe
+     */
+    DownloadJournal(File outputFile, RemoteFile remoteFile) {
+        this.path = outputFile.toPath().resolveSibling(outputFile.getName() + SUFFIX);
+        this.tempPath = outputFile.toPath().resolveSibling(outputFile.getName() + SUFFIX + ".tmp");
+        this.remoteFile = remoteFile;
+    }
+
+    /**
+     * Loads the segments of an earlier attempt, if they belong to the same remote file.
+     * <p>
+     * A journal written for a different length, entity tag or modification date is
+     * ignored, as is one that cannot be parsed. Nothing is resumed either when the server
+     * gives no validator to send in {@code If-Range}: a file that changed but kept its
+     * length could not be told apart, and the download would mix bytes of both versions.
+     * </p>
+     *
+     * @return The journaled segments, or {@code null} if there is nothing to resume
+     */
+    List<Segment> load() {
+        if (remoteFile.rangeValidator() == null) return null;
+
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            return null;
+        }
+
+        long length = -1;
+        String etag = null;
+        String lastModified = null;
+        List<Segment> segments = new ArrayList<>();
+
+        try {
+            for (String line : lines) {
+                int separator = line.indexOf('=');
+                if (separator < 0) continue;
+
+                String key = line.substring(0, separator);
+                String value = line.substring(separator + 1);
+                switch (key) {
+                    case "Length" -> length = Long.parseLong(value);
+                    case "ETag" -> etag = value;
+                    case "LastModified" -> lastModified = value;
+                    case "Segment" -> segments.add(parseSegment(value));
+                    default -> { }
+                }
+            }
+        } catch (RuntimeException e) {
+            return null;
+        }
+
+        boolean sameFile = length == remoteFile.length()
+                && Objects.equals(etag, remoteFile.etag())
+                && Objects.equals(lastModified, remoteFile.lastModified());
+        return sameFile && !segments.isEmpty() ? segments : null;
+    }
+
+    /**
+     * Atomically replaces the journal with the given segment positions.
+     *
+     * @param segments The segments of the download, typically a snapshot
+     * @throws IOException If the journal cannot be written
+     */
+    void save(List<Segment> segments) throws IOException {
+        StringBuilder content = new StringBuilder();
+        content.append("Url=").append(remoteFile.uri()).append('\n');
+        content.append("Length=").append(remoteFile.length()).append('\n');
+        if (remoteFile.etag() != null) {
+            content.append("ETag=").append(remoteFile.etag()).append('\n');
+        }
+        if (remoteFile.lastModified() != null) {
+            content.append("LastModified=").append(remoteFile.lastModified()).append('\n');
+        }
+        for (Segment segment : segments) {
+            content.append("Segment=").append(segment.getStart()).append('-').append(segment.getEnd())
+                    .append(':').append(segment.getPosition()).append('\n');
+        }
+
+        try (FileChannel channel = FileChannel.open(tempPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content.toString().getBytes(StandardCharsets.UTF_8));
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tempPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Removes the journal once the download has completed or must start over.
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+            Files.deleteIfExists(tempPath);
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Parses a {@code start-end:position} segment entry.
+     */
+    private static Segment parseSegment(String value) {
+        int dash = value.indexOf('-');
+        int colon = value.indexOf(':');
+        long start = Long.parseLong(value.substring(0, dash));
+        long end = Long.parseLong(value.substring(dash + 1, colon));
+        long position = Long.parseLong(value.substring(colon + 1));
+        if (position < start || position > end + 1) {
+            throw new IllegalArgumentException("Segment position out of range: " + value);
+        }
+        return new Segment(start, end, position);
+    }
+}
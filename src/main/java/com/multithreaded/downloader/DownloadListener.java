@@ -0,0 +1,69 @@
+package com.multithreaded.downloader;
+
+import java.io.File;
+import java.util.List;
+
+/**
+ * Receives progress and lifecycle events from a {@link DownloadManager}.
+ * <p>
+ * Progress is coalesced by the manager: no matter how fast bytes arrive, each listener
+ * receives at most one batch of updates per progress tick, containing only the
+ * downloads that moved since the previous tick. All other events are delivered once
+ * per download. Events arrive on the manager's own threads, so listeners that touch
+ * UI components must hand them over to their UI thread themselves.
+ * </p>
+ */
+public interface DownloadListener {
+
+    /**
+     * Called when a download has been added to the queue, before it can start.
+     *
+     * @param url The URL of the download
+     */
+    default void onQueued(String url) {
+    }
+
+    /**
+     * Called with the downloads that made progress since the previous call.
+     *
+     * @param updates The current progress of each changed download
+     */
+    default void onProgress(List<DownloadProgress> updates) {
+    }
+
+    /**
+     * Called with an informational message about a download, e.g. that it was resumed.
+     *
+     * @param url     The URL of the download, or {@code null} for a message about no single download,
+     *                e.g. from a {@link BulkImport}
+     * @param message The message
+     */
+    default void onMessage(String url, String message) {
+    }
+
+    /**
+     * Called when a download has finished successfully.
+     *
+     * @param url  The URL of the download
+     * @param file The downloaded file
+     */
+    default void onCompleted(String url, File file) {
+    }
+
+    /**
+     * Called when a download has failed.
+     *
+     * @param url    The URL of the download
+     * @param reason A description of the failure
+     */
+    default void onFailed(String url, String reason) {
+    }
+
+    /**
+     * Called when a download has been stopped before it finished.
+     *
+     * @param url The URL of the download
+     */
+    default void onStopped(String url) {
+    }
+}
@@ -1,228 +1,1803 @@
 package com.multithreaded.downloader;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
 
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.SocketTimeoutException;
+import java.net.URI;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionService;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-
-import javax.swing.JProgressBar;
-import javax.swing.SwingUtilities;
-import javax.swing.JTextArea;
-
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.UnaryOperator;
 
 /**
  * Manages file downloads using multithreading.
  * <p>
- * This class handles concurrent file downloads by utilizing a thread pool,
- * tracking download speeds, and supporting cancellation of individual or all downloads.
+ * This class handles concurrent file downloads by running every download and every
+ * segment on its own virtual thread, tracking download speeds, and supporting
+ * cancellation of individual or all downloads. Concurrency is bounded by the number
+ * of open connections, overall and per host, rather than by a thread pool size.
+ * </p>
+ * <p>
+ * Added downloads first go through a {@link DownloadScheduler}, which caps how many
+ * downloads run at once, overall and per host, hands free slots to hosts in turn and
+ * lets {@link DownloadPriority#HIGH} downloads overtake queued ones.
+ * </p>
+ * <p>
+ * The manager does not depend on any UI toolkit. Progress and lifecycle events are
+ * published to registered {@link DownloadListener}s, with progress coalesced to at most
+ * one batch every {@value #PROGRESS_INTERVAL_MS} ms regardless of throughput.
+ * </p>
+ * <p>
+ * No request waits for a silent server forever: connecting and waiting for data are
+ * bounded by timeouts, and a {@link StallDetector} aborts connections whose throughput
+ * stays too low, so they are retried or their ranges handed to other connections.
  * </p>
  */
 public class DownloadManager {
 
-    private final ExecutorService executor;                          // Thread pool for downloads
+    private static final long MIN_SEGMENT_SIZE = 1024 * 1024;       // Smaller ranges are not worth a connection
+    private static final long MIN_STEAL_SIZE = BufferPool.MAX_BUFFER_SIZE;  // Smallest range taken over from a slow connection
+    private static final long CHECKPOINT_INTERVAL_MS = 2000;         // How often resume journals are flushed
+    private static final long BALANCE_INTERVAL_MS = 1000;            // How often connection counts are tuned
+    private static final int MAX_SEGMENTS_PER_FILE = 16;             // Upper bound of the connection tuning
+    private static final int FINGERPRINT_SIZE = 4096;                // Tail bytes compared across mirrors
+    private static final long BUFFER_FILL_MS = 20;                   // Time a buffer should take to fill
+    private static final long BUFFER_RESIZE_MS = 1000;               // How often buffer sizes are revised
+    private static final long BUFFER_POOL_BYTES = 32 * 1024 * 1024;  // Memory kept in idle buffers
+    private static final long PROGRESS_INTERVAL_MS = 100;            // Progress events are coalesced to 10 Hz
+    private static final long RATE_SAMPLE_MS = 500;                  // How often transfer rates are sampled
+    private static final int RATE_WINDOW_SAMPLES = 11;               // 10 intervals: rates are averaged over 5 s
+    private static final long STALL_CHECK_MS = 500;                  // How often transfers are checked for stalls
+    private static final long DEFAULT_STALL_SPEED = 1024;            // Bytes per second a connection must reach
+    private static final Duration DEFAULT_STALL_WINDOW = Duration.ofSeconds(30);
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_PARTIAL = 206;
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final int HTTP_RANGE_NOT_SATISFIABLE = 416;
+
+    private final Transport transport;                               // HTTP layer shared by all downloads
+    private final ExecutorService executor;                          // Virtual threads for downloads and segments
+    private final ScheduledExecutorService scheduler;                // Progress and speed ticks
+    private final ConnectionLimiter connectionLimiter;               // Admission of new connections
+    private final DownloadScheduler queue;                           // Admission of queued downloads
     private final ConcurrentHashMap<String, Future<?>> downloadTasks; // Ongoing downloads
-    private final ConcurrentHashMap<String, Long> downloadSpeeds;
-    private final ConcurrentHashMap<String, Long> bytesDownloaded;
+    private final ConcurrentHashMap<String, DownloadState> downloads; // Live counters of ongoing downloads
+    private final List<DownloadListener> listeners;
+    private final Set<BulkImport> imports;                           // Manifests still being read or downloaded
+    private final ReentrantLock progressLock;                        // Keeps progress batches in order
+    private final ConcurrentHashMap<String, BandwidthLimiter> downloadLimiters;  // Per-download speed caps
+    private final BandwidthLimiter globalLimiter;                                // Cap shared by all downloads
+    private final StallDetector stallDetector;                                   // Aborts transfers gone quiet
+    private final BufferPool bufferPool;                                         // Transfer buffers of all downloads
+    private final ConcurrentHashMap<String, ExpectedChecksum> expectedChecksums; // Verified while writing
+    private final ConcurrentHashMap<String, List<String>> mirrors;               // Other sources of a download
+    private final ReentrantLock configLock;                          // Serializes configuration changes
+    private volatile DownloadConfig config;                          // The settings last applied
+    private volatile RetryPolicy retryPolicy = RetryPolicy.DEFAULT;
+    private volatile boolean segmentedMode;
+    private volatile int segmentsPerFile;
+    private volatile int bufferSize;                                 // Bytes gathered per write until measured
+    private volatile boolean autoResume;
+    private volatile boolean memoryMappedOutput;                     // Segments write through mapped windows
+    private volatile boolean adaptiveSegments = true;                // Split ranges and tune connections while running
+    private volatile DownloadIndex downloadIndex;                    // Completed downloads, or null
+    private volatile QueueStore queueStore;                          // Persistent copy of the queue, or null
+    private volatile long totalBytesPerSecond;                       // Sum of the rates of all downloads
 
     /**
-     * Constructs a DownloadManager with a fixed thread pool and initializes tracking maps.
+     * Constructs a DownloadManager with the {@linkplain DownloadConfig#DEFAULTS default settings}.
      * <p>
-     * The manager uses a thread pool with 5 threads for concurrent downloading and
-     * tracks download speeds and bytes downloaded.
+     * At most 256 connections are open at once, and at most 8 of them to the same host.
      * </p>
      */
     public DownloadManager() {
-        executor = Executors.newFixedThreadPool(5);
+        this(DownloadConfig.DEFAULTS);
+    }
+
+    /**
+     * Constructs a DownloadManager with the given connection limits and a pooled
+     * {@link HttpClientTransport}.
+     *
+     * @param maxConnections        The maximum number of open connections overall
+     * @param maxConnectionsPerHost The maximum number of open connections to a single host
+     */
+    public DownloadManager(int maxConnections, int maxConnectionsPerHost) {
+        this(new HttpClientTransport(), maxConnections, maxConnectionsPerHost);
+    }
+
+    /**
+     * Constructs a DownloadManager with the given settings and a pooled {@link HttpClientTransport}.
+     *
+     * @param config The settings to start with
+     */
+    public DownloadManager(DownloadConfig config) {
+        this(new HttpClientTransport(), config);
+    }
+
+    /**
+     * Constructs a DownloadManager with the given connection limits.
+     *
+     * @param transport             The HTTP layer to fetch files with
+     * @param maxConnections        The maximum number of open connections overall
+     * @param maxConnectionsPerHost The maximum number of open connections to a single host
+     */
+    public DownloadManager(Transport transport, int maxConnections, int maxConnectionsPerHost) {
+        this(transport, DownloadConfig.DEFAULTS.toBuilder()
+                .maxConnections(maxConnections, maxConnectionsPerHost)
+                .build());
+    }
+
+    /**
+     * Constructs a DownloadManager with the given settings and initializes tracking maps.
+     * <p>
+     * Every download and every segment runs on its own virtual thread, so thousands of
+     * mostly idle transfers cost little more than their buffers. Threads blocked on a
+     * connection permit do not hold any connection. With a multiplexing transport a
+     * "connection" is a concurrent request, which may share a socket with others.
+     * </p>
+     *
+     * @param transport The HTTP layer to fetch files with
+     * @param config    The settings to start with; see {@link #applyConfig(DownloadConfig)}
+     */
+    public DownloadManager(Transport transport, DownloadConfig config) {
+        this.transport = transport;
+        executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("download-", 0).factory());
+        scheduler = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("download-monitor").daemon().factory());
+        connectionLimiter = new ConnectionLimiter(config.maxConnections(), config.maxConnectionsPerHost());
+        queue = new DownloadScheduler(config.maxActiveDownloads(), config.maxActiveDownloadsPerHost(),
+                this::startDownload, this::pauseDownload);
         downloadTasks = new ConcurrentHashMap<>();
-        downloadSpeeds = new ConcurrentHashMap<>();
-        bytesDownloaded = new ConcurrentHashMap<>();
+        downloads = new ConcurrentHashMap<>();
+        listeners = new CopyOnWriteArrayList<>();
+        imports = ConcurrentHashMap.newKeySet();
+        progressLock = new ReentrantLock();
+        downloadLimiters = new ConcurrentHashMap<>();
+        globalLimiter = new BandwidthLimiter(0);
+        bufferPool = new BufferPool(BUFFER_POOL_BYTES);
+        stallDetector = new StallDetector(globalLimiter, config.readTimeout().toMillis(),
+                DEFAULT_STALL_SPEED, DEFAULT_STALL_WINDOW.toMillis());
+        expectedChecksums = new ConcurrentHashMap<>();
+        mirrors = new ConcurrentHashMap<>();
+        configLock = new ReentrantLock();
+        applyConfig(config);
 
         startSpeedMonitor();
+        scheduler.scheduleAtFixedRate(this::publishProgress, PROGRESS_INTERVAL_MS, PROGRESS_INTERVAL_MS,
+                TimeUnit.MILLISECONDS);
+        scheduler.scheduleAtFixedRate(() -> stallDetector.check(System.nanoTime()), STALL_CHECK_MS,
+                STALL_CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Registers a listener for progress and lifecycle events of all downloads.
+     *
+     * @param listener The listener to add
+     */
+    public void addListener(DownloadListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener added with {@link #addListener(DownloadListener)}.
+     *
+     * @param listener The listener to remove
+     */
+    public void removeListener(DownloadListener listener) {
+        listeners.remove(listener);
     }
 
     /**
-     * Starts a scheduled task to monitor download speeds every second.
+     * Starts a scheduled task to monitor download speeds every {@value #RATE_SAMPLE_MS} ms.
      * <p>
-     * It calculates the difference in downloaded bytes to determine the current speed
-     * and stores it in the {@code downloadSpeeds} map.
+     * Each tick samples the byte counter of every running download into its sliding
+     * window and stores the sum of the resulting rates, so reading the total speed is
+     * a single volatile read.
      * </p>
      */
     private void startSpeedMonitor() {
-        ScheduledExecutorService speedExecutor = Executors.newSingleThreadScheduledExecutor();
-        speedExecutor.scheduleAtFixedRate(() -> {
-            for (String url : downloadTasks.keySet()) {
-                long previousBytes = bytesDownloaded.getOrDefault(url, 0L);
-                long currentBytes = bytesDownloaded.get(url);
-
-                long speed = (currentBytes - previousBytes) / 1024;
-                downloadSpeeds.put(url, speed);
+        scheduler.scheduleAtFixedRate(() -> {
+            long now = System.nanoTime();
+            long total = 0;
+            for (DownloadState state : downloads.values()) {
+                total += state.sampleRate(now);
             }
-        }, 1, 1, TimeUnit.SECONDS);
+            totalBytesPerSecond = total;
+        }, RATE_SAMPLE_MS, RATE_SAMPLE_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a new download task to the queue with {@link DownloadPriority#NORMAL} priority.
+     *
+     * @param url          The URL of the file to download
+     * @param downloadDir  The directory to save the downloaded file
+     * @see #addDownload(String, String, DownloadPriority)
+     */
+    public void addDownload(String url, String downloadDir) {
+        addDownload(url, downloadDir, DownloadPriority.NORMAL);
     }
 
     /**
      * Adds a new download task to the queue.
      * <p>
-     * If the download for the specified URL is already in progress, it skips the duplicate request.
+     * The download starts as soon as the scheduler gives it a slot. If the download for the
+     * specified URL is already queued or in progress, it skips the duplicate request.
+     * Finished, failed and stopped downloads are forgotten, so the same URL can be added again.
      * </p>
      *
      * @param url          The URL of the file to download
      * @param downloadDir  The directory to save the downloaded file
-     * @param progressBar  The progress bar to update download progress
-     * @param console      The console area to display download logs
+     * @param priority     The priority of the download in the queue
      */
-    public void addDownload(String url, String downloadDir, JProgressBar progressBar, JTextArea console) {
-        if (downloadTasks.containsKey(url)) {
-            console.append("Already downloading: " + url + "\n");
-            return;
+    public void addDownload(String url, String downloadDir, DownloadPriority priority) {
+        if (!enqueue(url, downloadDir, priority)) {
+            listeners.forEach(listener -> listener.onMessage(url, "Already downloading: " + url));
         }
+    }
 
-        bytesDownloaded.put(url, 0L);
-        downloadSpeeds.put(url, 0L);
+    /**
+     * Queues a download, telling the listeners before it can start.
+     *
+     * @return {@code false} if the URL is already queued or running
+     */
+    boolean enqueue(String url, String downloadDir, DownloadPriority priority) {
+        if (queue.contains(url)) return false;
+        listeners.forEach(listener -> listener.onQueued(url));
+        return queue.submit(url, downloadDir, priority);
+    }
 
-        // Submit download task to executor
-        Future<?> future = executor.submit(() -> {
-            try {
-                downloadFile(url, downloadDir, progressBar, console);
-            } catch (IOException e) {
-                SwingUtilities.invokeLater(() ->
-                        console.append("Failed: " + url + "\n" + e.getMessage() + "\n"));
+    /**
+     * Queues the downloads listed by a manifest, reading it as the downloads are taken on.
+     * <p>
+     * The lines are read on a virtual thread, and at most {@value BulkImport#DEFAULT_WINDOW}
+     * downloads of the manifest are queued or running at a time, so even a manifest of
+     * millions of URLs keeps the queue short and the first download starts right away.
+     * See {@link BulkImport} for the line format. {@link #stopAllDownloads()} also stops
+     * reading every manifest.
+     * </p>
+     *
+     * @param lines       The lines of the manifest, read lazily
+     * @param source      What the lines come from, e.g. a file name, for messages
+     * @param downloadDir The directory to save the downloaded files
+     * @return The running import
+     */
+    public BulkImport importUrls(Iterator<String> lines, String source, String downloadDir) {
+        return importUrls(lines, source, downloadDir, BulkImport.DEFAULT_WINDOW);
+    }
+
+    /**
+     * Queues the downloads listed by a manifest, with a chosen number of downloads in flight.
+     *
+     * @param lines       The lines of the manifest, read lazily
+     * @param source      What the lines come from, e.g. a file name, for messages
+     * @param downloadDir The directory to save the downloaded files
+     * @param window      The most downloads of the manifest queued or running at once
+     * @return The running import
+     * @see #importUrls(Iterator, String, String)
+     */
+    public BulkImport importUrls(Iterator<String> lines, String source, String downloadDir, int window) {
+        BulkImport bulkImport = new BulkImport(this, source, downloadDir, window);
+        imports.add(bulkImport);
+        bulkImport.start(lines);
+        return bulkImport;
+    }
+
+    /**
+     * Returns whether the URL is queued or running.
+     */
+    boolean contains(String url) {
+        return queue.contains(url);
+    }
+
+    /**
+     * Forgets an import once it has ended.
+     */
+    void forgetImport(BulkImport bulkImport) {
+        imports.remove(bulkImport);
+    }
+
+    /**
+     * Sends a message to the listeners.
+     *
+     * @param url     The URL the message is about, or {@code null}
+     * @param message The message
+     */
+    void notifyMessage(String url, String message) {
+        listeners.forEach(listener -> listener.onMessage(url, message));
+    }
+
+    /**
+     * Starts a download the scheduler has given a slot to.
+     * <p>
+     * Called while holding the scheduler lock, so it only submits the task. Once the
+     * download has started it hands the slot back itself, when it has really ended;
+     * the task hook only hands back the slot of a download cancelled before it started.
+     * </p>
+     *
+     * @param job The dispatched job
+     */
+    private void startDownload(DownloadScheduler.Job job) {
+        String url = job.getUrl();
+        DownloadState state = new DownloadState(url,
+                downloadLimiters.computeIfAbsent(url, key -> new BandwidthLimiter(0)), RATE_WINDOW_SAMPLES);
+        AtomicBoolean claimed = new AtomicBoolean();        // Whether the download or the hook owns the slot
+
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            if (claimed.compareAndSet(false, true)) downloadFile(state, job);
+        }, null) {
+            @Override
+            public boolean cancel(boolean mayInterruptIfRunning) {
+                state.stop();
+                return super.cancel(mayInterruptIfRunning);
+            }
+
+            @Override
+            protected void done() {
+                downloadTasks.remove(url, this);
+                downloads.remove(url, state);
+                // Only a limit set for the URL is worth keeping once the download has ended
+                downloadLimiters.computeIfPresent(url,
+                        (key, limiter) -> limiter.getRate() == 0 && !downloads.containsKey(url) ? null : limiter);
+                if (claimed.compareAndSet(false, true)) {
+                    queue.finished(job, isCancelled());
+                }
             }
-        });
+        };
+
+        downloadTasks.put(url, task);
+        downloads.put(url, state);
+
+        // Submit download task to executor
+        executor.execute(task);
+    }
 
-        downloadTasks.put(url, future);
+    /**
+     * Stops a running download so the scheduler can requeue it.
+     * <p>
+     * The partial file and its journal are kept, so with auto resume enabled the download
+     * continues where it was paused once it gets a slot again.
+     * </p>
+     *
+     * @param job The job to pause
+     */
+    private void pauseDownload(DownloadScheduler.Job job) {
+        DownloadState state = downloads.get(job.getUrl());
+        Future<?> future = downloadTasks.get(job.getUrl());
+        if (state != null) state.setPaused(true);
+        if (future != null) future.cancel(true);
     }
 
     /**
      * Downloads a file from the given URL with progress tracking.
      * <p>
-     * It handles HTTP connections, reads the file in chunks, and updates the progress bar.
+     * The server is first probed with a one-byte {@code Range} request. If it answers with
+     * {@code 206 Partial Content} the file is fetched as byte ranges (several at once in
+     * segmented mode) and can be resumed later, otherwise the response of the probe itself
+     * is streamed to disk over a single connection. Errors do not escape this method;
+     * they are reported to the listeners instead.
+     * </p>
+     * <p>
+     * The scheduler slot is released exactly once, right before the outcome is reported,
+     * so a listener that adds the same URL again is not turned away as a duplicate.
      * </p>
      *
-     * @param urlStr       The URL of the file
-     * @param downloadDir  The directory to save the file
-     * @param progressBar  The progress bar for visual feedback
-     * @param console      The console for displaying logs
-     * @throws IOException If an I/O error occurs during downloading
+     * @param state The live state of the download
+     * @param job   The scheduled job, naming the directory to save the file in
      */
-    private void downloadFile(String urlStr, String downloadDir, JProgressBar progressBar, JTextArea console) throws IOException {
-        HttpURLConnection connection = null;
-        InputStream in = null;
-        FileOutputStream out = null;
+    private void downloadFile(DownloadState state, DownloadScheduler.Job job) {
+        String urlStr = state.getUrl();
+        ConnectionLimiter.Permit permit = null;
+        TransportResponse response = null;
 
         try {
-            URL url = new URL(urlStr);
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("GET");
+            URI uri = URI.create(urlStr);
+            DownloadIndex index = downloadIndex;
+            DownloadIndex.Entry cached = findUnchangedCopy(index, urlStr, job.getDownloadDir());
 
-            int contentLength = connection.getContentLength();
-            if (contentLength <= 0) {
-                SwingUtilities.invokeLater(() -> console.append("⚠ Invalid content length: " + urlStr + "\n"));
-                return;
+            Map<String, String> headers = new HashMap<>();
+            headers.put("Range", "bytes=0-0");
+            if (cached != null && cached.etag() != null) {
+                headers.put("If-None-Match", cached.etag());
             }
-
-            // Extract and sanitize filename
-            String fileName = url.getPath().substring(url.getPath().lastIndexOf('/') + 1);
-            if (fileName.isEmpty()) {
-                fileName = "downloaded_file";
+            if (cached != null && cached.lastModified() != null) {
+                headers.put("If-Modified-Since", cached.lastModified());
             }
-            fileName = fileName.replaceAll("[\\\\/:*?\"<>|&=]", "_");
 
-            // Infer extension using FileUtils
-            String contentType = connection.getContentType();
-            if (!fileName.contains(".") && contentType != null) {
-                String extension = FileUtils.getExtensionFromContentType(contentType);
-                if (extension != null) {
-                    fileName += "." + extension;
+            int status;
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    permit = connectionLimiter.acquire(uri.getHost());
+                    response = transport.get(uri, headers);
+                    status = response.statusCode();
+                    if (status != HTTP_OK && status != HTTP_PARTIAL && status != HTTP_RANGE_NOT_SATISFIABLE
+                            && !(status == HTTP_NOT_MODIFIED && cached != null)) {
+                        throw HttpStatusException.of(response, "Server returned HTTP " + status);
+                    }
+                    break;
+                } catch (IOException e) {
+                    closeQuietly(response);
+                    response = null;
+                    permit.close();
+                    permit = null;
+                    awaitRetry(state, e, attempt);
                 }
             }
 
-            final String finalFileName = fileName;
+            if (status == HTTP_NOT_MODIFIED) {
+                File cachedFile = new File(cached.path());
+                queue.finished(job, false);
+                listeners.forEach(listener -> listener.onMessage(urlStr, "Not modified: " + urlStr));
+                listeners.forEach(listener -> listener.onCompleted(urlStr, cachedFile));
+                return;
+            }
+            boolean rangesSupported = status == HTTP_PARTIAL;
+            RemoteFile remoteFile = new RemoteFile(uri,
+                    status == HTTP_OK
+                            ? response.contentLength()
+                            : parseTotalLength(response.header("Content-Range")),
+                    response.header("ETag"),
+                    response.header("Last-Modified"),
+                    response.header("Content-Type"),
+                    rangesSupported);
+
+            long contentLength = remoteFile.length();
+            state.setTotalBytes(contentLength);
 
-            File outputFile = new File(downloadDir, finalFileName);
-            outputFile.getParentFile().mkdirs();
+            File outputFile = createOutputFile(uri, remoteFile.contentType(), job.getDownloadDir());
+            ChecksumVerifier verifier = ChecksumVerifier.of(expectedChecksums.get(urlStr));
+
+            if (status == HTTP_OK) {
+                TransportResponse body = response;
+                ConnectionLimiter.Permit bodyPermit = permit;
+                response = null;
+                permit = null;
+                downloadStream(state, remoteFile, outputFile, verifier, body, bodyPermit);
+            } else {
+                // The probe only carried a single byte, if any; reading it lets the connection be reused
+                response.body().transferTo(OutputStream.nullOutputStream());
+                response.close();
+                response = null;
+                permit.close();
+                permit = null;
+                if (rangesSupported && contentLength > 0) {
+                    downloadSegmented(state, remoteFile, outputFile, verifier);
+                } else {
+                    // A range of unknown total length cannot be split, and an empty file has no first byte
+                    downloadStream(state, remoteFile, outputFile, verifier, null, null);
+                }
+            }
 
-            in = connection.getInputStream();
-            out = new FileOutputStream(outputFile);
+            recordCompleted(index, remoteFile, outputFile);
+            publishProgress(state);
+            queue.finished(job, false);
+            listeners.forEach(listener -> listener.onCompleted(urlStr, outputFile));
 
-            byte[] buffer = new byte[8192];
-            int bytesRead;
-            long totalBytesRead = 0;
+        } catch (InterruptedException e) {
+            publishProgress(state);
+            reportStopped(state, job);
 
-            while ((bytesRead = in.read(buffer)) != -1) {
-                out.write(buffer, 0, bytesRead);
-                totalBytesRead += bytesRead;
+        } catch (Exception e) {
+            publishProgress(state);
+            // Some transports report an interrupted read as a plain IOException
+            if (isStop(e) || Thread.currentThread().isInterrupted() || state.isStopped()) {
+                reportStopped(state, job);
+            } else {
+                queue.finished(job, false);
+                listeners.forEach(listener -> listener.onFailed(urlStr, describe(e)));
+            }
 
-                bytesDownloaded.put(urlStr, totalBytesRead);
+        } finally {
+            state.stop();
+            closeQuietly(response);
+            if (permit != null) permit.close();
+        }
+    }
 
-                int percent = (int) ((totalBytesRead * 100) / contentLength);
-                SwingUtilities.invokeLater(() -> progressBar.setValue(percent));
+    /**
+     * Downloads a file as a single stream, when it cannot be fetched as byte ranges.
+     * <p>
+     * Without ranges a broken transfer cannot continue where it stopped, so a retry
+     * requests the whole file again and overwrites what was written.
+     * </p>
+     * <p>
+     * The length may be unknown, e.g. for a chunked response: the file is then written
+     * until the body ends, and the download's total is only set once it is complete.
+     * Nothing is buffered beyond a single write buffer, whatever the size of the file.
+     * </p>
+     *
+     * @param state      The live state of the download
+     * @param remoteFile The probed remote file, with a length of {@code -1} if unknown
+     * @param outputFile The file to write into
+     * @param verifier   The checksum to verify the file against, or {@code null}
+     * @param response   The response to the probe if it carries the whole file, or {@code null}
+     *                   to request it; closed by this method
+     * @param permit     The permit of the probe's connection, or {@code null}; closed by this method
+     * @throws IOException          If the transfer fails for good or the checksum does not match
+     * @throws InterruptedException If the download is stopped
+     */
+    private void downloadStream(DownloadState state, RemoteFile remoteFile, File outputFile,
+                                ChecksumVerifier verifier, TransportResponse response,
+                                ConnectionLimiter.Permit permit) throws IOException, InterruptedException {
+        long contentLength = remoteFile.length();
+        try (FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            if (contentLength >= 0) {
+                FileUtils.preallocate(out, contentLength);
             }
 
-            SwingUtilities.invokeLater(() -> console.append("Downloaded: " + finalFileName + "\n"));
+            Segment segment;
+            for (int attempt = 0; ; attempt++) {
+                try {
+                    if (response == null) {
+                        permit = connectionLimiter.acquire(remoteFile.uri().getHost());
+                        response = transport.get(remoteFile.uri(), Map.of());
+                        if (response.statusCode() != HTTP_OK) {
+                            throw HttpStatusException.of(response, "Server returned HTTP " + response.statusCode());
+                        }
+                        if (contentLength >= 0 && response.contentLength() >= 0
+                                && response.contentLength() != contentLength) {
+                            throw new HttpStatusException(HTTP_OK, "Remote file changed since the download started", -1);
+                        }
+                    }
 
-        } catch (Exception e) {
-            SwingUtilities.invokeLater(() ->
-                    console.append("Error downloading: " + urlStr + "\n" + e.getMessage() + "\n"));
+                    segment = contentLength >= 0 ? new Segment(0, contentLength - 1) : Segment.openEnded(0);
+                    if (verifier != null) {
+                        verifier.prepare(List.of(segment), out);
+                    }
+                    transfer(state, response.body(), SegmentWriter.of(out), segment,
+                            verifier != null ? verifier.hasher(segment) : null);
+                    break;
+                } catch (IOException e) {
+                    closeQuietly(response);
+                    response = null;
+                    if (permit != null) {
+                        permit.close();
+                        permit = null;
+                    }
+                    awaitRetry(state, e, attempt);
+                    state.discardProgress();
+                }
+            }
 
+            if (segment.isOpenEnded()) {
+                // An earlier, failed attempt may have written past the end of the file
+                out.truncate(segment.getPosition());
+                state.setTotalBytes(segment.getPosition());
+            }
         } finally {
-            if (in != null) in.close();
-            if (out != null) out.close();
-            if (connection != null) connection.disconnect();
+            closeQuietly(response);
+            if (permit != null) permit.close();
         }
+        verifyChecksum(verifier, outputFile, null);
     }
 
     /**
-     * Stops a specific download by its URL.
+     * Waits before a failed request is repeated, or gives up.
+     *
+     * @param state   The live state of the download
+     * @param error   The failure
+     * @param attempt How often the request has been retried without making progress
+     * @throws IOException If the failure is permanent, the retries are used up or the download is stopped
+     */
+    private void awaitRetry(DownloadState state, IOException error, int attempt) throws IOException {
+        if (Thread.currentThread().isInterrupted() || state.isStopped()) {
+            throw new InterruptedIOException("Download stopped");
+        }
+        long delay = retryPolicy.delayMillis(error, attempt);
+        if (delay < 0) throw error;
+
+        listeners.forEach(listener -> listener.onMessage(state.getUrl(), "Retrying in " + delay + " ms after "
+                + describe(error) + ": " + state.getUrl()));
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Download stopped");
+        }
+    }
+
+    /**
+     * Looks up a completed earlier download of the URL that can be revalidated instead of
+     * fetched again.
      * <p>
-     * The corresponding future task is cancelled, and tracking data is removed.
+     * The recorded file must still be in the requested directory with the size and
+     * modification time it had when it was written, so a file that was deleted, moved or
+     * edited locally is downloaded again even if the server copy is unchanged.
      * </p>
      *
-     * @param url The URL of the download to stop
+     * @return The index entry, or {@code null} if the file has to be downloaded
      */
-    public void stopDownload(String url) {
-        Future<?> future = downloadTasks.remove(url);
-        if (future != null) {
-            future.cancel(true);
-            downloadSpeeds.remove(url);
-            bytesDownloaded.remove(url);
+    private DownloadIndex.Entry findUnchangedCopy(DownloadIndex index, String url, String downloadDir) {
+        if (index == null) return null;
+
+        try {
+            DownloadIndex.Entry entry = index.get(url);
+            if (entry == null) return null;
+
+            File file = new File(entry.path());
+            File directory = new File(downloadDir).getAbsoluteFile();
+            boolean unchanged = file.isFile()
+                    && file.length() == entry.size()
+                    && file.lastModified() == entry.fileModified()
+                    && directory.toPath().normalize().equals(file.getParentFile().toPath().normalize());
+            return unchanged ? entry : null;
+        } catch (IOException e) {
+            listeners.forEach(listener -> listener.onMessage(url, "Download cache unavailable: " + e.getMessage()));
+            return null;
         }
     }
 
     /**
-     * Stops all active downloads.
+     * Records a completed download in the index, if the server gave it a validator.
+     * A failure only costs a full download next time, so it is reported but not fatal.
+     */
+    private void recordCompleted(DownloadIndex index, RemoteFile remoteFile, File outputFile) {
+        if (index == null || (remoteFile.etag() == null && remoteFile.lastModified() == null)) return;
+
+        String url = remoteFile.uri().toString();
+        try {
+            index.put(new DownloadIndex.Entry(url, remoteFile.etag(), remoteFile.lastModified(),
+                    outputFile.length(), outputFile.getAbsolutePath(), outputFile.lastModified()));
+        } catch (IOException e) {
+            listeners.forEach(listener -> listener.onMessage(url, "Cannot update download cache: " + e.getMessage()));
+        }
+    }
+
+    /**
+     * Tells the listeners that a download was stopped, or only paused to make room
+     * for a higher priority download.
+     */
+    private void reportStopped(DownloadState state, DownloadScheduler.Job job) {
+        String url = state.getUrl();
+        queue.finished(job, true);
+        if (state.isPaused()) {
+            listeners.forEach(listener -> listener.onMessage(url, "Paused: " + url));
+        } else {
+            listeners.forEach(listener -> listener.onStopped(url));
+        }
+    }
+
+    /**
+     * Downloads a file as byte ranges fetched concurrently.
      * <p>
-     * Cancels all running future tasks and clears the download tracking maps.
+     * The target file is preallocated up front so every segment can write into its own
+     * offset independently. With auto resume enabled, progress is checkpointed into a
+     * {@link DownloadJournal} every {@value #CHECKPOINT_INTERVAL_MS} ms and when the
+     * download stops or fails, and a matching journal from an earlier attempt is picked
+     * up so only the missing ranges are fetched. The call blocks until all segments have
+     * finished; if one of them fails, or the download is stopped, the remaining ones are
+     * cancelled and waited for, so no connection of this run still writes to the file once
+     * the call returns and a resumed run may take it over.
      * </p>
+     * <p>
+     * Segments are not fixed: a {@link SegmentBalancer} hands the slowest remaining range
+     * to connections that finish early and tunes the number of connections between one and
+     * {@value #MAX_SEGMENTS_PER_FILE} every {@value #BALANCE_INTERVAL_MS} ms. Ranges are
+     * fetched from the added URL and every mirror that passes {@link #probeSources}; a
+     * failing mirror is dropped, a failing connection without another source fails the
+     * download. A checksum that cannot be combined across byte ranges limits the download
+     * to a single segment, so it can still be computed inline.
+     * </p>
+     *
+     * @param state      The live state of the download
+     * @param remoteFile The probed remote file
+     * @param outputFile The file to write into
+     * @param verifier   The checksum to verify the file against, or {@code null}
+     * @throws IOException          If any segment fails or the checksum does not match
+     * @throws InterruptedException If the download is stopped while waiting for the segments
      */
-    public void stopAllDownloads() {
-        for (Future<?> future : downloadTasks.values()) {
-            future.cancel(true);
+    private void downloadSegmented(DownloadState state, RemoteFile remoteFile, File outputFile,
+                                   ChecksumVerifier verifier) throws IOException, InterruptedException {
+        long contentLength = remoteFile.length();
+        DownloadJournal journal = autoResume ? new DownloadJournal(outputFile, remoteFile) : null;
+
+        List<Segment> segments = null;
+        if (journal != null && outputFile.length() == contentLength) {
+            segments = journal.load();
+        }
+        boolean singleSegment = !segmentedMode || (verifier != null && !verifier.supportsSegments());
+        List<DownloadSource> sources = probeSources(state, remoteFile);
+        int connections = singleSegment ? 1 : Math.max(segmentsPerFile, sources.size());
+        if (segments != null && singleSegment && segments.size() > 1) {
+            segments = null;    // Journaled by a segmented run; a single stream has to start over
+        }
+        if (segments != null) {
+            long resumedBytes = Segment.completedBytes(segments);
+            listeners.forEach(listener -> listener.onMessage(state.getUrl(),
+                    "Resuming at " + resumedBytes + " bytes: " + state.getUrl()));
+        } else {
+            segments = Segment.split(contentLength, connections, MIN_SEGMENT_SIZE);
+        }
+
+        state.setResumedBytes(Segment.completedBytes(segments));
+
+        try (FileChannel file = FileChannel.open(outputFile.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            FileUtils.preallocate(file, contentLength);
+            if (verifier != null) {
+                verifier.prepare(segments, file);
+            }
+
+            int perHost = connectionLimiter.getMaxConnectionsPerHost();
+            long hosts = sources.stream().map(source -> source.getRemoteFile().uri().getHost()).distinct().count();
+            SegmentBalancer balancer = new SegmentBalancer(segments, sources, connections,
+                    (int) Math.min(MAX_SEGMENTS_PER_FILE, perHost * hosts), perHost,
+                    MIN_STEAL_SIZE, 2L * BufferPool.MAX_BUFFER_SIZE, !singleSegment && adaptiveSegments);
+            CompletionService<Segment> completion = new ExecutorCompletionService<>(executor);
+            Map<Future<Segment>, SegmentWorker> workers = new HashMap<>();
+            MappedOutput mappedOutput = memoryMappedOutput
+                    ? new MappedOutput(e -> listeners.forEach(listener -> listener.onMessage(state.getUrl(),
+                            "Memory-mapped output unavailable, writing through the channel: " + describe(e))))
+                    : null;
+
+            try {
+                startSegments(balancer, completion, workers, state, outputFile, mappedOutput, verifier);
+
+                long lastCheckpoint = System.nanoTime();
+                long lastSample = lastCheckpoint;
+                long lastBytes = state.getBytesDownloaded();
+                while (balancer.isRunning()) {
+                    Future<Segment> finished = completion.poll(BALANCE_INTERVAL_MS, TimeUnit.MILLISECONDS);
+                    if (finished != null) {
+                        Segment segment = workers.remove(finished).segment;
+                        try {
+                            finished.get();
+                            balancer.finished(segment);
+                        } catch (ExecutionException e) {
+                            dropSource(state, balancer, segment, e);
+                        }
+                    }
+
+                    long now = System.nanoTime();
+                    if (connectionLimiter.getMaxConnectionsPerHost() != perHost) {
+                        perHost = connectionLimiter.getMaxConnectionsPerHost();
+                        balancer.setMaxConnections((int) Math.min(MAX_SEGMENTS_PER_FILE, perHost * hosts),
+                                perHost, now);
+                    }
+                    if (now - lastSample >= TimeUnit.MILLISECONDS.toNanos(BALANCE_INTERVAL_MS)) {
+                        long bytes = state.getBytesDownloaded();
+                        balancer.sample((bytes - lastBytes) * 1e9 / (now - lastSample), now);
+                        lastBytes = bytes;
+                        lastSample = now;
+                    }
+                    startSegments(balancer, completion, workers, state, outputFile, mappedOutput, verifier);
+
+                    if (now - lastCheckpoint >= TimeUnit.MILLISECONDS.toNanos(CHECKPOINT_INTERVAL_MS)) {
+                        checkpoint(file, mappedOutput, journal, balancer.getSegments());
+                        lastCheckpoint = now;
+                    }
+                }
+            } catch (ExecutionException e) {
+                stopWorkers(workers);
+                checkpoint(file, mappedOutput, journal, balancer.getSegments());
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            } catch (InterruptedException e) {
+                stopWorkers(workers);
+                checkpoint(file, mappedOutput, journal, balancer.getSegments());
+                throw e;
+            }
+        }
+
+        verifyChecksum(verifier, outputFile, journal);
+        if (journal != null) {
+            journal.delete();
         }
-        downloadTasks.clear();
-        downloadSpeeds.clear();
-        bytesDownloaded.clear();
     }
 
     /**
-     * Returns the total download speed of all active downloads.
+     * Starts a worker for every range the balancer assigns to a new connection.
      * <p>
-     * It sums the speeds of all currently active downloads.
+     * The hasher of a segment is looked up here, on the coordinating thread, because
+     * looking it up may register a segment that was just split off.
+     * </p>
+     */
+    private void startSegments(SegmentBalancer balancer, CompletionService<Segment> completion,
+                               Map<Future<Segment>, SegmentWorker> workers, DownloadState state,
+                               File outputFile, MappedOutput mappedOutput, ChecksumVerifier verifier) {
+        SegmentBalancer.Assignment assignment;
+        while ((assignment = balancer.assign(System.nanoTime())) != null) {
+            Segment segment = assignment.segment();
+            RemoteFile remoteFile = assignment.source().getRemoteFile();
+            ChecksumVerifier.SegmentHasher hasher = verifier != null ? verifier.hasher(segment) : null;
+            SegmentWorker worker = new SegmentWorker(segment);
+            workers.put(completion.submit(() -> {
+                if (!worker.claimed.compareAndSet(false, true)) return segment;     // Stopped before it started
+                try {
+                    downloadSegment(state, remoteFile, outputFile, mappedOutput, segment, hasher);
+                } finally {
+                    worker.ended.countDown();
+                }
+                return segment;
+            }), worker);
+        }
+    }
+
+    /**
+     * Cancels the connections of a segmented download and waits until they have ended.
+     * <p>
+     * A cancelled task counts as done at once, while its connection may still be writing,
+     * so the wait is on the connections themselves. A task that had not started yet is
+     * claimed here and never starts.
+     * </p>
+     */
+    private static void stopWorkers(Map<Future<Segment>, SegmentWorker> workers) {
+        workers.keySet().forEach(future -> future.cancel(true));
+
+        boolean interrupted = false;
+        for (SegmentWorker worker : workers.values()) {
+            if (worker.claimed.compareAndSet(false, true)) continue;
+            while (true) {
+                try {
+                    worker.ended.await();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * A connection of a segmented download.
+     */
+    private static final class SegmentWorker {
+
+        private final Segment segment;
+        private final AtomicBoolean claimed = new AtomicBoolean();     // Set by the task, or by stopWorkers first
+        private final CountDownLatch ended = new CountDownLatch(1);    // Counted down once a started task ends
+
+        private SegmentWorker(Segment segment) {
+            this.segment = segment;
+        }
+    }
+
+    /**
+     * Handles a failed connection by dropping its source, so the rest of its range is
+     * fetched from another mirror.
+     *
+     * @throws ExecutionException The failure, if the download was stopped or has no other source left
+     */
+    private void dropSource(DownloadState state, SegmentBalancer balancer, Segment segment, ExecutionException e)
+            throws ExecutionException {
+        DownloadSource source = balancer.getSource(segment);
+        boolean firstFailure = source != null && !source.isFailed();
+        if (isStop(e.getCause()) || !balancer.failed(segment)) {
+            throw e;
+        }
+        if (firstFailure) {
+            listeners.forEach(listener -> listener.onMessage(state.getUrl(),
+                    "Dropping source " + source + ": " + describe(e.getCause())));
+        }
+    }
+
+    /**
+     * Finds the servers a segmented download can fetch from.
+     * <p>
+     * Every mirror of the download is asked for the last {@value #FINGERPRINT_SIZE} bytes
+     * of the file, as is the URL that was added, and only mirrors that support ranges,
+     * report the same length and return the same bytes are used. A mirror serving another
+     * version of the file is thereby dropped before it writes anything.
      * </p>
      *
-     * @return The total download speed in KB/s
+     * @param state      The live state of the download
+     * @param remoteFile The probed remote file of the URL that was added
+     * @return The sources, the URL that was added first
+     * @throws IOException          If the URL that was added cannot be read
+     * @throws InterruptedException If the download is stopped while probing
      */
-    public long getTotalSpeed() {
-        return downloadSpeeds.values().stream().mapToLong(Long::longValue).sum();
+    private List<DownloadSource> probeSources(DownloadState state, RemoteFile remoteFile)
+            throws IOException, InterruptedException {
+        List<DownloadSource> sources = new ArrayList<>();
+        sources.add(new DownloadSource(remoteFile));
+        List<String> mirrorUrls = mirrors.get(state.getUrl());
+        if (mirrorUrls == null || mirrorUrls.isEmpty()) return sources;
+
+        long length = remoteFile.length();
+        Future<Probe> reference = executor.submit(() ->
+                probeRange(remoteFile.uri(), length, remoteFile.rangeValidator()));
+        List<Future<Probe>> probes = new ArrayList<>(mirrorUrls.size());
+        for (String mirrorUrl : mirrorUrls) {
+            probes.add(executor.submit(() -> probeRange(URI.create(mirrorUrl), length, null)));
+        }
+
+        try {
+            byte[] fingerprint;
+            try {
+                fingerprint = reference.get().tail();
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+            }
+
+            for (int i = 0; i < probes.size(); i++) {
+                String mirrorUrl = mirrorUrls.get(i);
+                String problem;
+                try {
+                    Probe probe = probes.get(i).get();
+                    if (Arrays.equals(probe.tail(), fingerprint)) {
+                        sources.add(new DownloadSource(probe.remoteFile()));
+                        continue;
+                    }
+                    problem = "content differs";
+                } catch (ExecutionException e) {
+                    problem = describe(e.getCause());
+                }
+                String reason = problem;
+                listeners.forEach(listener -> listener.onMessage(state.getUrl(),
+                        "Dropping mirror " + mirrorUrl + ": " + reason));
+            }
+        } finally {
+            reference.cancel(true);
+            probes.forEach(probe -> probe.cancel(true));
+        }
+        return sources;
+    }
+
+    /**
+     * Returns whether an error means the download was stopped. A timeout is an
+     * {@link InterruptedIOException} too, but it is a failure of the connection.
+     */
+    private static boolean isStop(Throwable error) {
+        return error instanceof InterruptedIOException && !(error instanceof SocketTimeoutException);
+    }
+
+    /**
+     * Describes an error for a message, also when it carries no message of its own.
+     */
+    private static String describe(Throwable error) {
+        return error.getMessage() != null ? error.getMessage() : error.getClass().getSimpleName();
+    }
+
+    /**
+     * What a mirror returned for the tail of the file.
+     */
+    private record Probe(RemoteFile remoteFile, byte[] tail) {
+    }
+
+    /**
+     * Fetches the last {@value #FINGERPRINT_SIZE} bytes of a file with a {@code Range} request.
+     *
+     * @param uri       The URI of the file
+     * @param length    The length the file must have
+     * @param validator Sent as {@code If-Range} if not {@code null}
+     * @return The remote file as described by the response, and the bytes
+     * @throws IOException If the server does not return the range of a file of that length
+     */
+    private Probe probeRange(URI uri, long length, String validator) throws IOException, InterruptedException {
+        long start = Math.max(0, length - FINGERPRINT_SIZE);
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", "bytes=" + start + "-" + (length - 1));
+        if (validator != null) {
+            headers.put("If-Range", validator);
+        }
+
+        ConnectionLimiter.Permit permit = connectionLimiter.acquire(uri.getHost());
+        try (permit; TransportResponse response = transport.get(uri, headers)) {
+            if (response.statusCode() != HTTP_PARTIAL) {
+                throw new IOException("No range support (HTTP " + response.statusCode() + ")");
+            }
+            long total = parseTotalLength(response.header("Content-Range"));
+            if (total != length) {
+                throw new IOException("Length " + total + " instead of " + length);
+            }
+            byte[] tail = response.body().readNBytes((int) (length - start));
+            RemoteFile remoteFile = new RemoteFile(uri, length, response.header("ETag"),
+                    response.header("Last-Modified"), response.header("Content-Type"), true);
+            return new Probe(remoteFile, tail);
+        }
+    }
+
+    /**
+     * Checks the checksum of a completed file. A file that does not match is deleted
+     * together with its journal, so adding it again downloads it from scratch.
+     *
+     * @param verifier   The checksum computed while writing, or {@code null} to skip the check
+     * @param outputFile The completed file
+     * @param journal    The resume journal of the file, or {@code null}
+     * @throws IOException If the checksum does not match
+     */
+    private void verifyChecksum(ChecksumVerifier verifier, File outputFile, DownloadJournal journal)
+            throws IOException {
+        if (verifier == null) return;
+
+        try {
+            verifier.verify();
+        } catch (IOException e) {
+            if (journal != null) {
+                journal.delete();
+            }
+            Files.deleteIfExists(outputFile.toPath());
+            throw e;
+        }
+    }
+
+    /**
+     * Makes the written data durable and then records the segment positions in the journal.
+     * <p>
+     * Positions are captured before the file is synced, so the journal never claims bytes
+     * that might still be lost in a crash. Mapped windows are flushed on their own, since
+     * syncing the channel does not cover them on every platform.
+     * </p>
+     */
+    private static void checkpoint(FileChannel file, MappedOutput mappedOutput, DownloadJournal journal,
+                                   List<Segment> segments) throws IOException {
+        if (journal == null) return;
+
+        List<Segment> snapshot = Segment.snapshot(segments);
+        if (mappedOutput != null) {
+            mappedOutput.force();
+        }
+        file.force(false);
+        journal.save(snapshot);
+    }
+
+    /**
+     * Fetches a segment, repeating the request for the part still missing when it fails.
+     * <p>
+     * Only the remaining bytes of the segment are requested again, so a connection reset
+     * late in a large file costs one round trip and the backoff delay. The retry count
+     * starts over whenever an attempt made progress.
+     * </p>
+     *
+     * @param state      The live state of the download
+     * @param remoteFile The remote file to fetch from
+     * @param outputFile   The preallocated file to write into
+     * @param mappedOutput The mapped windows of the file, or {@code null} to write through the channel
+     * @param segment      The byte range to fetch
+     * @param hasher       Receives the bytes of the segment for the checksum, or {@code null}
+     * @throws IOException If the segment cannot be fetched within the retry policy
+     */
+    private void downloadSegment(DownloadState state, RemoteFile remoteFile, File outputFile,
+                                 MappedOutput mappedOutput, Segment segment,
+                                 ChecksumVerifier.SegmentHasher hasher) throws IOException {
+        int attempt = 0;
+        while (true) {
+            long position = segment.getPosition();
+            try {
+                requestSegment(state, remoteFile, outputFile, mappedOutput, segment, hasher);
+                return;
+            } catch (IOException e) {
+                if (segment.getPosition() > position) {
+                    attempt = 0;
+                }
+                awaitRetry(state, e, attempt++);
+            }
+        }
+    }
+
+    /**
+     * Requests the rest of a segment with a single {@code Range} request and writes it at its offset.
+     * <p>
+     * When the server gave us a validator it is sent as {@code If-Range}, so a file that
+     * changed since the probe is answered with a full response instead of mixing versions.
+     * Each worker writes through its own channel: stopping a download interrupts its
+     * workers, and an interrupted write closes the channel it was using.
+     * </p>
+     *
+     * @param state      The live state of the download
+     * @param remoteFile The probed remote file
+     * @param outputFile   The preallocated file to write into
+     * @param mappedOutput The mapped windows of the file, or {@code null} to write through the channel
+     * @param segment      The byte range to fetch
+     * @param hasher       Receives the bytes of the segment for the checksum, or {@code null}
+     * @throws IOException If the connection fails or the server does not honour the range
+     */
+    private void requestSegment(DownloadState state, RemoteFile remoteFile, File outputFile,
+                                MappedOutput mappedOutput, Segment segment,
+                                ChecksumVerifier.SegmentHasher hasher) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        headers.put("Range", "bytes=" + segment.getPosition() + "-" + segment.getEnd());
+        String validator = remoteFile.rangeValidator();
+        if (validator != null) {
+            headers.put("If-Range", validator);
+        }
+
+        try {
+            ConnectionLimiter.Permit permit = connectionLimiter.acquire(remoteFile.uri().getHost());
+            try (permit; TransportResponse response = transport.get(remoteFile.uri(), headers)) {
+                int status = response.statusCode();
+                if (status == HTTP_OK && validator != null) {
+                    throw new HttpStatusException(status, "Remote file changed since the download started", -1);
+                }
+                if (status == HTTP_OK) {
+                    throw new HttpStatusException(status, "Server ignored range request for " + segment, -1);
+                }
+                if (status != HTTP_PARTIAL) {
+                    throw HttpStatusException.of(response, "Server returned HTTP " + status + " for " + segment);
+                }
+
+                try (FileChannel channel = mappedOutput != null
+                        ? FileChannel.open(outputFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)
+                        : FileChannel.open(outputFile.toPath(), StandardOpenOption.WRITE);
+                     SegmentWriter out = mappedOutput != null ? mappedOutput.writer(channel) : SegmentWriter.of(channel)) {
+                    transfer(state, response.body(), out, segment, hasher);
+                }
+            }
+        } catch (InterruptedException e) {
+            throw new InterruptedIOException("Download stopped");
+        }
+    }
+
+    /**
+     * Copies a response body into its byte range of the target file.
+     * <p>
+     * Socket reads are gathered into a buffer from the shared {@link BufferPool}, which is
+     * written with a single write once it is full, so the disk sees few large writes no
+     * matter how small the reads are. The buffer is sized to fill in about
+     * {@value #BUFFER_FILL_MS} ms at the measured rate of the connection: a slow connection
+     * holds little memory, a fast one makes few writes. The size is revised every
+     * {@value #BUFFER_RESIZE_MS} ms and passed on to the next connection of the download;
+     * apart from such a swap, the loop allocates nothing. The segment only advances once its
+     * bytes have been written, so journaled positions never run ahead of the file. The
+     * hasher is fed right after the write, so when a connection fails its hasher still
+     * matches the segment position and another connection can carry on from there.
+     * </p>
+     * <p>
+     * The body is read straight into the buffer's backing array rather than through
+     * {@link java.nio.channels.Channels#newChannel(InputStream)}: that adapter blocks
+     * inside a monitor, which pins the carrier of the virtual thread for the whole read.
+     * </p>
+     * <p>
+     * The copy is watched by the {@link StallDetector}. Reads are reported to it one by
+     * one, so time spent waiting for a speed limit does not count as a blocked read.
+     * </p>
+     *
+     * @param state   The live state of the download
+     * @param in      The response body, positioned at the first byte of the segment
+     * @param out     The writer of the target file
+     * @param segment The byte range being copied; an open-ended one is complete when the body ends
+     * @param hasher  Receives every byte once it is written, or {@code null}
+     * @throws IOException If reading or writing fails, the transfer stalls, or the body ends
+     *                     before the segment is complete
+     */
+    private void transfer(DownloadState state, InputStream in, SegmentWriter out, Segment segment,
+                          ChecksumVerifier.SegmentHasher hasher) throws IOException {
+        BandwidthLimiter downloadLimiter = state.getLimiter();
+        int hint = state.getBufferSize();
+        ByteBuffer buffer = bufferPool.acquire(BufferPool.sizeFor(
+                Math.min(segment.getRemaining(), hint > 0 ? hint : bufferSize)));
+        long sizedNanos = System.nanoTime();
+        long sizedPosition = segment.getPosition();
+        boolean endOfStream = false;
+
+        StallDetector.Watch watch = stallDetector.watch(downloadLimiter);
+        try {
+            while (!segment.isComplete() && !endOfStream) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), segment.getRemaining()));
+
+                while (buffer.hasRemaining()) {
+                    watch.beginRead();
+                    int bytesRead = in.read(buffer.array(), buffer.position(), buffer.remaining());
+                    watch.endRead(bytesRead);
+                    if (bytesRead == -1) {
+                        endOfStream = true;
+                        break;
+                    }
+                    buffer.position(buffer.position() + bytesRead);
+                    if (Thread.currentThread().isInterrupted() || state.isStopped()) {
+                        throw new InterruptedIOException("Download stopped");
+                    }
+                    BandwidthLimiter.acquire(bytesRead, downloadLimiter, globalLimiter);
+                    state.addBytes(bytesRead);
+                }
+
+                buffer.flip();
+                int length = buffer.remaining();
+                out.write(buffer, segment.getPosition());
+                if (hasher != null) {
+                    hasher.update(buffer.array(), 0, length);
+                }
+                segment.advance(length);
+
+                long now = System.nanoTime();
+                if (now - sizedNanos >= TimeUnit.MILLISECONDS.toNanos(BUFFER_RESIZE_MS)) {
+                    long bytesPerSecond = (segment.getPosition() - sizedPosition) * 1_000_000_000L / (now - sizedNanos);
+                    int size = BufferPool.sizeFor(bytesPerSecond * BUFFER_FILL_MS / 1000);
+                    if (size != buffer.capacity()) {
+                        bufferPool.release(buffer);
+                        buffer = bufferPool.acquire(size);
+                    }
+                    state.setBufferSize(size);
+                    sizedNanos = now;
+                    sizedPosition = segment.getPosition();
+                }
+            }
+        } catch (IOException e) {
+            throw watch.explain(e);
+        } finally {
+            watch.close();
+            bufferPool.release(buffer);
+        }
+
+        if (!segment.isComplete() && !segment.isOpenEnded()) {
+            throw new IOException("Connection closed before " + segment + " was complete");
+        }
+    }
+
+    /**
+     * Resolves a sanitized output file for the download and creates its parent directory.
+     *
+     * @param uri         The URI of the file
+     * @param contentType The content type reported by the server, may be {@code null}
+     * @param downloadDir The directory to save the file
+     * @return The file to write the download into
+     */
+    private File createOutputFile(URI uri, String contentType, String downloadDir) {
+        // Extract and sanitize filename
+        String path = uri.getRawPath() != null ? uri.getRawPath() : "";
+        String fileName = path.substring(path.lastIndexOf('/') + 1);
+        if (fileName.isEmpty()) {
+            fileName = "downloaded_file";
+        }
+        fileName = fileName.replaceAll("[\\\\/:*?\"<>|&=]", "_");
+
+        // Infer extension using FileUtils
+        if (!fileName.contains(".") && contentType != null) {
+            String extension = FileUtils.getExtensionFromContentType(contentType);
+            if (extension != null) {
+                fileName += "." + extension;
+            }
+        }
+
+        File outputFile = new File(downloadDir, fileName);
+        outputFile.getParentFile().mkdirs();
+        return outputFile;
+    }
+
+    /**
+     * Extracts the complete length from a {@code Content-Range} header such as {@code bytes 0-0/1234}.
+     *
+     * @param contentRange The header value, may be {@code null}
+     * @return The total length, or {@code -1} if it is missing or unknown
+     */
+    private static long parseTotalLength(String contentRange) {
+        if (contentRange == null) return -1;
+
+        int slash = contentRange.lastIndexOf('/');
+        try {
+            return slash < 0 ? -1 : Long.parseLong(contentRange.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Closes a stream or channel, ignoring errors; used where the download outcome is already decided.
+     */
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) return;
+        try {
+            closeable.close();
+        } catch (Exception ignored) {
+        }
+    }
+
+    /**
+     * Publishes one coalesced batch of progress updates for all downloads that moved.
+     * <p>
+     * Runs on the progress tick; transfer threads never call listeners for progress.
+     * </p>
+     */
+    private void publishProgress() {
+        progressLock.lock();
+        try {
+            List<DownloadProgress> updates = new ArrayList<>();
+            for (DownloadState state : downloads.values()) {
+                DownloadProgress update = state.takeProgressUpdate();
+                if (update != null) {
+                    updates.add(update);
+                }
+            }
+            if (!updates.isEmpty()) {
+                listeners.forEach(listener -> listener.onProgress(updates));
+            }
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the final progress of a single download before its lifecycle event.
+     * <p>
+     * Shares the lock with the progress tick, so a stale batch can never arrive after it.
+     * </p>
+     */
+    private void publishProgress(DownloadState state) {
+        progressLock.lock();
+        try {
+            DownloadProgress update = state.takeProgressUpdate();
+            if (update != null) {
+                List<DownloadProgress> updates = List.of(update);
+                listeners.forEach(listener -> listener.onProgress(updates));
+            }
+        } finally {
+            progressLock.unlock();
+        }
+    }
+
+    /**
+     * Applies a complete set of settings.
+     * <p>
+     * Running transfers pick up the new limits right away and keep their connections:
+     * raised connection and download limits let waiting connections and queued downloads
+     * start at once, lowered ones only hold back new connections and downloads until
+     * enough have finished, and the speed limit applies from the next read. Segmented
+     * downloads adjust how many connections they tune towards as the per-host limit
+     * changes. Timeouts and retries apply to the next request, while segmented mode,
+     * auto-resume and the number of segments apply to downloads started afterwards.
+     * The download directory is only recorded; the caller picks the directory of each
+     * download.
+     * </p>
+     *
+     * @param config The settings to use
+     */
+    public void applyConfig(DownloadConfig config) {
+        configLock.lock();
+        try {
+            connectionLimiter.setLimits(config.maxConnections(), config.maxConnectionsPerHost());
+            queue.setLimits(config.maxActiveDownloads(), config.maxActiveDownloadsPerHost());
+            globalLimiter.setRate(config.speedLimit());
+            transport.setTimeouts(config.connectTimeout(), config.readTimeout());
+            stallDetector.setReadTimeout(config.readTimeout().toMillis());
+            retryPolicy = retryPolicy.withMaxRetries(config.maxRetries());
+            segmentsPerFile = config.segmentsPerFile();
+            bufferSize = config.bufferSize();
+            segmentedMode = config.segmentedMode();
+            autoResume = config.autoResume();
+            this.config = config;
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the settings in use, including changes made through the individual setters.
+     */
+    public DownloadConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * Changes some settings and applies the result.
+     */
+    private void updateConfig(UnaryOperator<DownloadConfig.Builder> change) {
+        configLock.lock();
+        try {
+            applyConfig(change.apply(config.toBuilder()).build());
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    /**
+     * Enables or disables segmented downloads for files added after this call.
+     * <p>
+     * With segmented mode off, files are still fetched through a single range request
+     * when the server allows it, so they remain resumable.
+     * </p>
+     *
+     * @param segmentedMode {@code true} to fetch files as parallel byte ranges when the server allows it
+     */
+    public void setSegmentedMode(boolean segmentedMode) {
+        updateConfig(builder -> builder.segmentedMode(segmentedMode));
+    }
+
+    /**
+     * Caps the combined speed of all downloads.
+     * <p>
+     * The new limit applies immediately to running transfers, including every
+     * segment of a segmented download.
+     * </p>
+     *
+     * @param bytesPerSecond The maximum total rate in bytes per second, or {@code 0} for no limit
+     */
+    public void setSpeedLimit(long bytesPerSecond) {
+        updateConfig(builder -> builder.speedLimit(Math.max(0, bytesPerSecond)));
+    }
+
+    /**
+     * Caps the speed of a single download, on top of the global limit.
+     * <p>
+     * The limit may be set before the download is added and applies immediately
+     * to a running download, shared across all of its segments.
+     * </p>
+     *
+     * @param url            The URL of the download
+     * @param bytesPerSecond The maximum rate in bytes per second, or {@code 0} for no limit
+     */
+    public void setDownloadSpeedLimit(String url, long bytesPerSecond) {
+        downloadLimiters.computeIfAbsent(url, key -> new BandwidthLimiter(0)).setRate(bytesPerSecond);
+    }
+
+    /**
+     * Sets the checksum a download must match.
+     * <p>
+     * The checksum is computed from the bytes as they are written, so the file is never
+     * read a second time; only the part written by an earlier run is read back when a
+     * download resumes. A download that does not match fails and its file is deleted.
+     * Message digests ({@code SHA-256}, {@code SHA-1}, {@code MD5}) can only be computed
+     * in file order and limit the download to one connection; {@code CRC32C} works with
+     * any number of segments.
+     * </p>
+     *
+     * @param url      The URL of the download
+     * @param checksum The expected checksum, or {@code null} to skip verification
+     */
+    public void setExpectedChecksum(String url, ExpectedChecksum checksum) {
+        if (checksum != null) {
+            expectedChecksums.put(url, checksum);
+        } else {
+            expectedChecksums.remove(url);
+        }
+    }
+
+    /**
+     * Sets other URLs the file of a download can be fetched from at the same time.
+     * <p>
+     * Byte ranges of a segmented download are spread over the URL that was added and its
+     * mirrors in proportion to the speed measured for each, so the download can be faster
+     * than any single server. A mirror that reports another length or returns different
+     * bytes is not used, and one that fails during the download is dropped and its range
+     * fetched elsewhere. The file is named after, and reported under, the added URL.
+     * </p>
+     *
+     * @param url        The URL of the download
+     * @param mirrorUrls The other URLs of the same file, or {@code null} to remove them
+     */
+    public void setMirrors(String url, List<String> mirrorUrls) {
+        if (mirrorUrls != null && !mirrorUrls.isEmpty()) {
+            mirrors.put(url, List.copyOf(mirrorUrls));
+        } else {
+            mirrors.remove(url);
+        }
+    }
+
+    /**
+     * Enables skipping downloads whose remote file has not changed.
+     * <p>
+     * Every completed download is recorded in an index in the given directory with its
+     * {@code ETag}, {@code Last-Modified}, size and path. When the same URL is added again
+     * and the earlier file is still in place, the request carries {@code If-None-Match}
+     * and {@code If-Modified-Since}; if the server answers {@code 304 Not Modified} the
+     * download completes right away with the existing file. The index is memory-mapped
+     * and opens instantly regardless of how many downloads it holds.
+     * </p>
+     *
+     * @param directory The directory for the index files, or {@code null} to disable the cache
+     * @throws IOException If the index cannot be opened
+     */
+    public void setDownloadCache(String directory) throws IOException {
+        DownloadIndex index = directory != null ? DownloadIndex.open(Path.of(directory)) : null;
+        DownloadIndex previous = downloadIndex;
+        downloadIndex = index;
+        if (previous != null) {
+            previous.close();
+        }
+    }
+
+    /**
+     * Keeps a persistent copy of the queue in the given directory and restores the
+     * downloads it holds.
+     * <p>
+     * Every download that is queued, started or leaves the queue is recorded in a log;
+     * the records are written together in the background, so adding or finishing a
+     * download does not wait for the disk, and a crash loses at most the last few
+     * milliseconds. See {@link QueueStore}. Downloads that were queued or running when the
+     * application last ended are queued again, the interrupted ones first; with auto-resume
+     * enabled they continue from their journals. Mirrors, checksums and speed limits are
+     * not part of the copy.
+     * </p>
+     *
+     * @param directory The directory for the queue files, or {@code null} to stop keeping a copy
+     * @throws IOException If the queue files cannot be read or created
+     */
+    public void setQueueStore(String directory) throws IOException {
+        QueueStore store = directory != null
+                ? QueueStore.open(Path.of(directory), e -> notifyMessage(null,
+                        "The download queue is no longer saved: " + e.getMessage()))
+                : null;
+        QueueStore previous = queueStore;
+        queueStore = store;
+        queue.setStore(store);
+        if (previous != null) {
+            previous.close();
+        }
+        if (store == null || store.recovered().isEmpty()) return;
+
+        List<QueueStore.Entry> recovered = store.recovered();
+        int restored = 0;
+        for (boolean running : new boolean[]{true, false}) {
+            for (QueueStore.Entry entry : recovered) {
+                if (entry.running() == running && enqueue(entry.url(), entry.downloadDir(), entry.priority())) {
+                    restored++;
+                }
+            }
+        }
+        notifyMessage(null, "Restored " + restored + " downloads from the saved queue");
+    }
+
+    /**
+     * Writes the pending changes of the saved queue and closes it.
+     * <p>
+     * Call before exiting to keep the last few milliseconds of changes; the queue itself
+     * is left as it is, so its downloads are restored on the next start.
+     * </p>
+     *
+     * @throws IOException If the queue could not be written
+     */
+    public void closeQueueStore() throws IOException {
+        QueueStore store = queueStore;
+        queueStore = null;
+        queue.setStore(null);
+        if (store != null) {
+            store.close();
+        }
+    }
+
+    /**
+     * Enables or disables writing segments through memory-mapped windows of the file.
+     * <p>
+     * A mapped write is a memory copy rather than a system call, which saves CPU at very
+     * high transfer rates; see {@link MappedOutput}. Downloads that cannot be mapped fall
+     * back to ordinary writes. Only segmented downloads use it, and only those started
+     * after the call.
+     * </p>
+     *
+     * @param memoryMappedOutput {@code true} to write through mapped windows
+     */
+    public void setMemoryMappedOutput(boolean memoryMappedOutput) {
+        this.memoryMappedOutput = memoryMappedOutput;
+    }
+
+    /**
+     * Enables or disables adapting segmented downloads while they run.
+     * <p>
+     * When enabled, which is the default, connections that finish early take over part of
+     * the slowest range and the number of connections per file follows the measured
+     * throughput; see {@link SegmentBalancer}. When disabled, a download keeps the
+     * segments it started with, one connection each, which makes its connection count
+     * predictable, e.g. for benchmarks. Applies to downloads started after the call.
+     * </p>
+     *
+     * @param adaptiveSegments {@code false} to keep the initial segments and connection count
+     */
+    public void setAdaptiveSegments(boolean adaptiveSegments) {
+        this.adaptiveSegments = adaptiveSegments;
+    }
+
+    /**
+     * Sets how failed requests are retried.
+     * <p>
+     * A failed connection of a segmented download only repeats the request for the bytes
+     * it has not written yet; see {@link RetryPolicy} for which failures are retried.
+     * </p>
+     *
+     * @param retryPolicy The retry policy, {@link RetryPolicy#NONE} to fail on the first error
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        configLock.lock();
+        try {
+            this.retryPolicy = retryPolicy;
+            updateConfig(builder -> builder.maxRetries(retryPolicy.getMaxRetries()));
+        } finally {
+            configLock.unlock();
+        }
+    }
+
+    /**
+     * Sets how long a request waits for the server.
+     * <p>
+     * The connect timeout bounds opening a connection, the read timeout both the wait for
+     * the response and every single read of the body. A request that times out is retried
+     * according to the {@link #setRetryPolicy(RetryPolicy) retry policy}. Both default to
+     * 30 seconds.
+     * </p>
+     *
+     * @param connectTimeout How long to wait for a connection, {@link Duration#ZERO} for no limit
+     * @param readTimeout    How long to wait for data, {@link Duration#ZERO} for no limit
+     */
+    public void setTimeouts(Duration connectTimeout, Duration readTimeout) {
+        updateConfig(builder -> builder.timeouts(connectTimeout, readTimeout));
+    }
+
+    /**
+     * Sets the lowest throughput a connection may keep up for a whole window.
+     * <p>
+     * A connection that stays below it is aborted and retried, or, if it keeps failing,
+     * its range is handed to another connection or mirror. Connections of a download with
+     * a speed limit are exempt. Defaults to 1 KB/s over 30 seconds.
+     * </p>
+     *
+     * @param minBytesPerSecond The lowest acceptable throughput, {@code 0} to only apply the read timeout
+     * @param window            How long the throughput may stay below it
+     */
+    public void setStallDetection(long minBytesPerSecond, Duration window) {
+        stallDetector.setMinimumSpeed(minBytesPerSecond, window.toMillis());
+    }
+
+    /**
+     * Enables or disables resumable downloads.
+     * <p>
+     * When enabled, partial downloads keep a sidecar journal so a stopped, failed or
+     * interrupted download continues from the last durable offset the next time the same
+     * URL is added. When disabled, downloads always start from the first byte.
+     * </p>
+     *
+     * @param autoResume {@code true} to journal and resume partial downloads
+     */
+    public void setAutoResume(boolean autoResume) {
+        updateConfig(builder -> builder.autoResume(autoResume));
+    }
+
+    /**
+     * Sets how many concurrent connections a single segmented download may use.
+     *
+     * @param segmentsPerFile The number of byte ranges per file, at least 1
+     */
+    public void setSegmentsPerFile(int segmentsPerFile) {
+        updateConfig(builder -> builder.segmentsPerFile(Math.max(1, segmentsPerFile)));
+    }
+
+    /**
+     * Limits how many downloads run at once; further downloads wait in the queue.
+     * <p>
+     * Raising a limit starts queued downloads right away. Lowering it lets running
+     * downloads finish and only holds back new ones.
+     * </p>
+     *
+     * @param maxActiveDownloads        The maximum number of running downloads, at least 1
+     * @param maxActiveDownloadsPerHost The maximum number of running downloads from one host, at least 1
+     */
+    public void setMaxActiveDownloads(int maxActiveDownloads, int maxActiveDownloadsPerHost) {
+        updateConfig(builder -> builder.maxActiveDownloads(Math.max(1, maxActiveDownloads),
+                Math.max(1, maxActiveDownloadsPerHost)));
+    }
+
+    /**
+     * Enables or disables pausing {@link DownloadPriority#LOW} downloads when a
+     * {@link DownloadPriority#HIGH} download is added and no slot is free.
+     * <p>
+     * A paused download goes back to the front of the queue and, with auto resume
+     * enabled, continues from its journal once it gets a slot again.
+     * </p>
+     *
+     * @param preemptLowPriority {@code true} to pause low priority downloads for high priority ones
+     */
+    public void setPreemptLowPriority(boolean preemptLowPriority) {
+        queue.setPreemptLowPriority(preemptLowPriority);
+    }
+
+    /**
+     * Returns the number of downloads waiting for a slot.
+     */
+    public int getQueuedCount() {
+        return queue.getQueuedCount();
+    }
+
+    /**
+     * Stops a specific download by its URL.
+     * <p>
+     * A queued download is simply removed from the queue. For a running download
+     * the corresponding future task is cancelled, and tracking data is removed.
+     * With auto resume enabled the partial file and its journal are kept, so adding
+     * the same URL again continues where this download stopped.
+     * </p>
+     *
+     * @param url The URL of the download to stop
+     */
+    public void stopDownload(String url) {
+        if (queue.removeQueued(url)) {
+            downloadLimiters.remove(url);
+            listeners.forEach(listener -> listener.onStopped(url));
+            return;
+        }
+
+        Future<?> future = downloadTasks.remove(url);
+        if (future != null) {
+            future.cancel(true);
+            downloads.remove(url);
+            downloadLimiters.remove(url);
+        }
+    }
+
+    /**
+     * Stops all active downloads.
+     * <p>
+     * Stops reading manifests and empties the queue first, so no queued download starts
+     * in place of a stopped one, then cancels all running future tasks and clears the
+     * download tracking maps.
+     * </p>
+     */
+    public void stopAllDownloads() {
+        imports.forEach(BulkImport::cancel);
+        for (String url : queue.clearQueued()) {
+            listeners.forEach(listener -> listener.onStopped(url));
+        }
+        for (Future<?> future : downloadTasks.values()) {
+            future.cancel(true);
+        }
+        downloadTasks.clear();
+        downloads.clear();
+        downloadLimiters.clear();
+    }
+
+    /**
+     * Returns the total download speed of all active downloads.
+     * <p>
+     * It sums the speeds of all currently active downloads.
+     * </p>
+     *
+     * @return The total download speed in KB/s
+     */
+    public long getTotalSpeed() {
+        return totalBytesPerSecond / 1024;
+    }
+
+    /**
+     * Returns the total download speed of all active downloads in bytes per second.
+     * <p>
+     * The value is refreshed every {@value #RATE_SAMPLE_MS} ms, so it is cheap to poll.
+     * </p>
+     *
+     * @return The sum of the rates of all running downloads
+     */
+    public long getTotalBytesPerSecond() {
+        return totalBytesPerSecond;
+    }
+
+    /**
+     * Returns how many transfer buffers are in use and pooled, and how often the pool
+     * could hand out a buffer instead of allocating one.
+     *
+     * @return A snapshot of the buffer pool
+     */
+    public BufferPoolStats getBufferPoolStats() {
+        return bufferPool.stats();
+    }
+
+    /**
+     * Returns the download speed of a single download.
+     *
+     * @param url The URL of the download
+     * @return The rate in bytes per second, or {@code 0} if the download is not running
+     */
+    public long getDownloadSpeed(String url) {
+        DownloadState state = downloads.get(url);
+        return state != null ? state.getBytesPerSecond() : 0;
     }
 }
@@ -0,0 +1,14 @@
+package com.multithreaded.downloader;
+
+/**
+ * The priority of a queued download.
+ * <p>
+ * Higher priorities are always dispatched first; downloads of equal priority are
+ * shared fairly across hosts.
+ * </p>
+ */
+public enum DownloadPriority {
+    HIGH,
+    NORMAL,
+    LOW
+}
@@ -0,0 +1,34 @@
+package com.multithreaded.downloader;
+
+/**
+ * A snapshot of how far a download has got.
+ *
+ * @param url             The URL of the download
+ * @param bytesDownloaded The number of bytes received so far, across all segments
+ * @param totalBytes      The size of the file in bytes, or {@code -1} if unknown
+ * @param bytesPerSecond  The transfer rate over the last few seconds
+ */
+public record DownloadProgress(String url, long bytesDownloaded, long totalBytes, long bytesPerSecond) {
+
+    /**
+     * Returns the completed percentage of the download.
+     *
+     * @return A value from 0 to 100, or {@code -1} if the size of the file is unknown
+     */
+    public int percent() {
+        if (totalBytes <= 0) return -1;
+        return (int) Math.min(100, bytesDownloaded * 100 / totalBytes);
+    }
+
+    /**
+     * Returns the estimated time until the download completes at the current rate.
+     *
+     * @return The remaining time in seconds, or {@code -1} if the size of the file is
+     *         unknown or nothing is being transferred
+     */
+    public long etaSeconds() {
+        if (totalBytes <= 0 || bytesPerSecond <= 0) return -1;
+        long remaining = Math.max(0, totalBytes - bytesDownloaded);
+        return (remaining + bytesPerSecond - 1) / bytesPerSecond;
+    }
+}
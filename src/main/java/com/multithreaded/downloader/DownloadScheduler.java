@@ -0,0 +1,411 @@
+package com.multithreaded.downloader;
+
+import java.net.URI;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Decides which queued downloads run, in front of {@link DownloadManager}.
+ * <p>
+ * Queued jobs are grouped by host. Each host keeps its jobs ordered by priority and
+ * submission order, and the hosts that may start another job are kept in a set ordered
+ * by the priority of their first job and by when they were last served. Dispatching
+ * takes the first host of that set, so jobs of equal priority are handed out round-robin
+ * across hosts and a large batch from one slow host cannot hold up the others. All
+ * operations are O(log n) in the number of queued jobs.
+ * </p>
+ * <p>
+ * The number of running jobs is capped overall and per host. Optionally a
+ * {@link DownloadPriority#HIGH} job that finds no free slot pauses a running
+ * {@link DownloadPriority#LOW} job, which goes back to the front of its queue and
+ * resumes from its journal when a slot frees up.
+ * </p>
+ * <p>
+ * With a {@link QueueStore} attached, every change to the set of queued and running jobs
+ * is recorded while holding the scheduler lock, so the store sees them in the order they
+ * happened.
+ * </p>
+ */
+class DownloadScheduler {
+
+    /**
+     * A download waiting for, or holding, a slot.
+     */
+    static final class Job {
+
+        private final String url;
+        private final String downloadDir;
+        private final DownloadPriority priority;
+        private final String host;
+        private final long sequence;
+        private boolean paused;
+        private boolean holdsSlot;      // Set while this run is in the running set
+
+        private Job(String url, String downloadDir, DownloadPriority priority, String host, long sequence) {
+            this.url = url;
+            this.downloadDir = downloadDir;
+            this.priority = priority;
+            this.host = host;
+            this.sequence = sequence;
+        }
+
+        String getUrl() {
+            return url;
+        }
+
+        String getDownloadDir() {
+            return downloadDir;
+        }
+
+        DownloadPriority getPriority() {
+            return priority;
+        }
+    }
+
+    /**
+     * The queued and running jobs of one host.
+     */
+    private static final class HostQueue {
+
+        private final String host;
+        private final TreeSet<Job> queued = new TreeSet<>(QUEUE_ORDER);
+        private int active;
+        private long turn;          // When this host was last served; lower goes first
+        private boolean ready;      // Whether the host is in the ready set
+
+        private HostQueue(String host) {
+            this.host = host;
+        }
+    }
+
+    private static final Comparator<Job> QUEUE_ORDER = Comparator
+            .comparing((Job job) -> job.priority)
+            .thenComparingLong(job -> job.sequence);
+
+    private static final Comparator<Job> PREEMPTION_ORDER = Comparator
+            .comparing((Job job) -> job.priority, Comparator.reverseOrder())
+            .thenComparing(Comparator.comparingLong((Job job) -> job.sequence).reversed());
+
+    private static final Comparator<HostQueue> HOST_ORDER = Comparator
+            .comparing((HostQueue host) -> host.queued.first().priority)
+            .thenComparingLong(host -> host.turn)
+            .thenComparing(host -> host.host);
+
+    private final Consumer<Job> starter;
+    private final Consumer<Job> pauser;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Job> jobs = new HashMap<>();              // Queued and running jobs by URL
+    private final Map<String, HostQueue> hosts = new HashMap<>();
+    private final TreeSet<HostQueue> readyHosts = new TreeSet<>(HOST_ORDER);
+    private final TreeSet<Job> running = new TreeSet<>(PREEMPTION_ORDER);
+    private int maxActive;
+    private int maxActivePerHost;
+    private boolean preemptLowPriority;
+    private QueueStore store;                                           // Persistent copy of the jobs, or null
+    private long nextSequence;
+    private long nextTurn;
+
+    /**
+     * Creates a scheduler.
+     *
+     * @param maxActive        The maximum number of running jobs
+     * @param maxActivePerHost The maximum number of running jobs per host
+     * @param starter          Starts a dispatched job; called while holding the scheduler lock,
+     *                         so it must not block
+     * @param pauser           Stops a running job so it can be requeued; the job's
+     *                         {@link #finished(Job, boolean)} call requeues it
+     */
+    DownloadScheduler(int maxActive, int maxActivePerHost, Consumer<Job> starter, Consumer<Job> pauser) {
+        this.maxActive = Math.max(1, maxActive);
+        this.maxActivePerHost = Math.max(1, maxActivePerHost);
+        this.starter = starter;
+        this.pauser = pauser;
+    }
+
+    /**
+     * Queues a download and starts it right away if a slot is free.
+     *
+     * @return {@code false} if the URL is already queued or running
+     */
+    boolean submit(String url, String downloadDir, DownloadPriority priority) {
+        lock.lock();
+        try {
+            if (jobs.containsKey(url)) return false;
+
+            Job job = new Job(url, downloadDir, priority, hostOf(url), nextSequence++);
+            jobs.put(url, job);
+            if (store != null) store.queued(url, downloadDir, priority);
+            HostQueue host = hosts.computeIfAbsent(job.host, HostQueue::new);
+            enqueue(host, job);
+
+            if (preemptLowPriority && priority == DownloadPriority.HIGH && !canStart(host)) {
+                preemptFor(host);
+            }
+            dispatch();
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Releases the slot of a job that has finished, failed, been stopped or been paused.
+     * A paused job is put back in its queue as a new {@code Job}. The running set orders
+     * jobs by priority and sequence, so it cannot tell the old run from the new one;
+     * whether a run still holds its slot is therefore tracked on the {@code Job} itself,
+     * and a late call for a run that has already ended has no effect.
+     *
+     * @param job       The job that ended
+     * @param cancelled Whether the job was cancelled, as opposed to having run to its end;
+     *                  a job that completed just as it was being paused is not requeued
+     */
+    void finished(Job job, boolean cancelled) {
+        lock.lock();
+        try {
+            if (!job.holdsSlot) return;
+            job.holdsSlot = false;
+            running.remove(job);
+
+            HostQueue host = hosts.get(job.host);
+            unready(host);
+            host.active--;
+            if (job.paused && cancelled && jobs.get(job.url) == job) {
+                // A fresh job for the next run, so late calls for this run cannot release it
+                Job requeued = new Job(job.url, job.downloadDir, job.priority, job.host, job.sequence);
+                jobs.put(job.url, requeued);
+                host.queued.add(requeued);
+                if (store != null) store.queued(job.url, job.downloadDir, job.priority);
+            } else if (jobs.remove(job.url, job) && store != null) {
+                store.removed(job.url);
+            }
+            readyOrForget(host);
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes a job that has not started yet.
+     *
+     * @return {@code true} if the URL was queued and has been removed
+     */
+    boolean removeQueued(String url) {
+        lock.lock();
+        try {
+            Job job = jobs.get(url);
+            if (job == null || job.holdsSlot) return false;
+
+            HostQueue host = hosts.get(job.host);
+            unready(host);
+            host.queued.remove(job);
+            jobs.remove(url);
+            if (store != null) store.removed(url);
+            readyOrForget(host);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Removes every job that has not started yet.
+     *
+     * @return The URLs of the removed jobs
+     */
+    List<String> clearQueued() {
+        lock.lock();
+        try {
+            List<String> removed = new ArrayList<>();
+            for (HostQueue host : new ArrayList<>(hosts.values())) {
+                unready(host);
+                for (Job job : host.queued) {
+                    jobs.remove(job.url);
+                    removed.add(job.url);
+                    if (store != null) store.removed(job.url);
+                }
+                host.queued.clear();
+                readyOrForget(host);
+            }
+            return removed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns whether the URL is queued or running.
+     */
+    boolean contains(String url) {
+        lock.lock();
+        try {
+            return jobs.containsKey(url);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of jobs waiting for a slot.
+     */
+    int getQueuedCount() {
+        lock.lock();
+        try {
+            return jobs.size() - running.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Changes the slot limits; extra slots are used immediately, and running jobs
+     * above a lowered limit finish normally.
+     */
+    void setLimits(int maxActive, int maxActivePerHost) {
+        lock.lock();
+        try {
+            this.maxActive = Math.max(1, maxActive);
+            this.maxActivePerHost = Math.max(1, maxActivePerHost);
+            for (HostQueue host : hosts.values()) {
+                unready(host);
+            }
+            for (HostQueue host : hosts.values()) {
+                makeReady(host);
+            }
+            dispatch();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Enables or disables pausing low-priority jobs for high-priority ones.
+     */
+    void setPreemptLowPriority(boolean preemptLowPriority) {
+        lock.lock();
+        try {
+            this.preemptLowPriority = preemptLowPriority;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Attaches the store that keeps a persistent copy of the jobs, recording the jobs
+     * already queued or running, in submission order.
+     *
+     * @param store The store, or {@code null} to stop recording
+     */
+    void setStore(QueueStore store) {
+        lock.lock();
+        try {
+            this.store = store;
+            if (store == null) return;
+
+            List<Job> current = new ArrayList<>(jobs.values());
+            current.sort(Comparator.comparingLong(job -> job.sequence));
+            for (Job job : current) {
+                store.queued(job.url, job.downloadDir, job.priority);
+                if (job.holdsSlot) store.started(job.url);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Starts jobs while there are free slots and hosts with queued work.
+     */
+    private void dispatch() {
+        while (running.size() < maxActive && !readyHosts.isEmpty()) {
+            HostQueue host = readyHosts.pollFirst();
+            host.ready = false;
+
+            Job job = host.queued.pollFirst();
+            host.active++;
+            host.turn = ++nextTurn;
+            job.holdsSlot = true;
+            running.add(job);
+            makeReady(host);
+
+            if (store != null) store.started(job.url);
+            starter.accept(job);
+        }
+    }
+
+    /**
+     * Pauses the lowest-priority running job that blocks the given host, if it is low priority.
+     */
+    private void preemptFor(HostQueue host) {
+        boolean hostFull = host.active >= maxActivePerHost;
+        for (Job victim : running) {
+            if (victim.priority != DownloadPriority.LOW) return;
+            if (!victim.paused && (!hostFull || victim.host.equals(host.host))) {
+                victim.paused = true;
+                pauser.accept(victim);
+                return;
+            }
+        }
+    }
+
+    private boolean canStart(HostQueue host) {
+        return running.size() < maxActive && host.active < maxActivePerHost;
+    }
+
+    private void enqueue(HostQueue host, Job job) {
+        unready(host);
+        host.queued.add(job);
+        makeReady(host);
+    }
+
+    /**
+     * Takes a host out of the ready set before its ordering keys change.
+     */
+    private void unready(HostQueue host) {
+        if (host.ready) {
+            readyHosts.remove(host);
+            host.ready = false;
+        }
+    }
+
+    /**
+     * Puts a host into the ready set if it has queued jobs and a free host slot.
+     */
+    private void makeReady(HostQueue host) {
+        if (!host.ready && !host.queued.isEmpty() && host.active < maxActivePerHost) {
+            readyHosts.add(host);
+            host.ready = true;
+        }
+    }
+
+    /**
+     * Makes a host ready again, or drops it entirely once it has no work left.
+     */
+    private void readyOrForget(HostQueue host) {
+        if (host.queued.isEmpty() && host.active == 0) {
+            hosts.remove(host.host);
+        } else {
+            makeReady(host);
+        }
+    }
+
+    /**
+     * Returns the host of a URL, or an empty string if it cannot be parsed.
+     * Malformed URLs still get scheduled and then fail with a proper error.
+     */
+    private static String hostOf(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host : "";
+        } catch (IllegalArgumentException e) {
+            return "";
+        }
+    }
+}
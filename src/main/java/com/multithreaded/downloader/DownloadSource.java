@@ -0,0 +1,89 @@
+package com.multithreaded.downloader;
+
+/**
+ * One server a segmented download can fetch its byte ranges from: the URL that was
+ * added, or one of its mirrors.
+ * <p>
+ * Only the thread coordinating the download reads or updates the counters, so they
+ * are plain fields.
+ * </p>
+ */
+class DownloadSource {
+
+    private static final double RATE_SMOOTHING = 0.5;      // Weight of the newest sample
+
+    private final RemoteFile remoteFile;
+    private int connections;                                // Connections currently fetching from it
+    private long sampledBytes;                              // Bytes written since the last sample
+    private double bytesPerSecond = -1;                     // Smoothed rate, -1 until first measured
+    private boolean failed;                                 // Dropped after an error
+
+    DownloadSource(RemoteFile remoteFile) {
+        this.remoteFile = remoteFile;
+    }
+
+    RemoteFile getRemoteFile() {
+        return remoteFile;
+    }
+
+    int getConnections() {
+        return connections;
+    }
+
+    void connectionStarted() {
+        connections++;
+    }
+
+    void connectionFinished() {
+        connections--;
+    }
+
+    /**
+     * Counts bytes written by the connections of this source.
+     */
+    void addBytes(long bytes) {
+        sampledBytes += bytes;
+    }
+
+    /**
+     * Turns the bytes counted since the last call into a smoothed rate.
+     *
+     * @param elapsedNanos The time since the last call
+     */
+    void sample(long elapsedNanos) {
+        if (elapsedNanos <= 0) {
+            sampledBytes = 0;
+            return;
+        }
+        double rate = sampledBytes * 1e9 / elapsedNanos;
+        if (connections > 0 || sampledBytes > 0) {
+            bytesPerSecond = bytesPerSecond < 0 ? rate : RATE_SMOOTHING * rate + (1 - RATE_SMOOTHING) * bytesPerSecond;
+        }
+        sampledBytes = 0;
+    }
+
+    /**
+     * Returns the smoothed rate of all connections of this source.
+     *
+     * @return The rate in bytes per second, or {@code -1} if it has not been measured yet
+     */
+    double getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    boolean isFailed() {
+        return failed;
+    }
+
+    /**
+     * Stops handing ranges to this source.
+     */
+    void fail() {
+        failed = true;
+    }
+
+    @Override
+    public String toString() {
+        return remoteFile.uri().toString();
+    }
+}
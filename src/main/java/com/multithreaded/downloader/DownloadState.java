@@ -0,0 +1,148 @@
+package com.multithreaded.downloader;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The live counters of one download, shared by all of its segments.
+ * <p>
+ * Transfer threads only bump the byte counter; turning it into progress events and
+ * rates is left to the manager's ticks, so the cost on the hot path is a single
+ * uncontended add per read no matter how many segments or listeners there are.
+ * </p>
+ * <p>
+ * Bytes found on disk when a download resumes are counted towards its progress but
+ * not towards its rate.
+ * </p>
+ */
+class DownloadState {
+
+    private final String url;
+    private final BandwidthLimiter limiter;
+    private final LongAdder bytesTransferred = new LongAdder();   // Bytes received by this attempt
+    private final TransferRate rate;
+    private volatile long resumedBytes;                         // Bytes already on disk at the start
+    private volatile long totalBytes = -1;
+    private volatile boolean paused;      // Stopped by the scheduler rather than the user
+    private volatile boolean stopped;     // Stopped, or over, so no thread may carry on
+    private volatile int bufferSize;      // Buffer size the last connection settled on, 0 if none yet
+    private long reportedBytes = -1;       // Only touched while holding the progress lock
+    private long reportedRate;             // Only touched while holding the progress lock
+
+    /**
+     * Creates the state of a download that has not received any bytes yet.
+     *
+     * @param url           The URL of the download
+     * @param limiter       The speed limiter of the download
+     * @param windowSamples The number of rate samples to average over
+     */
+    DownloadState(String url, BandwidthLimiter limiter, int windowSamples) {
+        this.url = url;
+        this.limiter = limiter;
+        this.rate = new TransferRate(windowSamples);
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    BandwidthLimiter getLimiter() {
+        return limiter;
+    }
+
+    long getBytesDownloaded() {
+        return resumedBytes + bytesTransferred.sum();
+    }
+
+    void addBytes(long bytes) {
+        bytesTransferred.add(bytes);
+    }
+
+    /**
+     * Records the bytes that were already on disk, e.g. the journaled bytes of a resumed download.
+     */
+    void setResumedBytes(long bytes) {
+        resumedBytes = bytes;
+    }
+
+    /**
+     * Forgets the bytes written so far, when a server without range support has to send
+     * the file again from the start. They still count towards the transfer rate.
+     */
+    void discardProgress() {
+        resumedBytes = -bytesTransferred.sum();
+    }
+
+    /**
+     * Samples the byte counter for the rate. Only the manager's monitor thread may call this.
+     *
+     * @param nanos The current {@link System#nanoTime()}
+     * @return The updated rate in bytes per second
+     */
+    long sampleRate(long nanos) {
+        rate.sample(bytesTransferred.sum(), nanos);
+        return rate.getBytesPerSecond();
+    }
+
+    long getBytesPerSecond() {
+        return rate.getBytesPerSecond();
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    boolean isPaused() {
+        return paused;
+    }
+
+    void setPaused(boolean paused) {
+        this.paused = paused;
+    }
+
+    /**
+     * Returns the transfer buffer size that suited the throughput of the download's
+     * connections so far, so that a new connection starts out with it.
+     *
+     * @return The size in bytes, or {@code 0} before any connection has measured it
+     */
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    void setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+    }
+
+    boolean isStopped() {
+        return stopped;
+    }
+
+    /**
+     * Marks the download as over. Threads normally learn this from being interrupted;
+     * the flag also reaches one whose interrupt was cleared because it coincided with a
+     * stall abort, see {@link StallDetector}.
+     */
+    void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the current progress if it or the rate changed since the last call.
+     * Callers must hold the manager's progress lock.
+     *
+     * @return The progress snapshot, or {@code null} if nothing moved
+     */
+    DownloadProgress takeProgressUpdate() {
+        long bytes = getBytesDownloaded();
+        long bytesPerSecond = rate.getBytesPerSecond();
+        if (bytes == reportedBytes && bytesPerSecond == reportedRate) return null;
+
+        reportedBytes = bytes;
+        reportedRate = bytesPerSecond;
+        return new DownloadProgress(url, bytes, totalBytes, bytesPerSecond);
+    }
+}
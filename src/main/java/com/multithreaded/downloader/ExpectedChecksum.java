@@ -0,0 +1,49 @@
+package com.multithreaded.downloader;
+
+import java.util.HexFormat;
+import java.util.Locale;
+
+/**
+ * The checksum a download must have, e.g. as published next to an artifact.
+ *
+ * @param algorithm The checksum algorithm
+ * @param value     The expected value as a hex string; CRC32C values are 8 digits, big-endian
+ */
+public record ExpectedChecksum(ChecksumAlgorithm algorithm, String value) {
+
+    /**
+     * Validates and normalizes the value to lower case.
+     *
+     * @throws IllegalArgumentException If the value is not a hex string of the algorithm's length
+     */
+    public ExpectedChecksum {
+        if (algorithm == null || value == null) {
+            throw new IllegalArgumentException("Checksum algorithm and value are required");
+        }
+        value = value.trim().toLowerCase(Locale.ROOT);
+        if (value.length() != algorithm.getHexLength() || value.chars().anyMatch(c -> !HexFormat.isHexDigit(c))) {
+            throw new IllegalArgumentException("Not a " + algorithm + " checksum: " + value);
+        }
+    }
+
+    /**
+     * Parses a checksum written as {@code algorithm:hex}, e.g. {@code sha256:9f86d0...}.
+     *
+     * @param text The checksum text
+     * @return The parsed checksum
+     * @throws IllegalArgumentException If the text is malformed or names an unsupported algorithm
+     */
+    public static ExpectedChecksum parse(String text) {
+        int separator = text.indexOf(':');
+        if (separator < 0) {
+            throw new IllegalArgumentException("Expected algorithm:hex, got " + text);
+        }
+        return new ExpectedChecksum(ChecksumAlgorithm.fromName(text.substring(0, separator)),
+                text.substring(separator + 1));
+    }
+
+    @Override
+    public String toString() {
+        return algorithm + ":" + value;
+    }
+}
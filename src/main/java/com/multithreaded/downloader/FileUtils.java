@@ -1,10 +1,16 @@
 package com.multithreaded.downloader;
 
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
 /**
  * Utility class to handle common file-related operations.
  * <p>
  * This class provides methods to infer file extensions based on HTTP content types.
  * It uses a switch statement to map common MIME types to their corresponding file extensions.
+ * It also holds the small channel helpers shared by the download write paths.
  * </p>
  */
 public class FileUtils {
@@ -37,4 +43,45 @@ public class FileUtils {
             default: return "bin";
         }
     }
+
+    /**
+     * Sizes a file to exactly {@code length} bytes before it is written.
+     * <p>
+     * The file is extended by writing its last byte, which fixes its length up front so
+     * segments can be written at any offset. This does not reserve disk space: Java offers
+     * no portable {@code fallocate}, and file systems with sparse files, such as ext4, XFS
+     * and NTFS, only allocate blocks as they are written, so a full disk still shows up as
+     * a failed write.
+     * </p>
+     *
+     * @param channel The channel of the file, opened for writing
+     * @param length  The final file length in bytes
+     * @throws IOException If the file cannot be resized
+     */
+    public static void preallocate(FileChannel channel, long length) throws IOException {
+        long size = channel.size();
+        if (size > length) {
+            channel.truncate(length);
+        } else if (size < length && length > 0) {
+            writeFully(channel, ByteBuffer.allocate(1), length - 1);
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of the buffer at the given file position.
+     * <p>
+     * Positional writes do not move the channel position, so any number of threads can
+     * write different ranges of the same file concurrently.
+     * </p>
+     *
+     * @param channel  The channel to write to
+     * @param buffer   The bytes to write, from its position to its limit
+     * @param position The file offset of the first byte
+     * @throws IOException If the write fails
+     */
+    public static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
 }
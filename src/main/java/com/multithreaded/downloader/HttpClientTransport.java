@@ -0,0 +1,107 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+
+import java.time.Duration;
+
+import java.util.Map;
+
+/**
+ * A {@link Transport} backed by a single shared {@link HttpClient}.
+ * <p>
+ * The client keeps connections alive between requests, negotiates HTTP/2 where the
+ * server supports it so that requests to the same host are multiplexed over one
+ * connection, and resumes TLS sessions. Batches of many small files from one host
+ * therefore pay the TCP and TLS handshakes once instead of once per file.
+ * </p>
+ * <p>
+ * The client cannot change its connect timeout once built, and has no timeout for
+ * reading a body, so timeouts are applied per request to the wait for the response
+ * headers, connecting included.
+ * </p>
+ */
+public class HttpClientTransport implements Transport {
+
+    private final HttpClient client;
+    private volatile Duration responseTimeout = Duration.ZERO;  // Connect and read timeout together
+
+    /**
+     * Creates a transport with a client that prefers HTTP/2 and follows redirects.
+     */
+    public HttpClientTransport() {
+        this(HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build());
+    }
+
+    /**
+     * Creates a transport that sends its requests through the given client.
+     *
+     * @param client The shared client
+     */
+    public HttpClientTransport(HttpClient client) {
+        this.client = client;
+    }
+
+    @Override
+    public TransportResponse get(URI uri, Map<String, String> headers) throws IOException, InterruptedException {
+        HttpRequest.Builder request = HttpRequest.newBuilder(uri).GET();
+        headers.forEach(request::header);
+        Duration timeout = responseTimeout;
+        if (!timeout.isZero()) {
+            request.timeout(timeout);
+        }
+
+        HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+        return new Response(response);
+    }
+
+    @Override
+    public void setTimeouts(Duration connectTimeout, Duration readTimeout) {
+        responseTimeout = connectTimeout.isZero() || readTimeout.isZero()
+                ? Duration.ZERO
+                : connectTimeout.plus(readTimeout);
+    }
+
+    /**
+     * Adapts an {@link HttpResponse} to {@link TransportResponse}.
+     */
+    private static final class Response implements TransportResponse {
+
+        private final HttpResponse<InputStream> response;
+
+        private Response(HttpResponse<InputStream> response) {
+            this.response = response;
+        }
+
+        @Override
+        public int statusCode() {
+            return response.statusCode();
+        }
+
+        @Override
+        public String header(String name) {
+            return response.headers().firstValue(name).orElse(null);
+        }
+
+        @Override
+        public InputStream body() {
+            return response.body();
+        }
+
+        @Override
+        public void close() {
+            try {
+                response.body().close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * A response with a status code the download cannot continue with.
+ * <p>
+ * Whether the request is worth repeating depends on the status, see
+ * {@link RetryPolicy#isRetryable(IOException)}; a server that is overloaded or rate
+ * limiting may also say when to come back in a {@code Retry-After} header.
+ * </p>
+ */
+class HttpStatusException extends IOException {
+
+    private final int statusCode;
+    private final long retryAfterMillis;
+
+    /**
+     * Creates an exception for the given status.
+     *
+     * @param statusCode       The HTTP status code
+     * @param message          What went wrong
+     * @param retryAfterMillis How long the server asked us to wait, or {@code -1}
+     */
+    HttpStatusException(int statusCode, String message, long retryAfterMillis) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    /**
+     * Creates an exception for a response, picking up its {@code Retry-After} header.
+     *
+     * @param response The response
+     * @param message  What went wrong
+     * @return The exception
+     */
+    static HttpStatusException of(TransportResponse response, String message) {
+        return new HttpStatusException(response.statusCode(), message,
+                parseRetryAfter(response.header("Retry-After"), Instant.now()));
+    }
+
+    int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * Returns how long the server asked us to wait before trying again.
+     *
+     * @return The delay in milliseconds, or {@code -1} if the server did not say
+     */
+    long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    /**
+     * Parses a {@code Retry-After} header, which holds either a number of seconds or an HTTP date.
+     *
+     * @param value The header value, may be {@code null}
+     * @param now   The current time, to turn a date into a delay
+     * @return The delay in milliseconds, or {@code -1} if the value is missing or malformed
+     */
+    static long parseRetryAfter(String value, Instant now) {
+        if (value == null || value.isBlank()) return -1;
+
+        String trimmed = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(trimmed)) * 1000;
+        } catch (NumberFormatException e) {
+            // Not a number of seconds, so it should be a date
+        }
+        try {
+            Instant date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0, Duration.between(now, date).toMillis());
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
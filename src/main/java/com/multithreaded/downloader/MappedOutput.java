@@ -0,0 +1,154 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Writes the segments of one download through memory-mapped windows of the output file.
+ * <p>
+ * Each worker maps a window of up to {@value #WINDOW_SIZE} bytes starting at its
+ * position and copies received bytes straight into it, so a write costs a memory copy
+ * instead of a system call; the kernel writes the dirty pages back in the background.
+ * When a write no longer fits, the worker maps the next window. The JDK only unmaps a
+ * window once it is garbage collected, so windows are large to keep the number of
+ * mappings low.
+ * </p>
+ * <p>
+ * Mapped bytes are not covered by {@link FileChannel#force(boolean)} on every platform,
+ * so {@link #force()} flushes every window written since the last checkpoint before the
+ * journal records the new positions. A window a worker has moved past is forced once
+ * more and then dropped.
+ * </p>
+ * <p>
+ * If the file cannot be mapped, e.g. on a file system without mapping support, or a
+ * mapped write fails, the download falls back to ordinary channel writes for good.
+ * </p>
+ */
+class MappedOutput {
+
+    static final long WINDOW_SIZE = 64 * 1024 * 1024;
+
+    /**
+     * A mapped region and whether its worker has moved past it.
+     */
+    private static final class Window {
+        final MappedByteBuffer buffer;
+        final long start;
+        volatile boolean retired;
+
+        Window(MappedByteBuffer buffer, long start) {
+            this.buffer = buffer;
+            this.start = start;
+        }
+    }
+
+    private final Set<Window> windows = ConcurrentHashMap.newKeySet();  // Written since the last force
+    private final AtomicBoolean fallback = new AtomicBoolean();
+    private final Consumer<Exception> onFallback;
+
+    /**
+     * Creates the mapped output of a download.
+     *
+     * @param onFallback Told once why the download fell back to channel writes
+     */
+    MappedOutput(Consumer<Exception> onFallback) {
+        this.onFallback = onFallback;
+    }
+
+    /**
+     * Returns a writer for one worker.
+     *
+     * @param channel The channel of the preallocated output file, opened for reading and writing
+     * @return The writer, mapping windows of the file unless the download fell back
+     */
+    SegmentWriter writer(FileChannel channel) {
+        return fallback.get() ? SegmentWriter.of(channel) : new Writer(channel);
+    }
+
+    /**
+     * Flushes every window written since the last call to the storage device.
+     * Only the thread coordinating the download may call this.
+     */
+    void force() {
+        for (Window window : windows) {
+            boolean retired = window.retired;   // Read first: later writes are not covered
+            window.buffer.force();
+            if (retired) {
+                windows.remove(window);
+            }
+        }
+    }
+
+    private void fallBack(Exception cause) {
+        if (fallback.compareAndSet(false, true)) {
+            onFallback.accept(cause);
+        }
+    }
+
+    /**
+     * The writer of one worker, holding its current window.
+     */
+    private final class Writer implements SegmentWriter {
+
+        private final FileChannel channel;
+        private Window window;
+        private SegmentWriter channelWriter;        // Set once this writer fell back
+
+        private Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, long position) throws IOException {
+            if (channelWriter != null) {
+                channelWriter.write(buffer, position);
+                return;
+            }
+
+            int length = buffer.remaining();
+            try {
+                if (window == null || position < window.start
+                        || position + length > window.start + window.buffer.capacity()) {
+                    map(position, length);
+                }
+                window.buffer.put((int) (position - window.start), buffer, buffer.position(), length);
+                buffer.position(buffer.limit());
+            } catch (IOException | UnsupportedOperationException e) {
+                fallBack(e);
+                channelWriter = SegmentWriter.of(channel);
+                channelWriter.write(buffer, position);
+            } catch (InternalError e) {
+                // A fault in a mapped page, e.g. a full disk under a sparse file
+                fallBack(new IOException("Mapped write failed at " + position, e));
+                channelWriter = SegmentWriter.of(channel);
+                throw new IOException("Mapped write failed at " + position, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (window != null) {
+                window.retired = true;
+                window = null;
+            }
+        }
+
+        private void map(long position, int length) throws IOException {
+            close();
+            long size = Math.min(WINDOW_SIZE, channel.size() - position);
+            if (size < length) {
+                throw new IOException("Write at " + position + " is beyond the end of the file");
+            }
+            window = new Window(channel.map(FileChannel.MapMode.READ_WRITE, position, size), position);
+            windows.add(window);
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package com.multithreaded.downloader;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32C;
+
+/**
+ * A persistent copy of the download queue, so queued and running downloads survive a crash.
+ * <p>
+ * The store is a directory holding an append-only log of queue transitions (a download
+ * was queued, started, or left the queue) and a snapshot of the queue at the start of
+ * that log. Each transition is encoded into a memory buffer, which costs a few hundred
+ * nanoseconds; a commit thread writes the buffer with one write and one
+ * {@link FileChannel#force(boolean) force} every {@value #COMMIT_INTERVAL_MS} ms, so any
+ * number of transitions share a disk flush. A crash loses at most the transitions of the
+ * last interval.
+ * </p>
+ * <p>
+ * Once the log grows past half the size of the snapshot, the commit thread starts a new
+ * log and writes a new snapshot of the queue as it was at that point; the old log is
+ * deleted only after the snapshot has been forced and renamed into place. Opening the
+ * store reads the snapshot and replays the logs since, so recovery reads at most about
+ * one and a half times the size of the queue, in chunks. Every record carries a checksum
+ * and the log is cut at the first record that does not match, so a torn write after a
+ * crash reads as a transition that never happened.
+ * </p>
+ */
+class QueueStore implements Closeable {
+
+    private static final String SNAPSHOT_FILE = "queue.snapshot";
+    private static final String SNAPSHOT_TEMP_FILE = "queue.snapshot.tmp";
+    private static final Pattern LOG_FILE = Pattern.compile("queue-(\\d+)\\.log");
+
+    private static final int SNAPSHOT_MAGIC = 0x444D5153;       // "DMQS"
+    private static final int VERSION = 1;
+    private static final byte QUEUED = 1;
+    private static final byte STARTED = 2;
+    private static final byte REMOVED = 3;
+    private static final byte RUNNING = 4;                      // Queued and started; written by snapshots
+    private static final int RECORD_HEADER_SIZE = 8;            // Length and checksum
+    private static final int SNAPSHOT_HEADER_SIZE = 20;         // Magic, version, generation and count
+    private static final int MAX_RECORD_SIZE = RECORD_HEADER_SIZE + 2 + 2 * (2 + 0xFFFF);
+    private static final int CHUNK_SIZE = 1024 * 1024;          // Unit of reading and of writing snapshots
+    private static final int BATCH_CAPACITY = 64 * 1024;
+
+    private static final long COMMIT_INTERVAL_MS = 10;
+    private static final long MIN_COMPACT_BYTES = 4L * 1024 * 1024;
+
+    /**
+     * A download in the queue.
+     *
+     * @param url         The URL of the download
+     * @param downloadDir The directory to save the file in
+     * @param priority    The priority of the download
+     * @param running     Whether the download had been started
+     */
+    record Entry(String url, String downloadDir, DownloadPriority priority, boolean running) {
+    }
+
+    private final Path directory;
+    private final Consumer<IOException> onError;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<String, Entry> live;             // The queue as of the last transition, in queue order
+    private final List<Entry> recovered;
+    private RecordBuffer pending = new RecordBuffer(BATCH_CAPACITY);    // Encoded but not yet written
+    private RecordBuffer spare = new RecordBuffer(BATCH_CAPACITY);      // Swapped with pending on each commit
+    private final Thread committer;
+    private boolean closed;
+    private IOException failure;            // Set once writing has failed; the store stops persisting
+
+    // Only touched by the commit thread after opening
+    private FileChannel log;
+    private long logGeneration;
+    private long logSize;
+    private long snapshotSize;
+
+    private QueueStore(Path directory, Consumer<IOException> onError, LinkedHashMap<String, Entry> live,
+                       FileChannel log, long logGeneration, long logSize, long snapshotSize) {
+        this.directory = directory;
+        this.onError = onError;
+        this.live = live;
+        this.recovered = List.copyOf(live.values());
+        this.log = log;
+        this.logGeneration = logGeneration;
+        this.logSize = logSize;
+        this.snapshotSize = snapshotSize;
+        committer = new Thread(this::run, "queue-store");
+        committer.setDaemon(true);
+    }
+
+    /**
+     * Opens the store in the given directory, recovering the queue it holds.
+     *
+     * @param directory The directory holding the store files
+     * @param onError   Told once if writing fails later; the store then stops persisting
+     * @return The open store
+     * @throws IOException If the files cannot be read or created
+     */
+    static QueueStore open(Path directory, Consumer<IOException> onError) throws IOException {
+        Files.createDirectories(directory);
+
+        LinkedHashMap<String, Entry> live = new LinkedHashMap<>();
+        long snapshotGeneration = 0;
+        long snapshotSize = 0;
+        Path snapshot = directory.resolve(SNAPSHOT_FILE);
+        if (Files.exists(snapshot)) {
+            snapshotGeneration = readSnapshot(snapshot, live);
+            if (snapshotGeneration < 0) {
+                live.clear();           // Damaged: fall back to whatever logs are left
+                snapshotGeneration = 0;
+            } else {
+                snapshotSize = Files.size(snapshot);
+            }
+        }
+
+        TreeMap<Long, Path> logs = new TreeMap<>();
+        try (var files = Files.list(directory)) {
+            files.forEach(file -> {
+                Matcher matcher = LOG_FILE.matcher(file.getFileName().toString());
+                if (matcher.matches()) logs.put(Long.parseLong(matcher.group(1)), file);
+            });
+        }
+
+        long generation = snapshotGeneration;
+        long validEnd = 0;
+        for (var log : logs.entrySet()) {
+            if (log.getKey() < snapshotGeneration) {
+                Files.delete(log.getValue());   // Covered by the snapshot
+                continue;
+            }
+            generation = log.getKey();
+            validEnd = replay(log.getValue(), 0, live);
+        }
+
+        FileChannel channel = FileChannel.open(logPath(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() > validEnd) {
+            channel.truncate(validEnd);     // Drop a torn tail
+        }
+
+        QueueStore store = new QueueStore(directory, onError, live, channel, generation, validEnd, snapshotSize);
+        store.committer.start();
+        return store;
+    }
+
+    /**
+     * Returns the queue found when the store was opened, in queue order.
+     */
+    List<Entry> recovered() {
+        return recovered;
+    }
+
+    /**
+     * Records that a download was queued, or put back in the queue after being paused.
+     */
+    void queued(String url, String downloadDir, DownloadPriority priority) {
+        append(new Entry(url, downloadDir, priority, false), QUEUED);
+    }
+
+    /**
+     * Records that a queued download was started.
+     */
+    void started(String url) {
+        lock.lock();
+        try {
+            Entry entry = live.get(url);
+            if (entry != null) {
+                append(new Entry(url, entry.downloadDir(), entry.priority(), true), STARTED);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Records that a download left the queue: it finished, failed, or was stopped or removed.
+     */
+    void removed(String url) {
+        append(new Entry(url, null, null, false), REMOVED);
+    }
+
+    /**
+     * Writes the remaining transitions and closes the store.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+        } finally {
+            lock.unlock();
+        }
+        LockSupport.unpark(committer);
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        if (failure != null) throw failure;
+    }
+
+    private void append(Entry entry, byte type) {
+        lock.lock();
+        try {
+            if (closed || failure != null) return;
+
+            try {
+                pending.putRecord(type, entry);
+            } catch (IllegalArgumentException e) {
+                return;                     // Too long to record; the download still runs
+            }
+
+            if (type == REMOVED) {
+                live.remove(entry.url());
+            } else {
+                live.put(entry.url(), entry);       // An existing entry keeps its place
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                boolean last;
+                lock.lock();
+                try {
+                    last = closed;
+                } finally {
+                    lock.unlock();
+                }
+                commit();
+                if (last) return;
+                if (logSize > Math.max(MIN_COMPACT_BYTES, snapshotSize / 2)) {
+                    compact();
+                }
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(COMMIT_INTERVAL_MS));
+            }
+        } catch (IOException e) {
+            lock.lock();
+            try {
+                failure = e;
+            } finally {
+                lock.unlock();
+            }
+            onError.accept(e);
+        }
+    }
+
+    /**
+     * Writes and forces everything appended so far in one go.
+     */
+    private void commit() throws IOException {
+        RecordBuffer batch;
+        lock.lock();
+        try {
+            if (pending.size() == 0) return;
+            batch = pending;
+            pending = spare;
+            spare = batch;
+        } finally {
+            lock.unlock();
+        }
+
+        logSize += batch.writeTo(log, logSize);
+        batch.clear();
+        log.force(false);
+    }
+
+    /**
+     * Starts a new log and writes a snapshot of the queue as of its start, then deletes the old log.
+     * <p>
+     * Until the snapshot is in place, recovery still finds the old snapshot and both logs.
+     * </p>
+     */
+    private void compact() throws IOException {
+        long generation = logGeneration + 1;
+        FileChannel next = FileChannel.open(logPath(directory, generation),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        next.truncate(0);
+
+        RecordBuffer tail;
+        List<Entry> entries;
+        lock.lock();
+        try {
+            tail = pending;
+            pending = spare;
+            spare = tail;
+            entries = new ArrayList<>(live.values());
+        } finally {
+            lock.unlock();
+        }
+
+        // Transitions up to the switch belong to the old log, later ones to the new log
+        tail.writeTo(log, logSize);
+        tail.clear();
+        log.force(false);
+        log.close();
+        Path oldLog = logPath(directory, logGeneration);
+        log = next;
+        logGeneration = generation;
+        logSize = 0;
+
+        snapshotSize = writeSnapshot(entries, generation);
+        Files.deleteIfExists(oldLog);
+    }
+
+    /**
+     * Writes a snapshot to a temporary file, forces it and renames it into place.
+     *
+     * @return The size of the snapshot
+     */
+    private long writeSnapshot(List<Entry> entries, long generation) throws IOException {
+        Path temp = directory.resolve(SNAPSHOT_TEMP_FILE);
+        long size = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            RecordBuffer out = new RecordBuffer(CHUNK_SIZE + MAX_RECORD_SIZE);
+            out.putInt(SNAPSHOT_MAGIC);
+            out.putInt(VERSION);
+            out.putLong(generation);
+            out.putInt(entries.size());
+            for (Entry entry : entries) {
+                out.putRecord(entry.running() ? RUNNING : QUEUED, entry);
+                if (out.size() >= CHUNK_SIZE) {
+                    size += out.writeTo(channel, size);
+                    out.truncate(0);
+                }
+            }
+            size += out.writeTo(channel, size);
+            channel.force(true);
+        }
+        Files.move(temp, directory.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        return size;
+    }
+
+    /**
+     * Reads a snapshot into the given map.
+     *
+     * @return The generation of the log that follows the snapshot, or {@code -1} if it is damaged
+     */
+    private static long readSnapshot(Path snapshot, LinkedHashMap<String, Entry> live) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE);
+        try (FileChannel channel = FileChannel.open(snapshot, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // Keep reading until the header is complete or the file ends
+            }
+        }
+        header.flip();
+        if (header.remaining() < SNAPSHOT_HEADER_SIZE
+                || header.getInt() != SNAPSHOT_MAGIC || header.getInt() != VERSION) return -1;
+        long generation = header.getLong();
+        int count = header.getInt();
+
+        // Entries are framed like log records, so a damaged one cuts the snapshot short
+        long end = replay(snapshot, SNAPSHOT_HEADER_SIZE, live);
+        return end == Files.size(snapshot) && live.size() == count ? generation : -1;
+    }
+
+    /**
+     * Applies the transitions of a log to the given map, stopping at the first damaged record.
+     * The file is read in chunks, so recovery needs little memory beyond the map itself.
+     *
+     * @param file   The log
+     * @param offset Where the first record starts
+     * @return The offset after the last valid record
+     */
+    private static long replay(Path file, long offset, LinkedHashMap<String, Entry> live) throws IOException {
+        CRC32C checksum = new CRC32C();
+        StringDecoder strings = new StringDecoder();
+        ByteBuffer in = ByteBuffer.allocate(CHUNK_SIZE + MAX_RECORD_SIZE);
+        long valid = offset;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            channel.position(offset);
+            boolean eof = false;
+            while (!eof) {
+                eof = channel.read(in) < 0;
+                in.flip();
+                while (in.remaining() >= RECORD_HEADER_SIZE) {
+                    int start = in.position();
+                    int length = in.getInt(start);
+                    if (length <= RECORD_HEADER_SIZE || length > MAX_RECORD_SIZE) return valid;
+                    if (length > in.remaining()) break;         // Completed by the next chunk
+
+                    checksum.reset();
+                    checksum.update(in.array(), start + RECORD_HEADER_SIZE, length - RECORD_HEADER_SIZE);
+                    if ((int) checksum.getValue() != in.getInt(start + 4)) return valid;
+                    if (!apply(in.slice(start + RECORD_HEADER_SIZE, length - RECORD_HEADER_SIZE), strings, live)) {
+                        return valid;
+                    }
+                    in.position(start + length);
+                    valid += length;
+                }
+                in.compact();
+            }
+        }
+        return valid;       // A partial record at the end is a torn write
+    }
+
+    /**
+     * Applies one record to the given map.
+     *
+     * @return {@code false} if the checksum matched but the record does not parse
+     */
+    private static boolean apply(ByteBuffer record, StringDecoder strings, LinkedHashMap<String, Entry> live) {
+        try {
+            byte type = record.get();
+            String url = strings.url(record);
+            switch (type) {
+                case QUEUED, RUNNING -> {
+                    String downloadDir = strings.directory(record);
+                    DownloadPriority priority = priority(record.get());
+                    if (priority == null) return false;
+                    live.put(url, new Entry(url, downloadDir, priority, type == RUNNING));
+                }
+                case STARTED -> {
+                    Entry entry = live.get(url);
+                    if (entry != null && !entry.running()) {
+                        live.put(url, new Entry(url, entry.downloadDir(), entry.priority(), true));
+                    }
+                }
+                case REMOVED -> live.remove(url);
+                default -> {
+                    return false;
+                }
+            }
+            return true;
+        } catch (BufferUnderflowException e) {
+            return false;
+        }
+    }
+
+    private static Path logPath(Path directory, long generation) {
+        return directory.resolve("queue-" + generation + ".log");
+    }
+
+    private static DownloadPriority priority(byte ordinal) {
+        DownloadPriority[] priorities = DownloadPriority.values();
+        return ordinal >= 0 && ordinal < priorities.length ? priorities[ordinal] : null;
+    }
+
+    /**
+     * A growable byte array that records are encoded into, big-endian.
+     * Strings are stored as their UTF-8 length in two bytes followed by the bytes.
+     */
+    private static final class RecordBuffer {
+
+        private final CRC32C crc = new CRC32C();
+        private byte[] bytes;
+        private int size;
+
+        RecordBuffer(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void truncate(int size) {
+            this.size = size;
+        }
+
+        /**
+         * Empties the buffer, giving back the memory a burst of records made it grow to.
+         */
+        void clear() {
+            size = 0;
+            if (bytes.length > CHUNK_SIZE) {
+                bytes = new byte[BATCH_CAPACITY];
+            }
+        }
+
+        void putByte(int value) {
+            ensure(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void putInt(int value) {
+            ensure(4);
+            setInt(size, value);
+            size += 4;
+        }
+
+        void putLong(long value) {
+            putInt((int) (value >>> 32));
+            putInt((int) value);
+        }
+
+        /**
+         * @throws IllegalArgumentException If the string is longer than 65535 bytes in UTF-8
+         */
+        void putString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            if (utf8.length > 0xFFFF) {
+                throw new IllegalArgumentException("String too long: " + utf8.length + " bytes");
+            }
+            ensure(2 + utf8.length);
+            bytes[size++] = (byte) (utf8.length >>> 8);
+            bytes[size++] = (byte) utf8.length;
+            System.arraycopy(utf8, 0, bytes, size, utf8.length);
+            size += utf8.length;
+        }
+
+        void setInt(int offset, int value) {
+            bytes[offset] = (byte) (value >>> 24);
+            bytes[offset + 1] = (byte) (value >>> 16);
+            bytes[offset + 2] = (byte) (value >>> 8);
+            bytes[offset + 3] = (byte) value;
+        }
+
+        /**
+         * Appends a record: its length and checksum, then the type and the fields of the entry it needs.
+         *
+         * @throws IllegalArgumentException If a string is too long; nothing is appended then
+         */
+        void putRecord(byte type, Entry entry) {
+            int start = size;
+            try {
+                putInt(0);              // Length and checksum, filled in below
+                putInt(0);
+                putByte(type);
+                putString(entry.url());
+                if (type == QUEUED || type == RUNNING) {
+                    putString(entry.downloadDir());
+                    putByte(entry.priority().ordinal());
+                }
+            } catch (IllegalArgumentException e) {
+                size = start;
+                throw e;
+            }
+            crc.reset();
+            crc.update(bytes, start + RECORD_HEADER_SIZE, size - start - RECORD_HEADER_SIZE);
+            setInt(start, size - start);
+            setInt(start + 4, (int) crc.getValue());
+        }
+
+        /**
+         * Writes the whole buffer at the given position of the file.
+         *
+         * @return The number of bytes written
+         */
+        int writeTo(FileChannel channel, long position) throws IOException {
+            FileUtils.writeFully(channel, ByteBuffer.wrap(bytes, 0, size), position);
+            return size;
+        }
+
+        private void ensure(int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+
+    /**
+     * Reads the strings of records, sharing one instance per distinct directory since
+     * most downloads are saved to one of a few directories.
+     */
+    private static final class StringDecoder {
+
+        private final HashMap<String, String> directories = new HashMap<>();
+
+        String url(ByteBuffer in) {
+            int length = Short.toUnsignedInt(in.getShort());
+            if (length > in.remaining()) throw new BufferUnderflowException();
+            String value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+            in.position(in.position() + length);
+            return value;
+        }
+
+        String directory(ByteBuffer in) {
+            String value = url(in);
+            return directories.computeIfAbsent(value, key -> key);
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.multithreaded.downloader;
+
+import java.net.URI;
+
+/**
+ * What the server told us about a file when it was probed.
+ * <p>
+ * The entity tag and modification date identify the exact version of the file,
+ * so a partially downloaded copy is only resumed while they still match.
+ * </p>
+ *
+ * @param uri             The URI of the file
+ * @param length          The total size in bytes, or {@code -1} if unknown
+ * @param etag            The {@code ETag} header, may be {@code null}
+ * @param lastModified    The {@code Last-Modified} header, may be {@code null}
+ * @param contentType     The {@code Content-Type} header, may be {@code null}
+ * @param rangesSupported Whether the server answered the probe with a partial response
+ */
+record RemoteFile(URI uri, long length, String etag, String lastModified, String contentType,
+                  boolean rangesSupported) {
+
+    /**
+     * Returns the validator to send in an {@code If-Range} header.
+     * <p>
+     * Weak entity tags are not allowed in {@code If-Range}, so the modification date
+     * is used instead when the tag is weak or missing.
+     * </p>
+     *
+     * @return The validator, or {@code null} if the server gave us none
+     */
+    String rangeValidator() {
+        if (etag != null && !etag.startsWith("W/")) return etag;
+        return lastModified;
+    }
+}
@@ -0,0 +1,119 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.nio.file.FileSystemException;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed request is repeated, and after how long.
+ * <p>
+ * Connection errors and the statuses of overloaded or briefly unavailable servers
+ * ({@code 408}, {@code 425}, {@code 429}, {@code 500}, {@code 502}, {@code 503},
+ * {@code 504}) are retried; other statuses, unknown hosts, local file system errors and
+ * a remote file that changed are not, since repeating the request cannot fix them. The
+ * delay doubles with every attempt up to a maximum, and is spread randomly between the
+ * base delay and that bound so that connections failing together do not retry together.
+ * A {@code Retry-After} header replaces the computed delay.
+ * </p>
+ * <p>
+ * Attempts are counted per byte range and start over whenever a retry made progress,
+ * so a long download survives any number of isolated connection resets, while a server
+ * that keeps failing gives up after {@link #getMaxRetries()} retries in a row.
+ * </p>
+ */
+public class RetryPolicy {
+
+    private static final long MAX_RETRY_AFTER_MS = 5 * 60 * 1000;  // Longest Retry-After we wait for
+
+    /**
+     * Three retries, starting at half a second and waiting at most 30 seconds.
+     */
+    public static final RetryPolicy DEFAULT = new RetryPolicy(3, 500, 30_000);
+
+    /**
+     * Never retries.
+     */
+    public static final RetryPolicy NONE = new RetryPolicy(0, 0, 0);
+
+    private final int maxRetries;
+    private final long baseDelayMillis;
+    private final long maxDelayMillis;
+
+    /**
+     * Creates a retry policy.
+     *
+     * @param maxRetries      How many times a request is repeated after failing in a row
+     * @param baseDelayMillis The delay before the first retry
+     * @param maxDelayMillis  The longest delay between two attempts
+     */
+    public RetryPolicy(int maxRetries, long baseDelayMillis, long maxDelayMillis) {
+        if (maxRetries < 0 || baseDelayMillis < 0 || maxDelayMillis < baseDelayMillis) {
+            throw new IllegalArgumentException("Invalid retry policy: " + maxRetries + " retries, "
+                    + baseDelayMillis + "-" + maxDelayMillis + " ms");
+        }
+        this.maxRetries = maxRetries;
+        this.baseDelayMillis = baseDelayMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    /**
+     * Returns a copy of this policy with another number of retries.
+     *
+     * @param maxRetries How many times a request is repeated after failing in a row
+     * @return The new policy
+     */
+    public RetryPolicy withMaxRetries(int maxRetries) {
+        return new RetryPolicy(maxRetries, baseDelayMillis, maxDelayMillis);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    /**
+     * Returns how long to wait before repeating a failed request.
+     *
+     * @param error   The failure
+     * @param attempt The number of retries of this request so far, {@code 0} for the first failure
+     * @return The delay in milliseconds, or {@code -1} if the request should not be repeated
+     */
+    long delayMillis(IOException error, int attempt) {
+        if (attempt >= maxRetries || !isRetryable(error)) return -1;
+
+        if (error instanceof HttpStatusException status && status.getRetryAfterMillis() >= 0) {
+            return Math.min(status.getRetryAfterMillis(), MAX_RETRY_AFTER_MS);
+        }
+        long bound = Math.min(maxDelayMillis, baseDelayMillis << Math.min(attempt + 1, 30));
+        return bound > baseDelayMillis
+                ? ThreadLocalRandom.current().nextLong(baseDelayMillis, bound + 1)
+                : bound;
+    }
+
+    /**
+     * Classifies a failure as temporary or permanent.
+     *
+     * @param error The failure
+     * @return Whether repeating the request may succeed
+     */
+    static boolean isRetryable(IOException error) {
+        if (error instanceof HttpStatusException status) {
+            return switch (status.getStatusCode()) {
+                case 408, 425, 429, 500, 502, 503, 504 -> true;
+                default -> false;
+            };
+        }
+        if (error instanceof SocketTimeoutException) return true;
+        if (error instanceof InterruptedIOException) return false;     // The download was stopped
+        return !(error instanceof UnknownHostException || error instanceof FileSystemException);
+    }
+
+    @Override
+    public String toString() {
+        return maxRetries + " retries, " + baseDelayMillis + "-" + maxDelayMillis + " ms";
+    }
+}
@@ -0,0 +1,202 @@
+package com.multithreaded.downloader;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A contiguous byte range of a remote file fetched by a single connection.
+ * <p>
+ * The range is inclusive on both ends, matching the HTTP {@code Range} header.
+ * The position is the next byte to be written and only ever moves forward. The end
+ * only ever moves backward, when the rest of the range is split off to another
+ * connection; the worker notices on its next write and stops early.
+ * </p>
+ * <p>
+ * A response of unknown length is written as an {@link #openEnded(long) open-ended}
+ * segment, which is complete once the body ends.
+ * </p>
+ */
+class Segment {
+
+    private static final long OPEN_END = Long.MAX_VALUE - 1;    // End of a range of unknown length
+
+    private final long start;
+    private volatile long end;
+    private volatile long position;
+    private long runStartNanos;                 // When the current worker was assigned, 0 if none
+    private long runStartPosition;              // Position at that time
+
+    /**
+     * Creates a segment covering {@code start..end} (inclusive).
+     *
+     * @param start The first byte of the range
+     * @param end   The last byte of the range
+     */
+    Segment(long start, long end) {
+        this(start, end, start);
+    }
+
+    /**
+     * Creates a segment covering {@code start..end} (inclusive) that has already been
+     * written up to {@code position}, e.g. when resuming from a journal.
+     *
+     * @param start    The first byte of the range
+     * @param end      The last byte of the range
+     * @param position The next byte to write
+     */
+    Segment(long start, long end, long position) {
+        this.start = start;
+        this.end = end;
+        this.position = position;
+    }
+
+    /**
+     * Creates a segment from {@code start} to wherever the response body ends.
+     *
+     * @param start The first byte of the range
+     * @return The segment
+     */
+    static Segment openEnded(long start) {
+        return new Segment(start, OPEN_END);
+    }
+
+    /**
+     * Splits a file of the given length into at most {@code count} equally sized segments.
+     * <p>
+     * Segments are never made smaller than {@code minSize}, so small files end up
+     * with fewer segments (at least one).
+     * </p>
+     *
+     * @param length  The total file length in bytes
+     * @param count   The desired number of segments
+     * @param minSize The minimum size of a single segment in bytes
+     * @return The segments in file order
+     */
+    static List<Segment> split(long length, int count, long minSize) {
+        int segmentCount = (int) Math.max(1, Math.min(count, length / minSize));
+        long segmentSize = length / segmentCount;
+
+        List<Segment> segments = new ArrayList<>(segmentCount);
+        long start = 0;
+        for (int i = 0; i < segmentCount; i++) {
+            long end = (i == segmentCount - 1) ? length - 1 : start + segmentSize - 1;
+            segments.add(new Segment(start, end));
+            start = end + 1;
+        }
+        return segments;
+    }
+
+    /**
+     * Copies the current positions of the given segments.
+     * <p>
+     * The copies do not move when the workers advance, so they can be journaled
+     * after the file data up to these positions has been made durable.
+     * </p>
+     *
+     * @param segments The live segments
+     * @return A frozen copy of each segment
+     */
+    static List<Segment> snapshot(List<Segment> segments) {
+        List<Segment> copies = new ArrayList<>(segments.size());
+        for (Segment segment : segments) {
+            copies.add(new Segment(segment.start, segment.end, segment.position));
+        }
+        return copies;
+    }
+
+    /**
+     * Returns the number of bytes already written across all segments.
+     */
+    static long completedBytes(List<Segment> segments) {
+        long completed = 0;
+        for (Segment segment : segments) {
+            completed += segment.position - segment.start;
+        }
+        return completed;
+    }
+
+    long getStart() {
+        return start;
+    }
+
+    long getEnd() {
+        return end;
+    }
+
+    long getPosition() {
+        return position;
+    }
+
+    long getRemaining() {
+        return end + 1 - position;
+    }
+
+    boolean isComplete() {
+        return position > end;
+    }
+
+    /**
+     * Returns whether the length of this segment is only known once its body ends.
+     */
+    boolean isOpenEnded() {
+        return end == OPEN_END;
+    }
+
+    /**
+     * Records that {@code bytes} more bytes of this segment have been written.
+     * Only the worker that owns the segment may call this.
+     */
+    void advance(int bytes) {
+        position += bytes;
+    }
+
+    /**
+     * Records that a worker has just been assigned to this segment, so its speed can be
+     * estimated. Only the coordinator of the download may call this.
+     *
+     * @param nanos The current {@link System#nanoTime()}
+     */
+    void startRun(long nanos) {
+        runStartNanos = nanos;
+        runStartPosition = position;
+    }
+
+    /**
+     * Estimates how long the current worker needs for the rest of the segment, based on
+     * its average speed since {@link #startRun(long)}.
+     *
+     * @param nanos The current {@link System#nanoTime()}
+     * @return The estimate in nanoseconds, {@link Long#MAX_VALUE} if nothing has been written yet
+     */
+    long estimateRemainingNanos(long nanos) {
+        long written = position - runStartPosition;
+        if (runStartNanos == 0 || written <= 0) return Long.MAX_VALUE;
+        return (long) ((double) getRemaining() * (nanos - runStartNanos) / written);
+    }
+
+    /**
+     * Splits off the bytes from {@code offset} to the end as a new segment and shrinks this
+     * one to end right before it.
+     * <p>
+     * The worker of this segment may be in the middle of writing a buffer sized against
+     * the old end, so the offset must lie beyond that buffer: at least one write buffer
+     * past the current position. Only the coordinator of the download may call this.
+     * </p>
+     *
+     * @param offset The first byte of the new segment
+     * @return The new segment, not yet written
+     */
+    Segment splitAt(long offset) {
+        if (offset <= position || offset > end) {
+            throw new IllegalArgumentException("Cannot split " + this + " at " + offset);
+        }
+        Segment rest = new Segment(offset, end);
+        end = offset - 1;
+        return rest;
+    }
+
+    @Override
+    public String toString() {
+        return isOpenEnded() ? "bytes " + start + "-" : "bytes " + start + "-" + end;
+    }
+}
@@ -0,0 +1,331 @@
+package com.multithreaded.downloader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Decides which byte range each connection of a segmented download fetches, and how
+ * many connections the download uses.
+ * <p>
+ * With a fixed split, the slowest connection decides when the file is complete. Here a
+ * connection that finishes its range early takes over half of what is left of the range
+ * expected to finish last, so all connections tend to finish together. The number of
+ * connections is tuned by hill climbing on the measured throughput of the file: one
+ * connection is added, and kept only if it raised the throughput noticeably; one is
+ * removed, and kept removed if the throughput did not drop. A probe that did not pay off
+ * is reverted and the direction reversed after a pause.
+ * </p>
+ * <p>
+ * A download with mirrors has several {@link DownloadSource sources}. Every source is
+ * tried with one connection first; after that, new connections go to the sources in
+ * proportion to their measured throughput, and since fast connections finish their
+ * ranges sooner and take over more, each source ends up serving a share of the file
+ * that matches its speed. A source that fails is dropped and its range is handed to
+ * the next free connection.
+ * </p>
+ * <p>
+ * The balancer is not thread-safe. It is only used by the thread coordinating the
+ * download, which is also the only thread that splits segments; the workers merely
+ * advance them.
+ * </p>
+ */
+class SegmentBalancer {
+
+    private static final double MIN_GAIN = 0.05;            // Throughput change that counts as a change
+    private static final int HOLD_SAMPLES = 5;              // Samples to wait after a reverted probe
+    private static final int WARMUP_SAMPLES = 2;            // Samples skipped while connections ramp up
+
+    /**
+     * A range handed to a new connection, and where to fetch it from.
+     */
+    record Assignment(Segment segment, DownloadSource source) {
+    }
+
+    /**
+     * The source of a running connection, and how much of its progress has been counted.
+     */
+    private static final class Run {
+        final DownloadSource source;
+        long countedPosition;
+
+        Run(DownloadSource source, long countedPosition) {
+            this.source = source;
+            this.countedPosition = countedPosition;
+        }
+    }
+
+    private final List<Segment> segments;                   // Every range of the file, in creation order
+    private final List<DownloadSource> sources;
+    private final Deque<Segment> unassigned = new ArrayDeque<>();
+    private final Map<Segment, Run> running = new IdentityHashMap<>();
+    private final boolean adaptive;
+    private int maxConnections;
+    private int maxConnectionsPerSource;
+    private final long minSplitSize;                        // Smallest range worth a connection
+    private final long retireMargin;                        // Bytes a retired connection still writes
+    private int targetConnections;
+    private int direction = 1;                              // +1 while probing up, -1 while probing down
+    private boolean probing;
+    private double baseline;                                // Throughput before the running probe
+    private int hold = WARMUP_SAMPLES;
+    private long lastSampleNanos;
+
+    /**
+     * Creates a balancer for the given segments.
+     *
+     * @param segments                The segments of the file, possibly partly written
+     * @param sources                 The servers to fetch from, the added URL first
+     * @param connections             The initial number of connections
+     * @param maxConnections          The largest number of connections the tuning may reach
+     * @param maxConnectionsPerSource The largest number of connections to a single source
+     * @param minSplitSize            The smallest range split off to a connection; must not be
+     *                                below the largest single write of a worker
+     * @param retireMargin            How far a connection being retired may still write; must
+     *                                exceed the largest single write of a worker
+     * @param adaptive                {@code false} to keep the given segments and connection count
+     */
+    SegmentBalancer(List<Segment> segments, List<DownloadSource> sources, int connections, int maxConnections,
+                    int maxConnectionsPerSource, long minSplitSize, long retireMargin, boolean adaptive) {
+        this.segments = new ArrayList<>(segments);
+        this.sources = sources;
+        this.adaptive = adaptive;
+        this.maxConnections = adaptive ? Math.max(connections, maxConnections) : Integer.MAX_VALUE;
+        this.maxConnectionsPerSource = adaptive ? maxConnectionsPerSource : Integer.MAX_VALUE;
+        this.minSplitSize = minSplitSize;
+        this.retireMargin = retireMargin;
+        this.targetConnections = adaptive ? Math.max(1, connections) : Integer.MAX_VALUE;
+
+        for (Segment segment : segments) {
+            if (!segment.isComplete()) {
+                unassigned.add(segment);
+            }
+        }
+    }
+
+    /**
+     * Changes how far the tuning may go, e.g. after the connection limits were changed.
+     * Connections above a lowered limit are retired at their next write boundary rather
+     * than closed; a raised limit is used by the next probes.
+     *
+     * @param maxConnections          The largest number of connections the tuning may reach
+     * @param maxConnectionsPerSource The largest number of connections to a single source
+     * @param nanos                   The current {@link System#nanoTime()}
+     */
+    void setMaxConnections(int maxConnections, int maxConnectionsPerSource, long nanos) {
+        if (!adaptive) return;
+
+        this.maxConnections = Math.max(1, maxConnections);
+        this.maxConnectionsPerSource = Math.max(1, maxConnectionsPerSource);
+        if (targetConnections > this.maxConnections) {
+            targetConnections = this.maxConnections;
+            probing = false;
+            retireExcess(nanos);
+        }
+    }
+
+    /**
+     * Returns every segment of the file, including the ones split off so far.
+     */
+    List<Segment> getSegments() {
+        return segments;
+    }
+
+    /**
+     * Returns whether any connection is still running.
+     */
+    boolean isRunning() {
+        return !running.isEmpty();
+    }
+
+    /**
+     * Picks the range for a new connection, if the download should have one more.
+     * <p>
+     * Ranges left behind by retired or failed connections come first; after that, the
+     * running range expected to finish last is split in half.
+     * </p>
+     *
+     * @param nanos The current {@link System#nanoTime()}
+     * @return The range and its source, or {@code null} if no connection should be started
+     */
+    Assignment assign(long nanos) {
+        if (running.size() >= targetConnections) return null;
+        DownloadSource source = pickSource();
+        if (source == null) return null;
+
+        Segment segment = unassigned.poll();
+        if (segment == null && adaptive) {
+            segment = steal(nanos);
+        }
+        if (segment == null) return null;
+
+        segment.startRun(nanos);
+        running.put(segment, new Run(source, segment.getPosition()));
+        source.connectionStarted();
+        return new Assignment(segment, source);
+    }
+
+    /**
+     * Records that the connection of a segment has finished its range.
+     */
+    void finished(Segment segment) {
+        Run run = running.remove(segment);
+        if (run != null) {
+            count(segment, run);
+            run.source.connectionFinished();
+        }
+    }
+
+    /**
+     * Drops the source of a connection that failed and puts the rest of its range back,
+     * to be fetched from another source.
+     *
+     * @param segment The range of the failed connection
+     * @return {@code false} if no other source is left, so the download has failed
+     */
+    boolean failed(Segment segment) {
+        Run run = running.remove(segment);
+        if (run == null) return false;
+
+        count(segment, run);
+        run.source.connectionFinished();
+        run.source.fail();
+        if (!segment.isComplete()) {
+            unassigned.addFirst(segment);
+        }
+        return sources.stream().anyMatch(source -> !source.isFailed());
+    }
+
+    /**
+     * Returns the source the connection of a segment fetches from.
+     */
+    DownloadSource getSource(Segment segment) {
+        Run run = running.get(segment);
+        return run != null ? run.source : null;
+    }
+
+    /**
+     * Feeds the throughput of the last interval into the connection tuning.
+     * Samples taken while there is no range left to give to another connection are ignored.
+     *
+     * @param bytesPerSecond The throughput of the whole file over the last interval
+     * @param nanos          The current {@link System#nanoTime()}
+     */
+    void sample(double bytesPerSecond, long nanos) {
+        running.forEach((segment, run) -> count(segment, run));
+        for (DownloadSource source : sources) {
+            source.sample(lastSampleNanos != 0 ? nanos - lastSampleNanos : 0);
+        }
+        lastSampleNanos = nanos;
+
+        if (!adaptive) return;
+        if (running.size() < targetConnections) {
+            probing = false;    // Nothing left to split: the samples say nothing about the count
+            return;
+        }
+        if (hold > 0) {
+            hold--;
+            return;
+        }
+
+        if (probing) {
+            probing = false;
+            boolean keep = direction > 0
+                    ? bytesPerSecond >= baseline * (1 + MIN_GAIN)
+                    : bytesPerSecond >= baseline * (1 - MIN_GAIN);
+            if (!keep) {
+                targetConnections -= direction;
+                direction = -direction;
+                hold = HOLD_SAMPLES;
+                retireExcess(nanos);
+                return;
+            }
+        }
+
+        int next = targetConnections + direction;
+        if (next < 1 || next > maxConnections) {
+            direction = -direction;
+            hold = HOLD_SAMPLES;
+            return;
+        }
+        baseline = bytesPerSecond;
+        targetConnections = next;
+        probing = true;
+        retireExcess(nanos);
+    }
+
+    /**
+     * Picks the source for a new connection: one that has not been tried yet, or else the
+     * one whose measured throughput per connection would be highest with one more.
+     */
+    private DownloadSource pickSource() {
+        DownloadSource best = null;
+        double bestScore = -1;
+        for (DownloadSource source : sources) {
+            if (source.isFailed() || source.getConnections() >= maxConnectionsPerSource) continue;
+            if (source.getConnections() == 0 && source.getBytesPerSecond() < 0) return source;
+
+            double score = Math.max(1, source.getBytesPerSecond()) / (source.getConnections() + 1);
+            if (score > bestScore) {
+                best = source;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Credits the bytes a connection wrote since it was last counted to its source.
+     */
+    private static void count(Segment segment, Run run) {
+        long position = segment.getPosition();
+        run.source.addBytes(position - run.countedPosition);
+        run.countedPosition = position;
+    }
+
+    /**
+     * Splits the running range expected to finish last and returns its second half.
+     */
+    private Segment steal(long nanos) {
+        Segment victim = null;
+        long victimNanos = -1;
+        for (Segment segment : running.keySet()) {
+            if (segment.getRemaining() < 2 * minSplitSize) continue;
+            long remainingNanos = segment.estimateRemainingNanos(nanos);
+            if (remainingNanos > victimNanos
+                    || (remainingNanos == victimNanos && segment.getRemaining() > victim.getRemaining())) {
+                victim = segment;
+                victimNanos = remainingNanos;
+            }
+        }
+        if (victim == null) return null;
+
+        Segment stolen = victim.splitAt(victim.getPosition() + victim.getRemaining() / 2);
+        segments.add(stolen);
+        return stolen;
+    }
+
+    /**
+     * Cuts the slowest connections short until no more than the target are left running.
+     * A retired connection writes up to {@code retireMargin} more bytes and then finishes;
+     * the rest of its range waits for the next free connection.
+     */
+    private void retireExcess(long nanos) {
+        int excess = running.size() - targetConnections;
+        List<Segment> candidates = new ArrayList<>(running.keySet());
+        candidates.sort((a, b) -> Long.compare(b.estimateRemainingNanos(nanos), a.estimateRemainingNanos(nanos)));
+
+        for (Segment segment : candidates) {
+            if (excess <= 0) break;
+            if (segment.getRemaining() < retireMargin + minSplitSize) continue;
+
+            Segment rest = segment.splitAt(segment.getPosition() + retireMargin);
+            segments.add(rest);
+            unassigned.addFirst(rest);
+            excess--;
+        }
+    }
+}
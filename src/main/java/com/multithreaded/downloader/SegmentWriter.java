@@ -0,0 +1,44 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes the bytes received by one connection into the output file.
+ * <p>
+ * A writer belongs to a single worker thread. Writes go to absolute positions, so the
+ * workers of a segmented download can write their ranges of the same file concurrently.
+ * </p>
+ *
+ * @see MappedOutput
+ */
+interface SegmentWriter extends AutoCloseable {
+
+    /**
+     * Writes all remaining bytes of the buffer at the given file position.
+     *
+     * @param buffer   The bytes to write, from its position to its limit; consumed by the write
+     * @param position The file offset of the first byte
+     * @throws IOException If the write fails
+     */
+    void write(ByteBuffer buffer, long position) throws IOException;
+
+    /**
+     * Releases what the writer holds on to. The file itself stays open.
+     */
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Returns a writer that writes through the channel with ordinary positional writes.
+     *
+     * @param channel The channel of the output file, opened for writing
+     * @return The writer
+     */
+    static SegmentWriter of(FileChannel channel) {
+        return (buffer, position) -> FileUtils.writeFully(channel, buffer, position);
+    }
+}
@@ -0,0 +1,222 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Notices transfers that have stopped making progress and aborts them.
+ * <p>
+ * Every response body being read is covered by a {@link Watch}. The monitor thread
+ * checks all watches periodically and aborts a transfer whose current read has been
+ * blocked for longer than the read timeout, or whose throughput stayed below the
+ * minimum over a whole window. Neither transport can time out a read reliably on its
+ * own: the HTTP client has no read timeout for bodies at all. The transfer is aborted
+ * by interrupting its thread, which unblocks a read on any transport; the watch turns
+ * that interrupt into a {@link StalledException}, so the request is retried like any
+ * other connection failure instead of the download being stopped.
+ * </p>
+ * <p>
+ * A transfer is only interrupted while it is blocked in a read. An interrupt that hit
+ * a {@link java.nio.channels.FileChannel} write would close the channel of the output
+ * file, and every retry after it would fail. A transfer found too slow while it is
+ * writing is checked again on the next round.
+ * </p>
+ * <p>
+ * While a speed limit applies to a transfer, only the read timeout is enforced, since
+ * a throttled connection is slow on purpose.
+ * </p>
+ */
+class StallDetector {
+
+    private static final int ACTIVE = 0;
+    private static final int READING = 1;                   // Blocked in a read; only now may it be aborted
+    private static final int ABORTING = 2;                  // Monitor is interrupting the thread
+    private static final int ABORTED = 3;
+    private static final int CLOSED = 4;
+
+    /**
+     * A transfer that was aborted because it stalled. It is retried like a timeout.
+     */
+    static final class StalledException extends IOException {
+        StalledException(String message) {
+            super(message);
+        }
+    }
+
+    private final Set<Watch> watches = ConcurrentHashMap.newKeySet();
+    private final BandwidthLimiter globalLimiter;
+    private volatile long readTimeoutNanos;
+    private volatile long minBytesPerSecond;
+    private volatile long windowNanos;
+
+    /**
+     * Creates a detector with the given limits.
+     *
+     * @param globalLimiter     The limiter shared by all downloads
+     * @param readTimeoutMillis How long a single read may block, {@code 0} for no limit
+     * @param minBytesPerSecond The lowest acceptable throughput of a transfer, {@code 0} for none
+     * @param windowMillis      How long the throughput may stay below the minimum
+     */
+    StallDetector(BandwidthLimiter globalLimiter, long readTimeoutMillis, long minBytesPerSecond, long windowMillis) {
+        this.globalLimiter = globalLimiter;
+        setReadTimeout(readTimeoutMillis);
+        setMinimumSpeed(minBytesPerSecond, windowMillis);
+    }
+
+    void setReadTimeout(long readTimeoutMillis) {
+        this.readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, readTimeoutMillis));
+    }
+
+    void setMinimumSpeed(long minBytesPerSecond, long windowMillis) {
+        this.minBytesPerSecond = Math.max(0, minBytesPerSecond);
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, windowMillis));
+    }
+
+    /**
+     * Starts watching a transfer on the current thread.
+     *
+     * @param limiter The speed limit of the download, may be {@code null}
+     * @return The watch, to be closed once the response body is done with
+     */
+    Watch watch(BandwidthLimiter limiter) {
+        Watch watch = new Watch(Thread.currentThread(), limiter, System.nanoTime());
+        watches.add(watch);
+        return watch;
+    }
+
+    /**
+     * Checks every transfer and aborts the stalled ones. Only the monitor thread may call this.
+     *
+     * @param nanos The current {@link System#nanoTime()}
+     */
+    void check(long nanos) {
+        long readTimeout = readTimeoutNanos;
+        long minRate = minBytesPerSecond;
+        long window = windowNanos;
+
+        for (Watch watch : watches) {
+            long readStart = watch.readStartNanos;
+            if (readTimeout > 0 && readStart != 0 && nanos - readStart >= readTimeout) {
+                watch.abort("Read timed out after " + TimeUnit.NANOSECONDS.toSeconds(readTimeout) + " s");
+                continue;
+            }
+
+            // Keep the window of a transfer that is not reading, it is judged once it reads again
+            if (readStart == 0 || nanos - watch.windowStartNanos < window) continue;
+            long bytes = watch.bytes;
+            double rate = (bytes - watch.windowStartBytes) * 1e9 / (nanos - watch.windowStartNanos);
+            if (minRate > 0 && rate < minRate && !watch.isThrottled()) {
+                watch.abort("Stalled below " + minRate + " B/s for " + TimeUnit.NANOSECONDS.toSeconds(window) + " s");
+                continue;
+            }
+            watch.windowStartNanos = nanos;
+            watch.windowStartBytes = bytes;
+        }
+    }
+
+    /**
+     * The progress of one response body, reported by the thread reading it.
+     */
+    final class Watch implements AutoCloseable {
+
+        private final Thread thread;
+        private final BandwidthLimiter limiter;
+        private final AtomicInteger state = new AtomicInteger(ACTIVE);
+        private volatile long readStartNanos;                   // When the pending read began, 0 if none
+        private volatile long bytes;                            // Written by the reading thread only
+        private long windowStartNanos;                          // Monitor thread only
+        private long windowStartBytes;                          // Monitor thread only
+        private volatile String reason;
+
+        private Watch(Thread thread, BandwidthLimiter limiter, long nanos) {
+            this.thread = thread;
+            this.limiter = limiter;
+            this.windowStartNanos = nanos;
+        }
+
+        /**
+         * Marks the start of a blocking read.
+         */
+        void beginRead() {
+            readStartNanos = System.nanoTime();
+            state.compareAndSet(ACTIVE, READING);
+        }
+
+        /**
+         * Marks the end of a read.
+         *
+         * @param bytesRead The number of bytes it returned, {@code -1} at the end of the body
+         * @throws InterruptedIOException If the monitor aborted the read just as it returned;
+         *                                {@link #explain(IOException)} turns it into a stall
+         */
+        void endRead(int bytesRead) throws InterruptedIOException {
+            readStartNanos = 0;
+            if (!state.compareAndSet(READING, ACTIVE)) {
+                throw new InterruptedIOException("Transfer aborted");
+            }
+            if (bytesRead > 0) {
+                bytes += bytesRead;
+            }
+        }
+
+        /**
+         * Explains a failure of the transfer: if it was aborted for stalling, the
+         * interrupt that aborted it is cleared and a {@link StalledException} returned.
+         *
+         * @param error The failure of the transfer
+         * @return The exception to throw
+         */
+        IOException explain(IOException error) {
+            if (!finish()) return error;
+            StalledException stalled = new StalledException(reason);
+            stalled.addSuppressed(error);
+            return stalled;
+        }
+
+        /**
+         * Stops watching. An abort that raced with a successful transfer is undone.
+         */
+        @Override
+        public void close() {
+            finish();
+        }
+
+        /**
+         * Ends the watch and clears the interrupt if the monitor aborted the transfer.
+         *
+         * @return Whether the transfer was aborted
+         */
+        private boolean finish() {
+            watches.remove(this);
+            // Only this thread moves the state between ACTIVE and READING
+            if (state.compareAndSet(ACTIVE, CLOSED) || state.compareAndSet(READING, CLOSED)) return false;
+
+            while (state.get() == ABORTING) {
+                Thread.onSpinWait();    // The monitor is between deciding and interrupting
+            }
+            if (state.compareAndSet(ABORTED, CLOSED)) {
+                Thread.interrupted();
+                return true;
+            }
+            return false;
+        }
+
+        private boolean isThrottled() {
+            return globalLimiter.getRate() > 0 || (limiter != null && limiter.getRate() > 0);
+        }
+
+        private void abort(String reason) {
+            if (state.compareAndSet(READING, ABORTING)) {
+                this.reason = reason;
+                watches.remove(this);
+                thread.interrupt();
+                state.set(ABORTED);
+            }
+        }
+    }
+}
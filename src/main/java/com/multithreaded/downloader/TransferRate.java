@@ -0,0 +1,60 @@
+package com.multithreaded.downloader;
+
+/**
+ * The rate of a growing byte counter, measured over a sliding window of samples.
+ * <p>
+ * The counter is sampled at a fixed interval by a single thread, the manager's monitor.
+ * The rate is the number of bytes between the oldest and the newest sample in the
+ * window divided by the time between them, so one slow tick does not make the reading
+ * jump, and a stalled transfer decays to zero within one window. Readers only do a
+ * volatile read and never wait for the sampler.
+ * </p>
+ */
+class TransferRate {
+
+    private final long[] sampleBytes;       // Ring buffer of counter values
+    private final long[] sampleNanos;       // When each value was taken
+    private int next;                       // Slot of the next sample
+    private int count;                      // Number of filled slots
+    private volatile long bytesPerSecond;
+
+    /**
+     * Creates a rate with an empty window.
+     *
+     * @param windowSamples The number of samples the window holds, at least 2; {@code n}
+     *                      samples span {@code n - 1} sampling intervals
+     */
+    TransferRate(int windowSamples) {
+        this.sampleBytes = new long[Math.max(2, windowSamples)];
+        this.sampleNanos = new long[sampleBytes.length];
+    }
+
+    /**
+     * Adds a sample and recomputes the rate. Only the sampling thread may call this.
+     *
+     * @param bytes The current value of the counter
+     * @param nanos The current {@link System#nanoTime()}
+     */
+    void sample(long bytes, long nanos) {
+        sampleBytes[next] = bytes;
+        sampleNanos[next] = nanos;
+        next = (next + 1) % sampleBytes.length;
+        if (count < sampleBytes.length) count++;
+
+        int oldest = (next - count + sampleBytes.length) % sampleBytes.length;
+        long elapsed = nanos - sampleNanos[oldest];
+        // In double: bytes times 10^9 overflows a long once the window holds about 9.2 GB
+        bytesPerSecond = elapsed > 0
+                ? Math.max(0, (long) ((bytes - sampleBytes[oldest]) * 1e9 / elapsed))
+                : 0;
+    }
+
+    /**
+     * Returns the rate over the current window.
+     *
+     * @return The rate in bytes per second, {@code 0} until two samples were taken
+     */
+    long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+}
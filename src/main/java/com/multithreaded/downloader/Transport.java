@@ -0,0 +1,53 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.time.Duration;
+
+import java.util.Map;
+
+/**
+ * The HTTP layer used by {@link DownloadManager} to fetch files.
+ * <p>
+ * Implementations decide how connections are opened, pooled and reused; the manager
+ * only issues {@code GET} requests with extra headers such as {@code Range} and reads
+ * the response body as a stream. Implementations must be safe for concurrent use by
+ * many download threads.
+ * </p>
+ *
+ * @see HttpClientTransport
+ * @see UrlConnectionTransport
+ */
+public interface Transport {
+
+    /**
+     * Sends a {@code GET} request and returns once the response headers have arrived.
+     * <p>
+     * Responses with any status code are returned, including errors; the caller must
+     * close the response to release its connection.
+     * </p>
+     *
+     * @param uri     The URI to fetch
+     * @param headers Additional request headers
+     * @return The response, with its body not yet read
+     * @throws IOException          If the request fails
+     * @throws InterruptedException If the thread is interrupted while waiting for the response
+     */
+    TransportResponse get(URI uri, Map<String, String> headers) throws IOException, InterruptedException;
+
+    /**
+     * Limits how long a request may wait for the server.
+     * <p>
+     * Applies to requests sent afterwards. A transport that cannot time out reads of the
+     * response body relies on the manager's stall detection for them. The default
+     * implementation ignores the limits.
+     * </p>
+     *
+     * @param connectTimeout How long to wait for a connection, {@link Duration#ZERO} for no limit
+     * @param readTimeout    How long to wait for the response or for data, {@link Duration#ZERO} for no limit
+     */
+    default void setTimeouts(Duration connectTimeout, Duration readTimeout) {
+    }
+}
@@ -0,0 +1,52 @@
+package com.multithreaded.downloader;
+
+import java.io.InputStream;
+
+/**
+ * A response returned by a {@link Transport}.
+ * <p>
+ * Closing the response releases its connection. A body that was read to the end lets the
+ * transport reuse the connection; closing it early may discard the connection instead.
+ * </p>
+ */
+public interface TransportResponse extends AutoCloseable {
+
+    /**
+     * Returns the HTTP status code.
+     */
+    int statusCode();
+
+    /**
+     * Returns the first value of a response header.
+     *
+     * @param name The header name, matched case-insensitively
+     * @return The value, or {@code null} if the header is missing
+     */
+    String header(String name);
+
+    /**
+     * Returns the response body.
+     */
+    InputStream body();
+
+    /**
+     * Returns the value of the {@code Content-Length} header.
+     *
+     * @return The length in bytes, or {@code -1} if it is missing or invalid
+     */
+    default long contentLength() {
+        String value = header("Content-Length");
+        if (value == null) return -1;
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Closes the body and releases the connection.
+     */
+    @Override
+    void close();
+}
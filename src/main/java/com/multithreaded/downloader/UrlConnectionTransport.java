@@ -0,0 +1,89 @@
+package com.multithreaded.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URI;
+
+import java.time.Duration;
+
+import java.util.Map;
+
+/**
+ * A {@link Transport} that opens an {@link HttpURLConnection} per request.
+ * <p>
+ * Kept for environments that configure HTTP through the {@code java.net} system
+ * properties, such as proxies. Connections are only reused through the JDK's
+ * keep-alive cache, and only HTTP/1.1 is supported.
+ * </p>
+ */
+public class UrlConnectionTransport implements Transport {
+
+    private volatile int connectTimeoutMillis;                  // 0 waits forever
+    private volatile int readTimeoutMillis;                     // 0 waits forever
+
+    @Override
+    public TransportResponse get(URI uri, Map<String, String> headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) uri.toURL().openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(connectTimeoutMillis);
+        connection.setReadTimeout(readTimeoutMillis);
+        headers.forEach(connection::setRequestProperty);
+
+        try {
+            int status = connection.getResponseCode();
+            InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            return new Response(connection, status, body != null ? body : InputStream.nullInputStream());
+        } catch (IOException e) {
+            connection.disconnect();
+            throw e;
+        }
+    }
+
+    @Override
+    public void setTimeouts(Duration connectTimeout, Duration readTimeout) {
+        connectTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, connectTimeout.toMillis());
+        readTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, readTimeout.toMillis());
+    }
+
+    /**
+     * Adapts an {@link HttpURLConnection} to {@link TransportResponse}.
+     */
+    private static final class Response implements TransportResponse {
+
+        private final HttpURLConnection connection;
+        private final int status;
+        private final InputStream body;
+
+        private Response(HttpURLConnection connection, int status, InputStream body) {
+            this.connection = connection;
+            this.status = status;
+            this.body = body;
+        }
+
+        @Override
+        public int statusCode() {
+            return status;
+        }
+
+        @Override
+        public String header(String name) {
+            return connection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream body() {
+            return body;
+        }
+
+        @Override
+        public void close() {
+            // Closing the stream instead of disconnecting leaves the connection in the keep-alive cache
+            try {
+                body.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
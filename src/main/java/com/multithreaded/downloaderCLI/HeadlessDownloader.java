@@ -0,0 +1,398 @@
+package com.multithreaded.downloaderCLI;
+
+import com.multithreaded.downloader.BandwidthLimiter;
+import com.multithreaded.downloader.BufferPoolStats;
+import com.multithreaded.downloader.BulkImport;
+import com.multithreaded.downloader.DownloadListener;
+import com.multithreaded.downloader.DownloadManager;
+import com.multithreaded.downloader.DownloadProgress;
+import com.multithreaded.downloader.RetryPolicy;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Duration;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Command-line batch mode that drives {@link DownloadManager} without any UI.
+ * <p>
+ * URLs are taken from the arguments, from a file given with {@code --input}, or from
+ * standard input. The list is streamed through a {@link BulkImport}: lines are read as
+ * downloads are taken on, so a manifest of millions of URLs starts downloading at once
+ * and never sits in memory as a whole. Progress is printed to standard output as tab-separated
+ * {@code key=value} lines, one record per line, so the output can be consumed by scripts:
+ * </p>
+ * <pre>
+ * progress    url=...  bytes=...  total=...  percent=...  rate=...  eta=...
+ * throughput  bytes=...  rate=...  active=...  queued=...
+ * buffers     in_use=...  pooled_bytes=...  hits=...  misses=...
+ * done        url=...  file=...
+ * failed      url=...  reason=...
+ * summary     completed=...  failed=...  bytes=...  elapsed_ms=...
+ * </pre>
+ * <p>
+ * Informational messages go to standard error. The process exits with
+ * {@value #EXIT_OK} when every download completed, {@value #EXIT_FAILED} when at least
+ * one failed and {@value #EXIT_USAGE} for invalid arguments. This class never touches
+ * AWT or Swing, so it starts quickly on machines without a display.
+ * </p>
+ */
+public class HeadlessDownloader {
+
+    public static final int EXIT_OK = 0;
+    public static final int EXIT_FAILED = 1;
+    public static final int EXIT_USAGE = 2;
+
+    private static final String USAGE = """
+            Usage: --headless [options] [URL...]
+              -d, --dir DIR         Directory to save files into (default: current directory)
+              -i, --input FILE      Read URLs from FILE, one per line ('-' for standard input)
+              -s, --segments N      Connections per file (default: 4)
+              -l, --limit KBPS      Total speed limit in KB/s (default: 0 = unlimited)
+              -c, --connections N   Maximum open connections (default: 256)
+              -p, --per-host N      Maximum open connections per host (default: 8)
+              -r, --retries N       Retries of a failing request, with backoff (default: 3)
+              -t, --timeout SEC     Connect and read timeout in seconds (default: 30, 0 = none)
+                  --min-speed KBPS  Abort and retry a connection slower than this for 30 s
+                                    (default: 1, 0 = only apply the read timeout)
+                  --interval MS     Progress report interval in milliseconds (default: 1000)
+                  --no-resume       Do not journal or resume partial downloads
+                  --mmap            Write segments through memory-mapped windows of the file
+                  --cache DIR       Remember completed files in DIR and skip those the
+                                    server reports unchanged
+              -h, --help            Show this help
+            Without URLs or --input, URLs are read from standard input. An input line may
+            follow its URL with mirrors of the same file, fetched from in parallel, and with
+            the expected checksum, e.g. 'URL MIRROR sha256:HEX' (also sha1, md5 or crc32c);
+            a file that does not match fails. Repeated URLs are downloaded once, and lines
+            are read as downloads are taken on, so the list may be arbitrarily long.""";
+
+    private final PrintStream out;
+    private final PrintStream err;
+
+    /**
+     * Creates a downloader that reports to the given streams.
+     *
+     * @param out The stream for machine-readable progress lines
+     * @param err The stream for messages and usage errors
+     */
+    public HeadlessDownloader(PrintStream out, PrintStream err) {
+        this.out = out;
+        this.err = err;
+    }
+
+    /**
+     * Runs the batch and exits the JVM with its status code.
+     *
+     * @param args Command-line arguments, see {@link #run(String[])}
+     */
+    public static void main(String[] args) {
+        System.exit(new HeadlessDownloader(System.out, System.err).run(args));
+    }
+
+    /**
+     * Parses the arguments, downloads every URL and waits until all of them have finished.
+     *
+     * @param args Command-line arguments
+     * @return The exit status
+     */
+    public int run(String[] args) {
+        String downloadDir = ".";
+        String input = null;
+        int segments = 4;
+        long speedLimit = 0;
+        int maxConnections = 256;
+        int maxConnectionsPerHost = 8;
+        long interval = 1000;
+        boolean autoResume = true;
+        boolean mmap = false;
+        int retries = RetryPolicy.DEFAULT.getMaxRetries();
+        String cacheDir = null;
+        long timeout = 30;
+        long minSpeed = 1;
+        List<String> urls = new ArrayList<>();
+        Iterator<String> lines;
+        String source;
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                switch (arg) {
+                    case "-d", "--dir" -> downloadDir = value(args, ++i, arg);
+                    case "-i", "--input" -> input = value(args, ++i, arg);
+                    case "-s", "--segments" -> segments = Integer.parseInt(value(args, ++i, arg));
+                    case "-l", "--limit" -> speedLimit = Long.parseLong(value(args, ++i, arg));
+                    case "-c", "--connections" -> maxConnections = Integer.parseInt(value(args, ++i, arg));
+                    case "-p", "--per-host" -> maxConnectionsPerHost = Integer.parseInt(value(args, ++i, arg));
+                    case "-r", "--retries" -> retries = Integer.parseInt(value(args, ++i, arg));
+                    case "-t", "--timeout" -> timeout = Long.parseLong(value(args, ++i, arg));
+                    case "--min-speed" -> minSpeed = Long.parseLong(value(args, ++i, arg));
+                    case "--interval" -> interval = Long.parseLong(value(args, ++i, arg));
+                    case "--no-resume" -> autoResume = false;
+                    case "--mmap" -> mmap = true;
+                    case "--cache" -> cacheDir = value(args, ++i, arg);
+                    case "-h", "--help" -> {
+                        out.println(USAGE);
+                        return EXIT_OK;
+                    }
+                    default -> {
+                        if (arg.startsWith("-")) {
+                            throw new IllegalArgumentException("Unknown option: " + arg);
+                        }
+                        urls.add(arg);
+                    }
+                }
+            }
+            if (maxConnections < 1 || maxConnectionsPerHost < 1 || interval < 1) {
+                throw new IllegalArgumentException("Limits and interval must be positive");
+            }
+            if (retries < 0 || timeout < 0 || minSpeed < 0) {
+                throw new IllegalArgumentException("Retries, timeout and minimum speed must not be negative");
+            }
+
+            if (input != null || urls.isEmpty()) {
+                source = input == null || input.equals("-") ? "standard input" : input;
+                lines = concat(urls.iterator(), BulkImport.lines(openInput(input == null ? "-" : input)));
+            } else {
+                source = "the command line";
+                lines = urls.iterator();
+            }
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return EXIT_USAGE;
+        } catch (IOException e) {
+            err.println("Cannot read URLs: " + e.getMessage());
+            return EXIT_USAGE;
+        }
+
+        DownloadManager downloadManager = new DownloadManager(maxConnections, maxConnectionsPerHost);
+        downloadManager.setSegmentsPerFile(segments);
+        downloadManager.setSpeedLimit(BandwidthLimiter.fromKilobytes(speedLimit));
+        downloadManager.setAutoResume(autoResume);
+        downloadManager.setMemoryMappedOutput(mmap);
+        downloadManager.setRetryPolicy(RetryPolicy.DEFAULT.withMaxRetries(retries));
+        downloadManager.setTimeouts(Duration.ofSeconds(timeout), Duration.ofSeconds(timeout));
+        downloadManager.setStallDetection(BandwidthLimiter.fromKilobytes(minSpeed), Duration.ofSeconds(30));
+        if (cacheDir != null) {
+            try {
+                downloadManager.setDownloadCache(cacheDir);
+            } catch (IOException e) {
+                err.println("Cannot open download cache: " + e.getMessage());
+                return EXIT_USAGE;
+            }
+        }
+
+        return download(downloadManager, lines, source, downloadDir, interval);
+    }
+
+    /**
+     * Downloads the URLs and prints progress until all of them have finished.
+     */
+    private int download(DownloadManager downloadManager, Iterator<String> lines, String source,
+                         String downloadDir, long interval) {
+        BatchListener listener = new BatchListener(downloadManager);
+        downloadManager.addListener(listener);
+
+        long startNanos = System.nanoTime();
+        BulkImport bulkImport = downloadManager.importUrls(lines, source, downloadDir);
+        ScheduledExecutorService reporter = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("progress-reporter").daemon().factory());
+        reporter.scheduleAtFixedRate(() -> listener.report(bulkImport), interval, interval, TimeUnit.MILLISECONDS);
+
+        try {
+            bulkImport.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            downloadManager.stopAllDownloads();
+        }
+        reporter.shutdownNow();
+        listener.report(bulkImport);
+
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+        out.println("summary\tcompleted=" + listener.completed.get()
+                + "\tfailed=" + listener.failed.get()
+                + "\tbytes=" + listener.totalBytes()
+                + "\telapsed_ms=" + elapsedMillis);
+        out.flush();
+
+        if (bulkImport.getQueuedCount() == 0 && bulkImport.getRejectedCount() == 0
+                && bulkImport.getDuplicateCount() == 0) {
+            err.println(bulkImport.getReadError() == null ? "No URLs provided" : "Cannot read URLs");
+            return EXIT_USAGE;
+        }
+        boolean allRead = bulkImport.getReadError() == null && bulkImport.getRejectedCount() == 0;
+        return allRead && listener.completed.get() == bulkImport.getQueuedCount() ? EXIT_OK : EXIT_FAILED;
+    }
+
+    /**
+     * Opens a file, or standard input for {@code "-"}.
+     */
+    private static BufferedReader openInput(String input) throws IOException {
+        return input.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Path.of(input), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the elements of the first iterator followed by those of the second.
+     */
+    private static Iterator<String> concat(Iterator<String> first, Iterator<String> second) {
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return first.hasNext() || second.hasNext();
+            }
+
+            @Override
+            public String next() {
+                return first.hasNext() ? first.next() : second.next();
+            }
+        };
+    }
+
+    /**
+     * Returns the value following an option, failing if it is missing.
+     */
+    private static String value(String[] args, int index, String option) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value for " + option);
+        }
+        return args[index];
+    }
+
+    /**
+     * Collects events of the batch and prints them as progress lines.
+     */
+    private class BatchListener implements DownloadListener {
+
+        private final DownloadManager downloadManager;
+        private final AtomicInteger completed = new AtomicInteger();
+        private final AtomicInteger failed = new AtomicInteger();
+        private final ConcurrentHashMap<String, DownloadProgress> latest = new ConcurrentHashMap<>();   // Unfinished downloads only
+        private final LongAdder finishedBytes = new LongAdder();      // Bytes of downloads that have ended
+        private final Set<String> changed = ConcurrentHashMap.newKeySet();
+        private long reportedBytes;
+        private long reportedNanos = System.nanoTime();
+
+        BatchListener(DownloadManager downloadManager) {
+            this.downloadManager = downloadManager;
+        }
+
+        @Override
+        public void onProgress(List<DownloadProgress> updates) {
+            for (DownloadProgress progress : updates) {
+                latest.put(progress.url(), progress);
+                changed.add(progress.url());
+            }
+        }
+
+        @Override
+        public void onMessage(String url, String message) {
+            err.println(message);
+        }
+
+        @Override
+        public void onCompleted(String url, File file) {
+            completed.incrementAndGet();
+            printProgress(url);
+            print("done\turl=" + url + "\tfile=" + file.getPath());
+            forget(url);
+        }
+
+        @Override
+        public void onFailed(String url, String reason) {
+            failed.incrementAndGet();
+            printProgress(url);
+            print("failed\turl=" + url + "\treason=" + reason.replace('\t', ' ').replace('\n', ' '));
+            forget(url);
+        }
+
+        @Override
+        public void onStopped(String url) {
+            failed.incrementAndGet();
+            printProgress(url);
+            print("failed\turl=" + url + "\treason=stopped");
+            forget(url);
+        }
+
+        /**
+         * Prints a progress line for every download that moved, one throughput line and one
+         * line on the transfer buffers.
+         */
+        synchronized void report(BulkImport bulkImport) {
+            for (String url : changed) {
+                printProgress(url);
+            }
+
+            long now = System.nanoTime();
+            long bytes = totalBytes();
+            long rate = (bytes - reportedBytes) * TimeUnit.SECONDS.toNanos(1) / Math.max(1, now - reportedNanos);
+            reportedBytes = bytes;
+            reportedNanos = now;
+            print("throughput\tbytes=" + bytes + "\trate=" + rate
+                    + "\tactive=" + bulkImport.getInFlightCount()
+                    + "\tqueued=" + bulkImport.getQueuedCount());
+
+            BufferPoolStats buffers = downloadManager.getBufferPoolStats();
+            print("buffers\tin_use=" + buffers.buffersInUse()
+                    + "\tpooled_bytes=" + buffers.pooledBytes()
+                    + "\thits=" + buffers.hits()
+                    + "\tmisses=" + buffers.misses());
+        }
+
+        /**
+         * Prints the latest progress of a download if it was not printed yet.
+         */
+        private void printProgress(String url) {
+            DownloadProgress progress = latest.get(url);
+            if (changed.remove(url) && progress != null) {
+                print("progress\turl=" + url
+                        + "\tbytes=" + progress.bytesDownloaded()
+                        + "\ttotal=" + progress.totalBytes()
+                        + "\tpercent=" + progress.percent()
+                        + "\trate=" + progress.bytesPerSecond()
+                        + "\teta=" + progress.etaSeconds());
+            }
+        }
+
+        /**
+         * Moves the bytes of a download that has ended into the running total, so the
+         * listener only holds downloads in flight however long the batch is.
+         */
+        private void forget(String url) {
+            DownloadProgress progress = latest.remove(url);
+            if (progress != null) {
+                finishedBytes.add(progress.bytesDownloaded());
+            }
+        }
+
+        long totalBytes() {
+            return finishedBytes.sum() + latest.values().stream().mapToLong(DownloadProgress::bytesDownloaded).sum();
+        }
+
+        private void print(String line) {
+            synchronized (out) {
+                out.println(line);
+            }
+        }
+    }
+}
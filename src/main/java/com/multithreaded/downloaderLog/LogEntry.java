@@ -0,0 +1,84 @@
+package com.multithreaded.downloaderLog;
+
+import org.slf4j.event.Level;
+import org.slf4j.helpers.MessageFormatter;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A copy of one log record, filled by {@link LogRing#read(long, LogEntry)}.
+ * <p>
+ * Entries are reusable holders: a reader keeps one and lets the ring overwrite it for
+ * every record it reads, so draining the ring allocates nothing until a record is
+ * formatted.
+ * </p>
+ */
+public final class LogEntry {
+
+    private static final DateTimeFormatter TIME_FORMAT =
+            DateTimeFormatter.ofPattern("HH:mm:ss.SSS").withZone(ZoneId.systemDefault());
+
+    long sequence;
+    long timeMillis;
+    Level level;
+    String threadName;
+    String loggerName;
+    String pattern;
+    Object[] arguments;
+    Throwable throwable;
+
+    /**
+     * Returns the sequence number of the record.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Returns the level of the record.
+     */
+    public Level getLevel() {
+        return level;
+    }
+
+    /**
+     * Returns the exception logged with the record.
+     *
+     * @return The exception, or {@code null}
+     */
+    public Throwable getThrowable() {
+        return throwable;
+    }
+
+    /**
+     * Formats the message by substituting the arguments into the pattern.
+     *
+     * @return The message
+     */
+    public String formatMessage() {
+        return arguments == null ? pattern : MessageFormatter.basicArrayFormat(pattern, arguments);
+    }
+
+    /**
+     * Formats the record as a single line: time, level, thread, logger and message.
+     * An exception is reduced to its class and message.
+     *
+     * @return The line, without a line separator
+     */
+    public String format() {
+        String logger = loggerName.substring(loggerName.lastIndexOf('.') + 1);
+        StringBuilder line = new StringBuilder(96)
+                .append(TIME_FORMAT.format(Instant.ofEpochMilli(timeMillis)))
+                .append(' ').append(level)
+                .append(level.toString().length() == 4 ? "  [" : " [")
+                .append(threadName.isEmpty() ? "virtual" : threadName)
+                .append("] ").append(logger)
+                .append(" - ").append(formatMessage());
+        if (throwable != null) {
+            line.append(": ").append(throwable);
+        }
+        return line.toString();
+    }
+}
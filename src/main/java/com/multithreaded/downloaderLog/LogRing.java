@@ -0,0 +1,185 @@
+package com.multithreaded.downloaderLog;
+
+import org.slf4j.event.Level;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free ring of the most recent log records.
+ * <p>
+ * Every record gets a sequence number. Logging claims the next number and copies the
+ * record's fields into the preallocated slot for it, overwriting the record one lap
+ * older; nothing is formatted and nothing is allocated, so a log call costs the same no
+ * matter how long the application has been running. The message is formatted only when
+ * a reader needs it, i.e. when the file writer drains the ring or the UI shows a row, so
+ * arguments must not be changed after they were logged.
+ * </p>
+ * <p>
+ * Each slot is guarded like a sequence lock: a writer marks the slot busy before it
+ * copies the fields and publishes the record's sequence number afterwards, and a reader
+ * only accepts a copy if the slot held the wanted sequence both before and after it read
+ * the fields. A reader that falls a full lap behind therefore sees the record as lost
+ * instead of a mix of two records.
+ * </p>
+ */
+public final class LogRing {
+
+    static final int DEFAULT_CAPACITY = 16384;
+
+    private static final long BUSY = -1;                // Slot sequence while a writer copies fields
+    private static final long EMPTY = -2;               // Slot sequence before the first record
+
+    private static final LogRing SHARED = new LogRing(DEFAULT_CAPACITY);
+
+    /**
+     * The outcome of reading one sequence number.
+     */
+    public enum ReadResult {
+        /** The record was copied. */
+        READY,
+        /** The record has been claimed but not published yet, or its write was dropped. */
+        PENDING,
+        /** The record was overwritten by a newer one. */
+        LOST
+    }
+
+    /**
+     * One preallocated record.
+     */
+    private static final class Slot {
+        volatile long sequence = EMPTY;
+        long timeMillis;
+        Level level;
+        String threadName;
+        String loggerName;
+        String pattern;
+        Object[] arguments;
+        Throwable throwable;
+    }
+
+    private static final VarHandle SEQUENCE;
+
+    static {
+        try {
+            SEQUENCE = MethodHandles.lookup().findVarHandle(Slot.class, "sequence", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    private final AtomicLong next = new AtomicLong();    // Sequence number of the next record
+    private final LongAdder dropped = new LongAdder();   // Records whose slot was held by a writer a lap ahead
+
+    /**
+     * Creates an empty ring.
+     *
+     * @param capacity The number of records kept, rounded up to a power of two
+     */
+    LogRing(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        slots = new Slot[size];
+        for (int i = 0; i < size; i++) {
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Returns the ring every SLF4J logger of the application writes to.
+     *
+     * @return The shared ring
+     */
+    public static LogRing shared() {
+        return SHARED;
+    }
+
+    /**
+     * Stores a record, replacing the oldest one once the ring is full.
+     *
+     * @param level      The level of the record
+     * @param loggerName The name of the logger
+     * @param pattern    The SLF4J message pattern
+     * @param arguments  The pattern arguments, or {@code null}
+     * @param throwable  The exception logged with the message, or {@code null}
+     */
+    void append(Level level, String loggerName, String pattern, Object[] arguments, Throwable throwable) {
+        long sequence = next.getAndIncrement();
+        Slot slot = slots[(int) (sequence & mask)];
+        long current = slot.sequence;
+        if (current == BUSY || current > sequence || !SEQUENCE.compareAndSet(slot, current, BUSY)) {
+            dropped.increment();
+            return;
+        }
+        VarHandle.storeStoreFence();
+
+        slot.timeMillis = System.currentTimeMillis();
+        slot.level = level;
+        slot.threadName = Thread.currentThread().getName();
+        slot.loggerName = loggerName;
+        slot.pattern = pattern;
+        slot.arguments = arguments;
+        slot.throwable = throwable;
+        slot.sequence = sequence;
+    }
+
+    /**
+     * Copies a record into the given entry.
+     *
+     * @param sequence The sequence number of the record
+     * @param entry    The entry to fill; only valid if {@link ReadResult#READY} is returned
+     * @return Whether the record could be read
+     */
+    public ReadResult read(long sequence, LogEntry entry) {
+        Slot slot = slots[(int) (sequence & mask)];
+        long before = slot.sequence;
+        if (before != sequence) {
+            return before > sequence || sequence < firstSequence() ? ReadResult.LOST : ReadResult.PENDING;
+        }
+
+        entry.sequence = sequence;
+        entry.timeMillis = slot.timeMillis;
+        entry.level = slot.level;
+        entry.threadName = slot.threadName;
+        entry.loggerName = slot.loggerName;
+        entry.pattern = slot.pattern;
+        entry.arguments = slot.arguments;
+        entry.throwable = slot.throwable;
+
+        VarHandle.loadLoadFence();
+        return slot.sequence == sequence ? ReadResult.READY : ReadResult.LOST;
+    }
+
+    /**
+     * Returns the sequence number the next record will get.
+     */
+    public long nextSequence() {
+        return next.get();
+    }
+
+    /**
+     * Returns the sequence number of the oldest record still in the ring.
+     */
+    public long firstSequence() {
+        return Math.max(0, next.get() - slots.length);
+    }
+
+    /**
+     * Returns the number of records the ring holds.
+     */
+    public int capacity() {
+        return slots.length;
+    }
+
+    /**
+     * Returns how many records were discarded because their slot was still being written.
+     */
+    public long dropped() {
+        return dropped.sum();
+    }
+}
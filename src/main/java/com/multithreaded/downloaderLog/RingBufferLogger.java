@@ -0,0 +1,60 @@
+package com.multithreaded.downloaderLog;
+
+import org.slf4j.Marker;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.LegacyAbstractLogger;
+
+/**
+ * An SLF4J logger that stores records in the shared {@link LogRing}.
+ * <p>
+ * Records below the threshold are rejected before anything is copied. All loggers share
+ * one threshold, set with the {@code downloader.log.level} system property.
+ * </p>
+ */
+class RingBufferLogger extends LegacyAbstractLogger {
+
+    private final transient LogRing ring;
+    private final int threshold;                        // Lowest level stored, as an SLF4J level int
+
+    RingBufferLogger(String name, LogRing ring, Level threshold) {
+        this.name = name;
+        this.ring = ring;
+        this.threshold = threshold.toInt();
+    }
+
+    @Override
+    public boolean isTraceEnabled() {
+        return threshold <= Level.TRACE.toInt();
+    }
+
+    @Override
+    public boolean isDebugEnabled() {
+        return threshold <= Level.DEBUG.toInt();
+    }
+
+    @Override
+    public boolean isInfoEnabled() {
+        return threshold <= Level.INFO.toInt();
+    }
+
+    @Override
+    public boolean isWarnEnabled() {
+        return threshold <= Level.WARN.toInt();
+    }
+
+    @Override
+    public boolean isErrorEnabled() {
+        return threshold <= Level.ERROR.toInt();
+    }
+
+    @Override
+    protected String getFullyQualifiedCallerName() {
+        return null;
+    }
+
+    @Override
+    protected void handleNormalizedLoggingCall(Level level, Marker marker, String pattern, Object[] arguments,
+                                               Throwable throwable) {
+        ring.append(level, name, pattern, arguments, throwable);
+    }
+}
@@ -0,0 +1,69 @@
+package com.multithreaded.downloaderLog;
+
+import org.slf4j.ILoggerFactory;
+import org.slf4j.IMarkerFactory;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+import org.slf4j.helpers.BasicMarkerFactory;
+import org.slf4j.helpers.NOPMDCAdapter;
+import org.slf4j.spi.MDCAdapter;
+import org.slf4j.spi.SLF4JServiceProvider;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Binds SLF4J to the shared {@link LogRing}.
+ * <p>
+ * Registered through {@code META-INF/services}, so every {@code LoggerFactory.getLogger}
+ * call in the application returns a {@link RingBufferLogger}. The threshold is read once
+ * from the {@code downloader.log.level} system property and defaults to {@code INFO}.
+ * </p>
+ */
+public class RingBufferServiceProvider implements SLF4JServiceProvider {
+
+    private static final String LEVEL_PROPERTY = "downloader.log.level";
+
+    private ILoggerFactory loggerFactory;
+    private IMarkerFactory markerFactory;
+    private MDCAdapter mdcAdapter;
+
+    @Override
+    public ILoggerFactory getLoggerFactory() {
+        return loggerFactory;
+    }
+
+    @Override
+    public IMarkerFactory getMarkerFactory() {
+        return markerFactory;
+    }
+
+    @Override
+    public MDCAdapter getMDCAdapter() {
+        return mdcAdapter;
+    }
+
+    @Override
+    public String getRequestedApiVersion() {
+        return "2.0.99";
+    }
+
+    @Override
+    public void initialize() {
+        Level threshold = Level.INFO;
+        String level = System.getProperty(LEVEL_PROPERTY);
+        if (level != null) {
+            try {
+                threshold = Level.valueOf(level.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Ignoring unknown " + LEVEL_PROPERTY + ": " + level);
+            }
+        }
+
+        LogRing ring = LogRing.shared();
+        Level finalThreshold = threshold;
+        ConcurrentHashMap<String, Logger> loggers = new ConcurrentHashMap<>();
+        loggerFactory = name -> loggers.computeIfAbsent(name, n -> new RingBufferLogger(n, ring, finalThreshold));
+        markerFactory = new BasicMarkerFactory();
+        mdcAdapter = new NOPMDCAdapter();
+    }
+}
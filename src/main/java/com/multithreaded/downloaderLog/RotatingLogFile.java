@@ -0,0 +1,177 @@
+package com.multithreaded.downloaderLog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Copies the records of a {@link LogRing} to a log file on a background thread.
+ * <p>
+ * Logging threads never wait for the file: they only write to the ring, and this writer
+ * drains it every {@value #DRAIN_INTERVAL_MS} ms. If the writer falls a full lap
+ * behind, e.g. while the disk is slow, the overwritten records are skipped and a line
+ * says how many were lost.
+ * </p>
+ * <p>
+ * Once the file reaches its size limit it is renamed to {@code <name>.1}, older files
+ * move up by one, and the oldest beyond the number of backups is deleted.
+ * </p>
+ */
+public final class RotatingLogFile implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_BYTES = 10L * 1024 * 1024;
+    public static final int DEFAULT_BACKUPS = 5;
+
+    private static final long DRAIN_INTERVAL_MS = 200;
+    private static final long CLOSE_TIMEOUT_MS = 1000;
+
+    private final LogRing ring;
+    private final Path file;
+    private final long maxBytes;
+    private final int backups;
+    private final Thread thread;
+    private volatile boolean closed;
+
+    private BufferedWriter out;
+    private long size;                  // Bytes in the current file, counting one per character
+    private long cursor;                // Sequence number of the next record to write
+    private long pendingSequence = -1;  // A record found unpublished on the previous pass
+
+    private RotatingLogFile(LogRing ring, Path file, long maxBytes, int backups) throws IOException {
+        this.ring = ring;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.backups = backups;
+        cursor = ring.firstSequence();
+        open();
+        thread = new Thread(this::run, "log-writer");
+        thread.setDaemon(true);
+    }
+
+    /**
+     * Starts writing the records of the ring, beginning with the oldest one it still holds.
+     *
+     * @param ring     The ring to drain
+     * @param file     The log file; appended to if it exists
+     * @param maxBytes The size at which the file is rotated
+     * @param backups  The number of rotated files kept
+     * @return The running writer
+     * @throws IOException If the file cannot be opened
+     */
+    public static RotatingLogFile start(LogRing ring, Path file, long maxBytes, int backups) throws IOException {
+        RotatingLogFile logFile = new RotatingLogFile(ring, file, maxBytes, backups);
+        logFile.thread.start();
+        return logFile;
+    }
+
+    /**
+     * Writes what is left in the ring and closes the file, waiting at most one second.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            while (!closed) {
+                drain();
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(DRAIN_INTERVAL_MS));
+            }
+            drain();
+        } catch (IOException e) {
+            System.err.println("Log file " + file + " disabled: " + e.getMessage());
+        } finally {
+            try {
+                out.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void drain() throws IOException {
+        LogEntry entry = new LogEntry();
+        long end = ring.nextSequence();
+        loop:
+        while (cursor < end) {
+            switch (ring.read(cursor, entry)) {
+                case READY -> {
+                    write(entry.format());
+                    if (entry.getThrowable() != null) {
+                        PrintWriter trace = new PrintWriter(out);
+                        entry.getThrowable().printStackTrace(trace);
+                        trace.flush();
+                    }
+                    cursor++;
+                }
+                case LOST -> {
+                    long skipped = Math.max(ring.firstSequence(), cursor + 1) - cursor;
+                    write("... " + skipped + " log records were overwritten before they could be written");
+                    cursor += skipped;
+                }
+                case PENDING -> {
+                    if (pendingSequence != cursor) {
+                        pendingSequence = cursor;       // Give its writer until the next pass
+                        break loop;
+                    }
+                    cursor++;                           // Still missing: its write was dropped
+                }
+            }
+        }
+        out.flush();
+        if (size >= maxBytes) {
+            rotate();
+        }
+    }
+
+    private void write(String line) throws IOException {
+        out.write(line);
+        out.newLine();
+        size += line.length() + 1;
+    }
+
+    private void open() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        size = Files.size(file);
+    }
+
+    private void rotate() throws IOException {
+        out.close();
+        if (backups > 0) {
+            for (int i = backups - 1; i >= 1; i--) {
+                Path older = backup(i);
+                if (Files.exists(older)) {
+                    Files.move(older, backup(i + 1), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+            Files.move(file, backup(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(file);
+        }
+        open();
+    }
+
+    private Path backup(int index) {
+        return file.resolveSibling(file.getFileName() + "." + index);
+    }
+}
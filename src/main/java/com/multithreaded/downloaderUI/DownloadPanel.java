@@ -1,14 +1,25 @@
 package com.multithreaded.downloaderUI;
 
+import com.multithreaded.downloader.BulkImport;
+import com.multithreaded.downloader.DownloadConfig;
+import com.multithreaded.downloader.DownloadListener;
 import com.multithreaded.downloader.DownloadManager;
+import com.multithreaded.downloader.DownloadProgress;
+import com.multithreaded.downloaderLog.LogRing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JPanel;
-import javax.swing.JProgressBar;
+import javax.swing.JTable;
 import javax.swing.JTextArea;
+import javax.swing.JScrollBar;
 import javax.swing.JScrollPane;
-import javax.swing.SwingWorker;
+import javax.swing.SwingUtilities;
 import javax.swing.Timer;
 import javax.swing.JOptionPane;
 import javax.swing.BorderFactory;
@@ -17,14 +28,21 @@ import java.awt.Color;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
-import javax.swing.BoxLayout;
 import java.awt.Font;
 import java.awt.event.ActionListener;
 
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 
 /**
@@ -33,36 +51,50 @@ import java.util.concurrent.ConcurrentHashMap;
  * This panel includes:
  * <ul>
  *     <li>URL input area</li>
- *     <li>Start, Stop, and Cancel buttons</li>
- *     <li>Download progress display</li>
+ *     <li>Start, Import, Stop, and Cancel buttons</li>
+ *     <li>Download list, one table row per URL</li>
  *     <li>Console log output</li>
  * </ul>
- * It uses a {@code ConcurrentHashMap} to track download tasks and updates the overall speed periodically.
+ * The download list is a {@link JTable} over a {@link DownloadTableModel}, so only the rows in view
+ * are painted and the list costs a few objects per download rather than a set of widgets.
+ * Pasted and imported URL lists are both streamed through a {@link BulkImport}, so rows appear as
+ * the downloads are queued rather than all at once.
+ * Progress and log output arrive as {@link DownloadListener} events from the {@link DownloadManager};
+ * progress snapshots are coalesced per URL and applied to the model in one batch per EDT task.
+ * Log output goes through SLF4J into the shared {@link LogRing}; the console is a list over that
+ * ring, refreshed a few times a second, so it shows at most the ring's capacity of lines.
  */
 public class DownloadPanel extends JPanel {
 
+    private static final Logger log = LoggerFactory.getLogger(DownloadPanel.class);
+
+    private static final int CONSOLE_REFRESH_MS = 250;
+    private static final Path QUEUE_DIR = Path.of(System.getProperty("user.home"), ".download-manager", "queue");
+
     private final DownloadManager downloadManager;          // Manages all downloads
-    private final JPanel progressPanel;
-    private final List<JPanel> downloadItems;               // Tracks download panels
+    private final DownloadTableModel tableModel;            // One row per download
     private final JLabel overallSpeedLabel;
     private final JLabel tasksLabel;
-    private final JTextArea console;
-    private final ConcurrentHashMap<String, DownloadTask> tasks;  // Map of download tasks
+    private final LogListModel consoleModel;                // The lines held by the log ring
+    private final JList<String> console;
 
     /**
      * Constructs the {@code DownloadPanel} with all UI components.
      * <p>
      * Initializes the layout, buttons, progress panel, console log, and speed update timer.
+     * New downloads are saved to the download directory of the manager's current settings.
+     *
+     * @param config The settings the download manager starts with
      */
-    public DownloadPanel() {
-        downloadManager = new DownloadManager();
+    public DownloadPanel(DownloadConfig config) {
+        downloadManager = new DownloadManager(config);
+        downloadManager.addListener(new PanelListener());
 
         setLayout(new BorderLayout());
         setBorder(BorderFactory.createEmptyBorder(10, 10, 10, 10));
         setBackground(new Color(40, 40, 40));
 
-        downloadItems = new ArrayList<>();
-        tasks = new ConcurrentHashMap<>();
+        tableModel = new DownloadTableModel();
 
         overallSpeedLabel = new JLabel("Overall Speed: 0 KB/s");
         overallSpeedLabel.setFont(new Font("Arial", Font.BOLD, 14));
@@ -84,11 +116,13 @@ public class DownloadPanel extends JPanel {
         urlScroll.setPreferredSize(new Dimension(580, 120));
 
         JButton startButton = createButton("Start All", new Color(34, 139, 34), e -> startAllDownloads(urlInput));
+        JButton importButton = createButton("Import...", new Color(70, 130, 180), e -> importUrlFile());
         JButton stopButton = createButton("Stop All", new Color(178, 34, 34), e -> stopAllDownloads());
         JButton cancelButton = createButton("Cancel All", new Color(255, 69, 0), e -> cancelAllDownloads());
 
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 5));
         buttonPanel.add(startButton);
+        buttonPanel.add(importButton);
         buttonPanel.add(stopButton);
         buttonPanel.add(cancelButton);
         buttonPanel.setBackground(new Color(40, 40, 40));
@@ -102,21 +136,29 @@ public class DownloadPanel extends JPanel {
         headerPanel.add(statusPanel, BorderLayout.WEST);
         headerPanel.add(buttonPanel, BorderLayout.EAST);
 
-        progressPanel = new JPanel();
-        progressPanel.setLayout(new BoxLayout(progressPanel, BoxLayout.Y_AXIS));
-        progressPanel.setBackground(new Color(45, 45, 45));
+        JTable downloadTable = new JTable(tableModel);
+        downloadTable.setRowHeight(24);                     // Fixed height: rows are located without measuring
+        downloadTable.setFillsViewportHeight(true);
+        downloadTable.setBackground(new Color(45, 45, 45));
+        downloadTable.setForeground(Color.WHITE);
+        downloadTable.setDefaultRenderer(DownloadProgress.class, new ProgressCellRenderer());
+        downloadTable.getColumnModel().getColumn(DownloadTableModel.NAME_COLUMN).setPreferredWidth(260);
+        downloadTable.getColumnModel().getColumn(DownloadTableModel.PROGRESS_COLUMN).setPreferredWidth(140);
 
-        JScrollPane progressScroll = new JScrollPane(progressPanel);
+        JScrollPane progressScroll = new JScrollPane(downloadTable);
         progressScroll.setPreferredSize(new Dimension(580, 400));
 
-        console = new JTextArea(8, 40);
-        console.setBorder(BorderFactory.createTitledBorder("Console Log"));
-        console.setEditable(false);
+        consoleModel = new LogListModel(LogRing.shared());
+        console = new JList<>(consoleModel);
         console.setBackground(new Color(30, 30, 30));
         console.setForeground(Color.GREEN);
-        console.setCaretColor(Color.WHITE);
+        console.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 12));
+        // A prototype fixes the cell size, so the list never measures the lines it holds
+        console.setPrototypeCellValue("00:00:00.000 INFO  [ForkJoinPool-1-worker-1] DownloadPanel - "
+                + "x".repeat(80));
 
         JScrollPane consoleScroll = new JScrollPane(console);
+        consoleScroll.setBorder(BorderFactory.createTitledBorder("Console Log"));
         consoleScroll.setPreferredSize(new Dimension(580, 150));
 
         JPanel topPanel = new JPanel(new BorderLayout());
@@ -128,8 +170,41 @@ public class DownloadPanel extends JPanel {
         add(consoleScroll, BorderLayout.SOUTH);
         Timer speedUpdateTimer = new Timer(1000, e -> updateOverallSpeed());
         speedUpdateTimer.start();
+        Timer consoleTimer = new Timer(CONSOLE_REFRESH_MS, e -> refreshConsole(consoleScroll.getVerticalScrollBar()));
+        consoleTimer.start();
+
+        // Restoring a long queue takes a moment, so it runs off the EDT
+        Thread.ofVirtual().name("queue-restore").start(this::restoreQueue);
     }
 
+    /**
+     * Restores the downloads saved when the application last ended and keeps saving the queue.
+     * Without the saved queue the panel still works; its downloads just do not survive a restart.
+     */
+    private void restoreQueue() {
+        try {
+            downloadManager.setQueueStore(QUEUE_DIR.toString());
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    downloadManager.closeQueueStore();
+                } catch (IOException e) {
+                    log.error("Cannot save the download queue: {}", e.getMessage());
+                }
+            }, "queue-store-shutdown"));
+        } catch (IOException e) {
+            log.warn("Cannot open the saved download queue in {}: {}", QUEUE_DIR, e.getMessage());
+        }
+    }
+
+
+    /**
+     * Returns the download manager driving this panel, so other panels can configure it.
+     *
+     * @return The shared {@code DownloadManager}
+     */
+    public DownloadManager getDownloadManager() {
+        return downloadManager;
+    }
 
     /**
      * Creates a styled button.
@@ -151,73 +226,41 @@ public class DownloadPanel extends JPanel {
 
     /**
      * Starts all downloads from the URL input.
+     * A line with several URLs downloads one file, using the other URLs as mirrors of the first.
      *
      * @param urlInput The text area containing URLs to download.
      */
     private void startAllDownloads(JTextArea urlInput) {
-        String[] urls = urlInput.getText().split("\n");
+        String text = urlInput.getText();
 
-        if (urls.length == 0 || urls[0].isEmpty()) {
+        if (text.isBlank()) {
             JOptionPane.showMessageDialog(this, "No URLs provided!", "Error", JOptionPane.ERROR_MESSAGE);
             return;
         }
 
-        for (String url : urls) {
-            if (!url.trim().isEmpty()) {
-                addDownload(url.trim());
-            }
-        }
+        downloadManager.importUrls(text.lines().iterator(), "pasted URLs",
+                downloadManager.getConfig().downloadDir());
     }
 
-
     /**
-     * Adds a new download task with progress bar.
-     *
-     * @param url The URL to download.
+     * Asks for a file listing URLs, one download per line, and streams it into the queue.
+     * The file is read as the downloads are taken on, so it may hold millions of lines.
      */
-    private void addDownload(String url) {
-        JPanel downloadItem = createDownloadItem(url);
-        progressPanel.add(downloadItem);
-        downloadItems.add(downloadItem);
-        tasksLabel.setText("Tasks: " + downloadItems.size());
-
-        JProgressBar progressBar = (JProgressBar) downloadItem.getComponent(1);
-        JLabel speedLabel = (JLabel) ((JPanel) downloadItem.getComponent(2)).getComponent(0);
-
-        downloadManager.addDownload(url, "D:/", progressBar, console);
-        tasks.put(url, new DownloadTask(progressBar, speedLabel));
-
-        console.append("Added download: " + url + "\n");
-
-        progressPanel.revalidate();
-        progressPanel.repaint();
-    }
-
-    /**
-     * Creates a panel for each download.
-     */
-    private JPanel createDownloadItem(String url) {
-        JPanel itemPanel = new JPanel(new BorderLayout());
-        itemPanel.setBackground(new Color(50, 50, 50));
-        itemPanel.setBorder(BorderFactory.createLineBorder(new Color(100, 100, 100)));
-
-        JLabel nameLabel = new JLabel("⬇️ " + url);
-        nameLabel.setForeground(Color.WHITE);
-
-        JProgressBar progressBar = new JProgressBar(0, 100);
-        progressBar.setStringPainted(true);
-
-        JLabel speedLabel = new JLabel("Speed: 0 KB/s");
-        speedLabel.setForeground(Color.YELLOW);
-
-        JPanel speedPanel = new JPanel(new BorderLayout());
-        speedPanel.add(speedLabel, BorderLayout.WEST);
-
-        itemPanel.add(nameLabel, BorderLayout.NORTH);
-        itemPanel.add(progressBar, BorderLayout.CENTER);
-        itemPanel.add(speedPanel, BorderLayout.SOUTH);
+    private void importUrlFile() {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import URL list");
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
 
-        return itemPanel;
+        File file = chooser.getSelectedFile();
+        try {
+            downloadManager.importUrls(BulkImport.lines(Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)),
+                    file.getName(), downloadManager.getConfig().downloadDir());
+        } catch (IOException e) {
+            JOptionPane.showMessageDialog(this, "Cannot read " + file + ": " + e.getMessage(), "Error",
+                    JOptionPane.ERROR_MESSAGE);
+        }
     }
 
     /**
@@ -225,7 +268,7 @@ public class DownloadPanel extends JPanel {
      */
     private void stopAllDownloads() {
         downloadManager.stopAllDownloads();
-        console.append("All downloads stopped.\n");
+        log.info("All downloads stopped.");
     }
 
     /**
@@ -233,11 +276,9 @@ public class DownloadPanel extends JPanel {
      */
     private void cancelAllDownloads() {
         downloadManager.stopAllDownloads();
-        downloadItems.clear();
-        progressPanel.removeAll();
-        progressPanel.revalidate();
-        progressPanel.repaint();
-        console.append("All downloads cancelled.\n");
+        tableModel.clear();
+        tasksLabel.setText("Tasks: 0");
+        log.info("All downloads cancelled.");
     }
 
     /**
@@ -248,35 +289,115 @@ public class DownloadPanel extends JPanel {
     }
 
     /**
-     * Represents a download task executed in the background.
+     * Shows the lines logged since the last refresh, following the tail of the log
+     * unless the user has scrolled up.
+     *
+     * @param scrollBar The vertical scroll bar of the console.
      */
-    private static class DownloadTask extends SwingWorker<Void, Void> {
-        private final JProgressBar progressBar;
-        private final JLabel speedLabel;
-        private final Random random = new Random();
-        private int speed = 0;
-
-        public DownloadTask(JProgressBar progressBar, JLabel speedLabel) {
-            this.progressBar = progressBar;
-            this.speedLabel = speedLabel;
+    private void refreshConsole(JScrollBar scrollBar) {
+        boolean atBottom = scrollBar.getValue() + scrollBar.getVisibleAmount() >= scrollBar.getMaximum();
+        if (consoleModel.refresh() && atBottom) {
+            console.ensureIndexIsVisible(consoleModel.getSize() - 1);
         }
+    }
+
+    /**
+     * Applies download events to the panel.
+     * <p>
+     * Events arrive on the download manager's threads. Status changes and progress snapshots
+     * are parked, the status changes in arrival order and the snapshots in a map keyed by URL,
+     * and at most one EDT task is queued to apply them, so a slow EDT adds queued rows in
+     * batches and sees the latest snapshot of each download once instead of a backlog of batches.
+     * Messages are logged on the calling thread, which only copies them into the log ring.
+     * </p>
+     */
+    private class PanelListener implements DownloadListener {
+
+        private final ConcurrentLinkedQueue<StatusChange> changes = new ConcurrentLinkedQueue<>();
+        private final ConcurrentHashMap<String, DownloadProgress> pending = new ConcurrentHashMap<>();
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();
 
         @Override
-        protected Void doInBackground() {
-            for (int i = 0; i <= 100; i++) {
-                speed = random.nextInt(500) + 100;
-                speedLabel.setText("Speed: " + speed + " KB/s");
-                progressBar.setValue(i);
-                try {
-                    Thread.sleep(100);
-                } catch (InterruptedException ignored) {
+        public void onQueued(String url) {
+            changes.add(new StatusChange(url, DownloadTableModel.Status.QUEUED));
+            scheduleDrain();
+        }
+
+        @Override
+        public void onProgress(List<DownloadProgress> updates) {
+            for (DownloadProgress progress : updates) {
+                pending.put(progress.url(), progress);
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (drainScheduled.compareAndSet(false, true)) {
+                SwingUtilities.invokeLater(this::drain);
+            }
+        }
+
+        private void drain() {
+            drainScheduled.set(false);      // Events parked from here on schedule another drain
+            List<String> urls = new ArrayList<>();
+            for (StatusChange change = changes.poll(); change != null; change = changes.poll()) {
+                if (change.status() == DownloadTableModel.Status.QUEUED) {
+                    urls.add(change.url());
+                    continue;
+                }
+                addDownloads(urls);         // The change may be for one of these rows
+                tableModel.setStatus(change.url(), change.status());
+            }
+            addDownloads(urls);
+
+            List<DownloadProgress> batch = new ArrayList<>(pending.size());
+            for (String url : pending.keySet()) {
+                DownloadProgress progress = pending.remove(url);
+                if (progress != null) {
+                    batch.add(progress);
                 }
             }
-            return null;
+            tableModel.updateProgress(batch);
+        }
+
+        private void addDownloads(List<String> urls) {
+            if (urls.isEmpty()) return;
+
+            tableModel.addDownloads(urls);
+            tasksLabel.setText("Tasks: " + tableModel.getRowCount());
+            urls.clear();
         }
 
-        public int getSpeed() {
-            return speed;
+        @Override
+        public void onMessage(String url, String message) {
+            log.info(message);
         }
+
+        @Override
+        public void onCompleted(String url, File file) {
+            log.info("Downloaded: {}", file);
+            changes.add(new StatusChange(url, DownloadTableModel.Status.DONE));
+            scheduleDrain();
+        }
+
+        @Override
+        public void onFailed(String url, String reason) {
+            log.warn("Error downloading: {}: {}", url, reason);
+            changes.add(new StatusChange(url, DownloadTableModel.Status.FAILED));
+            scheduleDrain();
+        }
+
+        @Override
+        public void onStopped(String url) {
+            log.info("Stopped: {}", url);
+            changes.add(new StatusChange(url, DownloadTableModel.Status.STOPPED));
+            scheduleDrain();
+        }
+    }
+
+    /**
+     * A new status of a download, waiting to be applied on the EDT.
+     */
+    private record StatusChange(String url, DownloadTableModel.Status status) {
     }
 }
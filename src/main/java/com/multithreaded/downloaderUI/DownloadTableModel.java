@@ -0,0 +1,225 @@
+package com.multithreaded.downloaderUI;
+
+import com.multithreaded.downloader.DownloadProgress;
+
+import javax.swing.table.AbstractTableModel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of the download list, one per URL, backing the table in {@link DownloadPanel}.
+ * <p>
+ * A row only holds the URL, the latest {@link DownloadProgress} snapshot and a status;
+ * the text of each cell is formatted when the table asks for it, which it only does for
+ * the rows in view. Updates are applied in batches and each batch fires a single table
+ * event, so the cost of an update does not depend on how many rows the list holds.
+ * </p>
+ * <p>
+ * Rows of downloads that have ended are kept as a history of at most
+ * {@value #MAX_FINISHED_ROWS} rows: once twice as many have piled up, the oldest are
+ * dropped in one go, so a list of millions of imported URLs stays small.
+ * </p>
+ * <p>
+ * Like every Swing model, this one must only be used on the Event Dispatch Thread.
+ * </p>
+ */
+class DownloadTableModel extends AbstractTableModel {
+
+    static final int NAME_COLUMN = 0;
+    static final int PROGRESS_COLUMN = 1;
+    static final int SPEED_COLUMN = 2;
+    static final int ETA_COLUMN = 3;
+    static final int STATUS_COLUMN = 4;
+
+    static final int MAX_FINISHED_ROWS = 5000;
+
+    private static final String[] COLUMNS = {"File", "Progress", "Speed", "ETA", "Status"};
+
+    /**
+     * Where a download stands, as shown in the status column.
+     */
+    enum Status {
+        QUEUED("Queued"),
+        DOWNLOADING("Downloading"),
+        DONE("Done"),
+        FAILED("Failed"),
+        STOPPED("Stopped");
+
+        private final String label;
+
+        Status(String label) {
+            this.label = label;
+        }
+
+        boolean isFinished() {
+            return compareTo(DONE) >= 0;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    /**
+     * The state of one download as shown in the table.
+     */
+    private static final class Row {
+        final String url;
+        DownloadProgress progress;      // null until the first update arrives
+        Status status = Status.QUEUED;
+
+        Row(String url) {
+            this.url = url;
+        }
+    }
+
+    private final List<Row> rows = new ArrayList<>();
+    private final Map<String, Integer> rowIndex = new HashMap<>();   // URL to row number
+    private int finishedRows;
+
+    /**
+     * Appends a row for each URL not yet in the table and marks the others as queued again.
+     *
+     * @param urls The URLs of the downloads that were started
+     */
+    void addDownloads(List<String> urls) {
+        int first = rows.size();
+        for (String url : urls) {
+            Integer index = rowIndex.get(url);
+            if (index != null) {
+                setStatus(url, Status.QUEUED);
+                continue;
+            }
+            rowIndex.put(url, rows.size());
+            rows.add(new Row(url));
+        }
+        if (rows.size() > first) {
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+    }
+
+    /**
+     * Applies a batch of progress snapshots.
+     *
+     * @param updates The latest snapshot of each download that moved
+     */
+    void updateProgress(Collection<DownloadProgress> updates) {
+        int first = Integer.MAX_VALUE;
+        int last = -1;
+        for (DownloadProgress progress : updates) {
+            Integer index = rowIndex.get(progress.url());
+            if (index == null) continue;
+
+            Row row = rows.get(index);
+            row.progress = progress;
+            if (row.status == Status.QUEUED) {
+                row.status = Status.DOWNLOADING;
+            }
+            first = Math.min(first, index);
+            last = Math.max(last, index);
+        }
+        if (last >= 0) {
+            fireTableRowsUpdated(first, last);
+        }
+    }
+
+    /**
+     * Changes the status shown for a download.
+     *
+     * @param url    The URL of the download
+     * @param status The new status
+     */
+    void setStatus(String url, Status status) {
+        Integer index = rowIndex.get(url);
+        if (index == null) return;
+
+        Row row = rows.get(index);
+        if (row.status.isFinished() != status.isFinished()) {
+            finishedRows += status.isFinished() ? 1 : -1;
+        }
+        row.status = status;
+        if (finishedRows > 2 * MAX_FINISHED_ROWS) {
+            pruneFinished();
+        } else {
+            fireTableRowsUpdated(index, index);
+        }
+    }
+
+    /**
+     * Drops the oldest rows of ended downloads until {@value #MAX_FINISHED_ROWS} are left.
+     */
+    private void pruneFinished() {
+        int excess = finishedRows - MAX_FINISHED_ROWS;
+        List<Row> kept = new ArrayList<>(rows.size() - excess);
+        for (Row row : rows) {
+            if (excess > 0 && row.status.isFinished()) {
+                excess--;
+            } else {
+                kept.add(row);
+            }
+        }
+        rows.clear();
+        rows.addAll(kept);
+        rowIndex.clear();
+        for (int i = 0; i < rows.size(); i++) {
+            rowIndex.put(rows.get(i).url, i);
+        }
+        finishedRows = MAX_FINISHED_ROWS;
+        fireTableDataChanged();
+    }
+
+    /**
+     * Removes all rows.
+     */
+    void clear() {
+        rows.clear();
+        rowIndex.clear();
+        finishedRows = 0;
+        fireTableDataChanged();
+    }
+
+    @Override
+    public int getRowCount() {
+        return rows.size();
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Class<?> getColumnClass(int column) {
+        return column == PROGRESS_COLUMN ? DownloadProgress.class : String.class;
+    }
+
+    @Override
+    public Object getValueAt(int rowIndex, int column) {
+        Row row = rows.get(rowIndex);
+        DownloadProgress progress = row.progress;
+        return switch (column) {
+            case NAME_COLUMN -> row.url;
+            case PROGRESS_COLUMN -> progress;
+            case SPEED_COLUMN -> progress == null ? "" : progress.bytesPerSecond() / 1024 + " KB/s";
+            case ETA_COLUMN -> progress == null ? "" : formatEta(progress.etaSeconds());
+            case STATUS_COLUMN -> row.status.toString();
+            default -> throw new IllegalArgumentException("No column " + column);
+        };
+    }
+
+    private static String formatEta(long seconds) {
+        if (seconds < 0) return "--";
+        if (seconds < 3600) return String.format("%d:%02d", seconds / 60, seconds % 60);
+        return String.format("%d:%02d:%02d", seconds / 3600, seconds / 60 % 60, seconds % 60);
+    }
+}
@@ -0,0 +1,71 @@
+package com.multithreaded.downloaderUI;
+
+import com.multithreaded.downloaderLog.LogEntry;
+import com.multithreaded.downloaderLog.LogRing;
+
+import javax.swing.AbstractListModel;
+
+/**
+ * A list view of the records held by a {@link LogRing}, backing the console in {@link DownloadPanel}.
+ * <p>
+ * The model keeps no lines of its own: a row is formatted from the ring when the list
+ * asks for it, which it only does for the rows in view. {@link #refresh()} catches up
+ * with the ring, dropping the rows it has overwritten and appending the new ones with
+ * one event each, so the console never holds more than the ring's capacity.
+ * </p>
+ * <p>
+ * Like every Swing model, this one must only be used on the Event Dispatch Thread.
+ * </p>
+ */
+class LogListModel extends AbstractListModel<String> {
+
+    private final LogRing ring;
+    private final LogEntry entry = new LogEntry();      // Reused for every row read
+    private long first;                                 // Sequence number of row 0
+    private long end;                                   // Sequence number after the last row
+
+    LogListModel(LogRing ring) {
+        this.ring = ring;
+        first = ring.firstSequence();
+        end = first;
+    }
+
+    /**
+     * Catches up with the records logged since the last call.
+     *
+     * @return Whether rows were added
+     */
+    boolean refresh() {
+        long newEnd = ring.nextSequence();
+        long newFirst = Math.max(first, ring.firstSequence());
+
+        int removed = (int) (Math.min(newFirst, end) - first);
+        first = newFirst;
+        end = Math.max(end, newFirst);
+        if (removed > 0) {
+            fireIntervalRemoved(this, 0, removed - 1);
+        }
+
+        long oldEnd = end;
+        end = newEnd;
+        if (newEnd > oldEnd) {
+            fireIntervalAdded(this, (int) (oldEnd - first), (int) (newEnd - first - 1));
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public int getSize() {
+        return (int) (end - first);
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return switch (ring.read(first + index, entry)) {
+            case READY -> entry.format();
+            case PENDING -> "";
+            case LOST -> "...";
+        };
+    }
+}
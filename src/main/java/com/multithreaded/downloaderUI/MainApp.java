@@ -2,6 +2,7 @@ package com.multithreaded.downloaderUI;
 
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.extras.FlatSVGIcon;
+import com.multithreaded.downloader.DownloadConfig;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
@@ -21,6 +22,8 @@ import java.awt.CardLayout;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
 
+import java.nio.file.Path;
+
 import java.util.HashMap;
 import java.util.Map;
 
@@ -33,6 +36,8 @@ import java.util.Map;
  */
 public class MainApp extends JFrame {
 
+    private static final Path CONFIG_FILE = Path.of("settings.config");
+
     private final Map<String, JButton> sidebarButtons;
     private JPanel sidebar;
     private JPanel contentPanel;
@@ -66,8 +71,9 @@ public class MainApp extends JFrame {
         contentPanel = new JPanel(new CardLayout());
 
         // Add panels
-        DownloadPanel homePanel = new DownloadPanel();
-        SettingsPanel settingsPanel = new SettingsPanel(this);
+        DownloadConfig config = SettingsPanel.loadConfig(CONFIG_FILE);
+        DownloadPanel homePanel = new DownloadPanel(config);
+        SettingsPanel settingsPanel = new SettingsPanel(this, homePanel.getDownloadManager(), CONFIG_FILE);
         AboutPanel aboutPanel = new AboutPanel();
 
         contentPanel.add(homePanel, "Home");
@@ -0,0 +1,67 @@
+package com.multithreaded.downloaderUI;
+
+import com.multithreaded.downloader.DownloadProgress;
+
+import javax.swing.JProgressBar;
+import javax.swing.JTable;
+import javax.swing.table.TableCellRenderer;
+
+import java.awt.Component;
+import java.awt.Rectangle;
+
+/**
+ * Paints the progress cell of a download row with a single shared progress bar.
+ * <p>
+ * The table stamps this one component into every visible progress cell in turn, so the
+ * list needs no widgets per row. A download of unknown size shows how much has arrived
+ * instead of a percentage. As in {@link javax.swing.table.DefaultTableCellRenderer}, the
+ * layout and repaint calls a component makes on itself are skipped, since a renderer is
+ * never part of the component tree.
+ * </p>
+ */
+class ProgressCellRenderer extends JProgressBar implements TableCellRenderer {
+
+    ProgressCellRenderer() {
+        super(0, 100);
+        setStringPainted(true);
+        setBorderPainted(false);
+    }
+
+    @Override
+    public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+                                                   boolean hasFocus, int row, int column) {
+        DownloadProgress progress = (DownloadProgress) value;
+        if (progress == null) {
+            setValue(0);
+            setString("");
+        } else if (progress.percent() < 0) {
+            setValue(0);
+            setString(progress.bytesDownloaded() / (1024 * 1024) + " MB");
+        } else {
+            setValue(progress.percent());
+            setString(progress.percent() + "%");
+        }
+        setBackground(isSelected ? table.getSelectionBackground() : table.getBackground());
+        return this;
+    }
+
+    @Override
+    public void validate() {
+    }
+
+    @Override
+    public void revalidate() {
+    }
+
+    @Override
+    public void repaint(long tm, int x, int y, int width, int height) {
+    }
+
+    @Override
+    public void repaint(Rectangle r) {
+    }
+
+    @Override
+    public void repaint() {
+    }
+}
@@ -2,12 +2,20 @@ package com.multithreaded.downloaderUI;
 
 import com.formdev.flatlaf.FlatDarkLaf;
 import com.formdev.flatlaf.FlatLightLaf;
+import com.multithreaded.downloader.BandwidthLimiter;
+import com.multithreaded.downloader.DownloadConfig;
+import com.multithreaded.downloader.DownloadConfigWatcher;
+import com.multithreaded.downloader.DownloadManager;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.swing.JPanel;
 import javax.swing.JFrame;
 import javax.swing.JButton;
 import javax.swing.JLabel;
 import javax.swing.JCheckBox;
+import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 import javax.swing.border.TitledBorder;
@@ -25,34 +33,60 @@ import java.awt.Color;
 import java.awt.Insets;
 import java.awt.Dimension;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Duration;
+
 /**
  * Represents the settings panel for configuring the downloader.
  * <p>
  * This panel allows users to customize settings such as download location,
- * speed limit, timeout, retry attempts, and enable/disable parallel downloads
- * and notifications. It also offers light/dark theme switching.
+ * speed limit, timeouts, retry attempts, connection and download limits, and
+ * enable/disable parallel downloads and notifications. It also offers light/dark
+ * theme switching.
+ * </p>
+ * <p>
+ * The settings are a {@link DownloadConfig}, kept in full in the settings file. Apply
+ * hands them to the {@link DownloadManager} and saves them; editing the file while the
+ * application runs has the same effect, and the fields follow. Either way running
+ * downloads keep their connections and pick up the new limits at once.
  * </p>
  */
 public class SettingsPanel extends JPanel {
 
-    private String downloadDir = "downloads";
-    private int speedLimit = 1024;
-    private int timeout = 10;
-    private int retryCount = 3;
-    private boolean autoResume = true;
+    private static final Logger log = LoggerFactory.getLogger(SettingsPanel.class);
+
+    private final DownloadManager downloadManager;
+    private final Path configFile;
+    private final JTextField locationField;
+    private final JTextField speedField;
+    private final JTextField connectTimeoutField;
+    private final JTextField readTimeoutField;
+    private final JTextField retryField;
+    private final JTextField connectionsField;
+    private final JTextField connectionsPerHostField;
+    private final JTextField activeDownloadsField;
+    private final JTextField activeDownloadsPerHostField;
+    private final JTextField segmentsField;
+    private final JTextField bufferSizeField;
+    private final JCheckBox autoResumeCheckbox;
+    private final JCheckBox parallelModeCheckbox;
     private boolean notificationsEnabled = true;
-    private boolean parallelMode = true;
 
     /**
      * Constructs the SettingsPanel with the provided parent JFrame.
      *
-     * @param parent The parent JFrame of the panel, used for theme updates.
+     * @param parent          The parent JFrame of the panel, used for theme updates.
+     * @param downloadManager The download manager the applied settings are pushed to.
+     * @param configFile      The file the settings are saved to and reloaded from.
      */
-    public SettingsPanel(JFrame parent) {
+    public SettingsPanel(JFrame parent, DownloadManager downloadManager, Path configFile) {
+        this.downloadManager = downloadManager;
+        this.configFile = configFile;
+
         setLayout(new BorderLayout(10, 10));
         setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
@@ -64,7 +98,7 @@ public class SettingsPanel extends JPanel {
 
         // Section 1: Download Location
         JPanel locationPanel = createTitledPanel("Download Location");
-        JTextField locationField = new JTextField(downloadDir, 20);
+        locationField = new JTextField(20);
         locationField.setFont(new Font("Arial", Font.PLAIN, 16));
         locationField.setEditable(false);
 
@@ -75,36 +109,62 @@ public class SettingsPanel extends JPanel {
             JFileChooser fileChooser = new JFileChooser();
             fileChooser.setFileSelectionMode(JFileChooser.DIRECTORIES_ONLY);
             if (fileChooser.showOpenDialog(parent) == JFileChooser.APPROVE_OPTION) {
-                downloadDir = fileChooser.getSelectedFile().getAbsolutePath();
-                locationField.setText(downloadDir);
+                locationField.setText(fileChooser.getSelectedFile().getAbsolutePath());
             }
         });
 
         locationPanel.add(locationField);
         locationPanel.add(locationButton);
 
-        // Section 2: Numeric Fields for Speed, Timeout & Retry
+        // Section 2: Numeric Fields for Speed, Timeouts & Retry
         JPanel numericPanel = createTitledPanel("Download Options");
-        numericPanel.setLayout(new GridLayout(3, 2, 15, 15));
+        numericPanel.setLayout(new GridLayout(4, 2, 15, 15));
 
-        JTextField speedField = createNumericField(String.valueOf(speedLimit));
-        JTextField timeoutField = createNumericField(String.valueOf(timeout));
-        JTextField retryField = createNumericField(String.valueOf(retryCount));
+        speedField = createNumericField();
+        connectTimeoutField = createNumericField();
+        readTimeoutField = createNumericField();
+        retryField = createNumericField();
 
-        numericPanel.add(new JLabel("Speed Limit (KB/s):"));
+        numericPanel.add(new JLabel("Speed Limit (KB/s, 0 = off):"));
         numericPanel.add(speedField);
-        numericPanel.add(new JLabel("Timeout (seconds):"));
-        numericPanel.add(timeoutField);
+        numericPanel.add(new JLabel("Connect Timeout (seconds, 0 = none):"));
+        numericPanel.add(connectTimeoutField);
+        numericPanel.add(new JLabel("Read Timeout (seconds, 0 = none):"));
+        numericPanel.add(readTimeoutField);
         numericPanel.add(new JLabel("Retry Attempts:"));
         numericPanel.add(retryField);
 
-        // Section 3: Checkboxes
+        // Section 3: Concurrency limits
+        JPanel limitsPanel = createTitledPanel("Connections");
+        limitsPanel.setLayout(new GridLayout(6, 2, 15, 15));
+
+        connectionsField = createNumericField();
+        connectionsPerHostField = createNumericField();
+        activeDownloadsField = createNumericField();
+        activeDownloadsPerHostField = createNumericField();
+        segmentsField = createNumericField();
+        bufferSizeField = createNumericField();
+
+        limitsPanel.add(new JLabel("Max Connections:"));
+        limitsPanel.add(connectionsField);
+        limitsPanel.add(new JLabel("Max Connections per Host:"));
+        limitsPanel.add(connectionsPerHostField);
+        limitsPanel.add(new JLabel("Max Active Downloads:"));
+        limitsPanel.add(activeDownloadsField);
+        limitsPanel.add(new JLabel("Max Active Downloads per Host:"));
+        limitsPanel.add(activeDownloadsPerHostField);
+        limitsPanel.add(new JLabel("Segments per File:"));
+        limitsPanel.add(segmentsField);
+        limitsPanel.add(new JLabel("Buffer Size (KB):"));
+        limitsPanel.add(bufferSizeField);
+
+        // Section 4: Checkboxes
         JPanel checkboxPanel = createTitledPanel("Preferences");
         checkboxPanel.setLayout(new GridLayout(3, 1, 10, 10));
 
-        JCheckBox autoResumeCheckbox = new JCheckBox("Auto Resume Downloads", autoResume);
+        autoResumeCheckbox = new JCheckBox("Auto Resume Downloads");
         JCheckBox notificationsCheckbox = new JCheckBox("Enable Notifications", notificationsEnabled);
-        JCheckBox parallelModeCheckbox = new JCheckBox("Enable Parallel Mode", parallelMode);
+        parallelModeCheckbox = new JCheckBox("Enable Parallel Mode");
 
         autoResumeCheckbox.setFont(new Font("Arial", Font.PLAIN, 16));
         notificationsCheckbox.setFont(new Font("Arial", Font.PLAIN, 16));
@@ -114,7 +174,7 @@ public class SettingsPanel extends JPanel {
         checkboxPanel.add(notificationsCheckbox);
         checkboxPanel.add(parallelModeCheckbox);
 
-        // Section 4: Theme Switch
+        // Section 5: Theme Switch
         JPanel themePanel = createTitledPanel("Theme");
         themePanel.setLayout(new FlowLayout(FlowLayout.LEFT, 15, 10));
 
@@ -144,19 +204,11 @@ public class SettingsPanel extends JPanel {
         applyButton.setFont(new Font("Arial", Font.BOLD, 14));
         resetButton.setFont(new Font("Arial", Font.BOLD, 14));
 
-        applyButton.addActionListener(e -> applySettings(
-                parseInt(speedField.getText(), speedLimit),
-                parseInt(timeoutField.getText(), timeout),
-                parseInt(retryField.getText(), retryCount),
-                autoResumeCheckbox.isSelected(),
-                notificationsCheckbox.isSelected(),
-                parallelModeCheckbox.isSelected()
-        ));
-
-        resetButton.addActionListener(e -> resetSettings(
-                speedField, timeoutField, retryField,
-                autoResumeCheckbox, notificationsCheckbox, parallelModeCheckbox
-        ));
+        applyButton.addActionListener(e -> applySettings(notificationsCheckbox.isSelected()));
+        resetButton.addActionListener(e -> {
+            showConfig(DownloadConfig.DEFAULTS.toBuilder().downloadDir(locationField.getText()).build());
+            notificationsCheckbox.setSelected(true);
+        });
 
         buttonPanel.add(applyButton);
         buttonPanel.add(resetButton);
@@ -168,6 +220,9 @@ public class SettingsPanel extends JPanel {
         gbc.gridy++;
         mainPanel.add(numericPanel, gbc);
 
+        gbc.gridy++;
+        mainPanel.add(limitsPanel, gbc);
+
         gbc.gridy++;
         mainPanel.add(checkboxPanel, gbc);
 
@@ -177,17 +232,83 @@ public class SettingsPanel extends JPanel {
         gbc.gridy++;
         mainPanel.add(buttonPanel, gbc);
 
-        add(mainPanel, BorderLayout.CENTER);
+        JScrollPane scrollPane = new JScrollPane(mainPanel);
+        scrollPane.setBorder(BorderFactory.createEmptyBorder());
+        scrollPane.getVerticalScrollBar().setUnitIncrement(16);
+        add(scrollPane, BorderLayout.CENTER);
+
+        showConfig(downloadManager.getConfig());
+        watchConfigFile();
+    }
+
+    /**
+     * Reads the settings file, falling back to the defaults if it is missing or unusable.
+     *
+     * @param configFile The settings file
+     * @return The settings to start with
+     */
+    public static DownloadConfig loadConfig(Path configFile) {
+        if (!Files.exists(configFile)) {
+            return DownloadConfig.DEFAULTS;
+        }
+        try {
+            return DownloadConfig.load(configFile);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Using default settings, cannot read {}: {}", configFile, e.getMessage());
+            return DownloadConfig.DEFAULTS;
+        }
+    }
+
+    /**
+     * Applies the settings file whenever it is changed outside the application.
+     */
+    private void watchConfigFile() {
+        try {
+            DownloadConfigWatcher.start(configFile, downloadManager.getConfig(),
+                    config -> SwingUtilities.invokeLater(() -> reloadSettings(config)),
+                    e -> log.warn("Ignoring the changed {}: {}", configFile, e.getMessage()));
+        } catch (IOException e) {
+            log.warn("Changes to {} will only be applied after a restart: {}", configFile, e.getMessage());
+        }
+    }
+
+    /**
+     * Applies settings read from the changed settings file and shows them.
+     */
+    private void reloadSettings(DownloadConfig config) {
+        if (config.equals(downloadManager.getConfig())) return;     // Our own save
+
+        downloadManager.applyConfig(config);
+        showConfig(config);
+        log.info("Applied the changed settings from {}", configFile);
+    }
+
+    /**
+     * Fills the fields with the given settings.
+     */
+    private void showConfig(DownloadConfig config) {
+        locationField.setText(config.downloadDir());
+        speedField.setText(String.valueOf(config.speedLimit() / 1024));
+        connectTimeoutField.setText(String.valueOf(config.connectTimeout().toSeconds()));
+        readTimeoutField.setText(String.valueOf(config.readTimeout().toSeconds()));
+        retryField.setText(String.valueOf(config.maxRetries()));
+        connectionsField.setText(String.valueOf(config.maxConnections()));
+        connectionsPerHostField.setText(String.valueOf(config.maxConnectionsPerHost()));
+        activeDownloadsField.setText(String.valueOf(config.maxActiveDownloads()));
+        activeDownloadsPerHostField.setText(String.valueOf(config.maxActiveDownloadsPerHost()));
+        segmentsField.setText(String.valueOf(config.segmentsPerFile()));
+        bufferSizeField.setText(String.valueOf(config.bufferSize() / 1024));
+        autoResumeCheckbox.setSelected(config.autoResume());
+        parallelModeCheckbox.setSelected(config.segmentedMode());
     }
 
     /**
      * Creates a numeric JTextField with validation.
      *
-     * @param value The default value for the field.
      * @return A numeric JTextField with validation.
      */
-    private JTextField createNumericField(String value) {
-        JTextField field = new JTextField(value, 10);
+    private JTextField createNumericField() {
+        JTextField field = new JTextField(10);
         field.setFont(new Font("Arial", Font.PLAIN, 16));
         field.setPreferredSize(new Dimension(80, 35));
 
@@ -235,42 +356,41 @@ public class SettingsPanel extends JPanel {
     }
 
     /**
-     * Applies the settings to the downloader configuration.
+     * Applies the settings to the downloader and saves them to the settings file.
      */
-    private void applySettings(int speed, int timeout, int retry, boolean autoResume, boolean notifications, boolean parallel) {
-        this.speedLimit = speed;
-        this.timeout = timeout;
-        this.retryCount = retry;
-        this.autoResume = autoResume;
+    private void applySettings(boolean notifications) {
+        DownloadConfig config;
+        try {
+            config = downloadManager.getConfig().toBuilder()
+                    .downloadDir(locationField.getText())
+                    .speedLimit(BandwidthLimiter.fromKilobytes(parseInt(speedField.getText(), 0)))
+                    .timeouts(Duration.ofSeconds(parseInt(connectTimeoutField.getText(), 0)),
+                            Duration.ofSeconds(parseInt(readTimeoutField.getText(), 0)))
+                    .maxRetries(parseInt(retryField.getText(), 0))
+                    .maxConnections(parseInt(connectionsField.getText(), 0),
+                            parseInt(connectionsPerHostField.getText(), 0))
+                    .maxActiveDownloads(parseInt(activeDownloadsField.getText(), 0),
+                            parseInt(activeDownloadsPerHostField.getText(), 0))
+                    .segmentsPerFile(parseInt(segmentsField.getText(), 0))
+                    .bufferSize((int) Math.min(Integer.MAX_VALUE, parseInt(bufferSizeField.getText(), 0) * 1024L))
+                    .autoResume(autoResumeCheckbox.isSelected())
+                    .segmentedMode(parallelModeCheckbox.isSelected())
+                    .build();
+        } catch (IllegalArgumentException e) {
+            JOptionPane.showMessageDialog(this, e.getMessage(), "Invalid Settings", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
         this.notificationsEnabled = notifications;
-        this.parallelMode = parallel;
-
-        saveSettings();
-        JOptionPane.showMessageDialog(this, "Settings Applied Successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-    }
-
-    /**
-     * Resets the downloader configuration settings.
-     */
-    private void resetSettings(JTextField speedField, JTextField timeoutField, JTextField retryField,
-                               JCheckBox autoResumeCheckbox, JCheckBox notificationsCheckbox, JCheckBox parallelModeCheckbox) {
-        speedField.setText("1024");
-        timeoutField.setText("10");
-        retryField.setText("3");
-
-        autoResumeCheckbox.setSelected(true);
-        notificationsCheckbox.setSelected(true);
-        parallelModeCheckbox.setSelected(true);
-    }
 
-    /**
-     * Saves the current settings to a configuration file.
-     */
-    private void saveSettings() {
-        try (FileWriter writer = new FileWriter(new File("settings.config"))) {
-            writer.write("DownloadDir=" + downloadDir + "\n");
+        downloadManager.applyConfig(config);
+        try {
+            config.save(configFile);
         } catch (IOException e) {
-            e.printStackTrace();
+            log.warn("Cannot save the settings to {}", configFile, e);
+            JOptionPane.showMessageDialog(this, "Settings applied but not saved: " + e.getMessage(),
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
         }
+        JOptionPane.showMessageDialog(this, "Settings Applied Successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
     }
 }
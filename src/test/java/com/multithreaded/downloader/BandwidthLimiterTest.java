@@ -0,0 +1,39 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BandwidthLimiterTest {
+
+    @Test
+    void unlimitedNeverWaits() {
+        BandwidthLimiter limiter = new BandwidthLimiter(0);
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, limiter.reserve(1 << 20));
+        }
+    }
+
+    @Test
+    void debtBeyondTheBurstIsPaidOffAtTheRate() {
+        BandwidthLimiter limiter = new BandwidthLimiter(1 << 20);
+        limiter.reserve(1 << 20);                           // Drains the burst and then some
+
+        long delay = limiter.reserve(1 << 20);
+
+        assertTrue(delay > 900_000_000L, "delay " + delay);  // At least about a second of debt
+    }
+
+    @Test
+    void liftingTheLimitForgivesTheDebt() {
+        BandwidthLimiter limiter = new BandwidthLimiter(1 << 20);
+        limiter.reserve(10 << 20);
+        limiter.setRate(0);
+        assertEquals(0, limiter.reserve(10 << 20));
+
+        limiter.setRate(1 << 20);
+        long delay = limiter.reserve(1024);                 // The bucket starts afresh, empty
+        assertTrue(delay < 2_000_000L, "delay " + delay);
+    }
+}
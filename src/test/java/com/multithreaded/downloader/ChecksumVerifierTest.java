@@ -0,0 +1,117 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChecksumVerifierTest {
+
+    private static final byte[] DATA = new byte[100_000];
+
+    static {
+        new Random(42).nextBytes(DATA);
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void combinesCrcsOfAdjacentRanges() {
+        for (int split : new int[]{0, 1, 4096, 50_000, DATA.length - 1, DATA.length}) {
+            long combined = ChecksumVerifier.Crc32cCombiner.combine(
+                    crc(0, split), crc(split, DATA.length), DATA.length - split);
+            assertEquals(crc(0, DATA.length), combined, "split at " + split);
+        }
+    }
+
+    @Test
+    void verifiesASegmentedDownload() throws IOException {
+        ChecksumVerifier verifier = ChecksumVerifier.of(crc32c(crc(0, DATA.length)));
+        List<Segment> segments = Segment.split(DATA.length, 4, 1);
+        try (FileChannel file = open()) {
+            verifier.prepare(segments, file);
+        }
+
+        // One segment is split while running, as work stealing does
+        Segment stolen = segments.get(0).splitAt(10_000);
+        List<Segment> all = new ArrayList<>(segments);
+        all.add(stolen);
+        for (Segment segment : all) {
+            ChecksumVerifier.SegmentHasher hasher = verifier.hasher(segment);
+            hasher.update(DATA, (int) segment.getStart(), (int) (segment.getEnd() - segment.getStart() + 1));
+        }
+
+        verifier.verify();
+    }
+
+    @Test
+    void readsBackWhatAResumedRunAlreadyWrote() throws IOException {
+        ChecksumVerifier verifier = ChecksumVerifier.of(crc32c(crc(0, DATA.length)));
+        List<Segment> segments = List.of(new Segment(0, 49_999, 20_000), new Segment(50_000, 99_999, 70_000));
+        try (FileChannel file = open()) {
+            file.write(ByteBuffer.wrap(DATA), 0);
+            verifier.prepare(segments, file);
+        }
+
+        for (Segment segment : segments) {
+            verifier.hasher(segment).update(DATA, (int) segment.getPosition(),
+                    (int) (segment.getEnd() - segment.getPosition() + 1));
+        }
+
+        verifier.verify();
+    }
+
+    @Test
+    void reportsAMismatch() throws IOException {
+        ChecksumVerifier verifier = ChecksumVerifier.of(crc32c(crc(0, DATA.length) ^ 1));
+        List<Segment> segments = Segment.split(DATA.length, 2, 1);
+        try (FileChannel file = open()) {
+            verifier.prepare(segments, file);
+        }
+        for (Segment segment : segments) {
+            verifier.hasher(segment).update(DATA, (int) segment.getStart(),
+                    (int) (segment.getEnd() - segment.getStart() + 1));
+        }
+
+        IOException error = assertThrows(IOException.class, verifier::verify);
+        assertTrue(error.getMessage().startsWith("Checksum mismatch"), error.getMessage());
+    }
+
+    @Test
+    void refusesToSplitADigest() throws IOException {
+        ChecksumVerifier verifier = ChecksumVerifier.of(ExpectedChecksum.parse("md5:" + "0".repeat(32)));
+        try (FileChannel file = open()) {
+            assertThrows(IllegalStateException.class, () -> verifier.prepare(Segment.split(DATA.length, 2, 1), file));
+        }
+    }
+
+    private FileChannel open() throws IOException {
+        return FileChannel.open(directory.resolve("file.bin"),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static long crc(int from, int to) {
+        CRC32C crc = new CRC32C();
+        crc.update(DATA, from, to - from);
+        return crc.getValue();
+    }
+
+    private static ExpectedChecksum crc32c(long value) {
+        return new ExpectedChecksum(ChecksumAlgorithm.CRC32C, String.format("%08x", value));
+    }
+}
@@ -0,0 +1,54 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionLimiterTest {
+
+    @Test
+    void forgetsHostsOnceTheirConnectionsClose() throws InterruptedException {
+        ConnectionLimiter limiter = new ConnectionLimiter(16, 2);
+        List<ConnectionLimiter.Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            permits.add(limiter.acquire("host" + i));
+        }
+        assertEquals(10, limiter.getHostCount());
+
+        permits.forEach(ConnectionLimiter.Permit::close);
+        assertEquals(0, limiter.getHostCount());
+    }
+
+    @Test
+    void keepsAHostWhileSomeoneWaitsForIt() throws InterruptedException {
+        ConnectionLimiter limiter = new ConnectionLimiter(16, 1);
+        ConnectionLimiter.Permit first = limiter.acquire("host");
+        CountDownLatch acquired = new CountDownLatch(1);
+        AtomicInteger hostsWhileHeld = new AtomicInteger(-1);
+        Thread waiter = Thread.ofVirtual().start(() -> {
+            try {
+                ConnectionLimiter.Permit permit = limiter.acquire("host");
+                hostsWhileHeld.set(limiter.getHostCount());
+                acquired.countDown();
+                permit.close();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));    // The per-host limit holds it back
+        first.close();
+        assertTrue(acquired.await(5, TimeUnit.SECONDS));
+        waiter.join();
+        assertEquals(1, hostsWhileHeld.get());
+        assertEquals(0, limiter.getHostCount());
+    }
+}
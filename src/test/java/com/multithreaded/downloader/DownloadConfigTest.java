@@ -0,0 +1,51 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class DownloadConfigTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void readsTheCheckedInSettings() throws IOException {
+        DownloadConfig config = DownloadConfig.load(Path.of("settings.config"));
+
+        assertEquals("D:\\", config.downloadDir());
+        assertEquals(DownloadConfig.DEFAULTS.toBuilder().downloadDir("D:\\").build(), config);
+    }
+
+    @Test
+    void readsAWindowsPathInTheOldFormat() throws IOException {
+        Path file = directory.resolve("settings.config");
+        Files.writeString(file, "DownloadDir=C:\\Users\\me\\Downloads\n");
+
+        assertEquals("C:\\Users\\me\\Downloads", DownloadConfig.load(file).downloadDir());
+    }
+
+    @Test
+    void keepsEverySettingAcrossSaveAndLoad() throws IOException {
+        Path file = directory.resolve("settings.config");
+        DownloadConfig config = DownloadConfig.DEFAULTS.toBuilder()
+                .downloadDir("C:\\Users\\me\\Downloads")
+                .maxConnections(32, 2)
+                .speedLimit(1024 * 1024)
+                .timeouts(Duration.ofSeconds(5), Duration.ZERO)
+                .autoResume(false)
+                .build();
+
+        config.save(file);
+
+        assertEquals(config, DownloadConfig.load(file));
+    }
+}
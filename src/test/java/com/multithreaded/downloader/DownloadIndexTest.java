@@ -0,0 +1,130 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DownloadIndexTest {
+
+    @TempDir
+    Path directory;
+
+    private static DownloadIndex.Entry entry(int i) {
+        return new DownloadIndex.Entry("http://host/file" + i + ".bin", "\"v" + i + "\"", null,
+                i, "/downloads/file" + i + ".bin", 1000L + i);
+    }
+
+    @Test
+    void keepsEntriesAcrossReopen() throws IOException {
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            index.put(entry(1));
+            index.put(entry(2));
+            index.put(new DownloadIndex.Entry(entry(1).url(), "\"v9\"", null, 9, "/downloads/new.bin", 9));
+        }
+
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(2, index.size());
+            assertEquals("\"v9\"", index.get(entry(1).url()).etag());
+            assertEquals(entry(2), index.get(entry(2).url()));
+            assertNull(index.get("http://host/missing.bin"));
+        }
+    }
+
+    @Test
+    void growsPastItsInitialCapacity() throws IOException {
+        int count = 10_000;                 // The table starts with 4096 slots, half of them usable
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            for (int i = 0; i < count; i++) {
+                index.put(entry(i));
+            }
+            assertEquals(count, index.size());
+        }
+
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(count, index.size());
+            for (int i = 0; i < count; i++) {
+                assertEquals(entry(i), index.get(entry(i).url()));
+            }
+        }
+    }
+
+    @Test
+    void rebuildsAMissingOrDamagedTable() throws IOException {
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            for (int i = 0; i < 100; i++) {
+                index.put(entry(i));
+            }
+        }
+
+        Files.delete(directory.resolve("downloads.idx"));
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(100, index.size());
+            assertEquals(entry(42), index.get(entry(42).url()));
+        }
+
+        Files.write(directory.resolve("downloads.idx"), new byte[]{1, 2, 3});
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(100, index.size());
+            assertEquals(entry(99), index.get(entry(99).url()));
+        }
+    }
+
+    @Test
+    void addsRecordsTheTableMissed() throws IOException {
+        Path table = directory.resolve("downloads.idx");
+        Path stale = directory.resolve("stale.idx");
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            index.put(entry(1));
+        }
+        Files.copy(table, stale);
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            index.put(entry(2));
+            index.put(new DownloadIndex.Entry(entry(1).url(), "\"v9\"", null, 9, "/downloads/new.bin", 9));
+        }
+
+        // As if the table had not been written back before a crash
+        Files.copy(stale, table, StandardCopyOption.REPLACE_EXISTING);
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(2, index.size());
+            assertEquals("\"v9\"", index.get(entry(1).url()).etag());
+            assertEquals(entry(2), index.get(entry(2).url()));
+        }
+    }
+
+    @Test
+    void cutsATornRecord() throws IOException {
+        Path data = directory.resolve("downloads.dat");
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            index.put(entry(1));
+            index.put(entry(2));
+        }
+        long size = Files.size(data);
+
+        // The first half of a third record, past the end the table knows of
+        byte[] record = Files.readAllBytes(data);
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(record, 0, (int) size / 4), size);
+        }
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(2, index.size());
+            assertEquals(size, Files.size(data));
+
+            index.put(entry(3));
+            assertEquals(entry(3), index.get(entry(3).url()));
+        }
+        try (DownloadIndex index = DownloadIndex.open(directory)) {
+            assertEquals(3, index.size());
+        }
+    }
+}
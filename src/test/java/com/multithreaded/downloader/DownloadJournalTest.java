@@ -0,0 +1,53 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.net.URI;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class DownloadJournalTest {
+
+    private static final URI FILE_URI = URI.create("http://host/file.bin");
+
+    @TempDir
+    File directory;
+
+    @Test
+    void resumesTheSameVersion() throws IOException {
+        File output = new File(directory, "file.bin");
+        RemoteFile remote = new RemoteFile(FILE_URI, 1000, "\"v1\"", null, null, true);
+        new DownloadJournal(output, remote).save(List.of(new Segment(0, 499, 200), new Segment(500, 999, 700)));
+
+        List<Segment> segments = new DownloadJournal(output, remote).load();
+
+        assertEquals(2, segments.size());
+        assertEquals(200, segments.get(0).getPosition());
+        assertEquals(700, segments.get(1).getPosition());
+    }
+
+    @Test
+    void ignoresAChangedVersion() throws IOException {
+        File output = new File(directory, "file.bin");
+        new DownloadJournal(output, new RemoteFile(FILE_URI, 1000, "\"v1\"", null, null, true))
+                .save(List.of(new Segment(0, 999, 500)));
+
+        assertNull(new DownloadJournal(output, new RemoteFile(FILE_URI, 1000, "\"v2\"", null, null, true)).load());
+    }
+
+    @Test
+    void doesNotResumeWithoutAValidator() throws IOException {
+        File output = new File(directory, "file.bin");
+        RemoteFile remote = new RemoteFile(FILE_URI, 1000, null, null, null, true);
+        new DownloadJournal(output, remote).save(List.of(new Segment(0, 999, 500)));
+
+        assertNull(new DownloadJournal(output, remote).load());
+    }
+}
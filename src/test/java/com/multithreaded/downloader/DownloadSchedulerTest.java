@@ -0,0 +1,48 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+
+class DownloadSchedulerTest {
+
+    private final List<DownloadScheduler.Job> started = new ArrayList<>();
+    private final List<DownloadScheduler.Job> paused = new ArrayList<>();
+    private final DownloadScheduler scheduler = new DownloadScheduler(2, 2, started::add, paused::add);
+
+    @Test
+    void lateReleaseOfPausedRunDoesNotFreeTheResumedRun() {
+        scheduler.setPreemptLowPriority(true);
+        scheduler.submit("http://host/low-1", "dir", DownloadPriority.LOW);
+        scheduler.submit("http://host/low-2", "dir", DownloadPriority.LOW);
+        scheduler.submit("http://host/high", "dir", DownloadPriority.HIGH);
+
+        assertEquals(1, paused.size());
+        DownloadScheduler.Job pausedRun = paused.get(0);
+        scheduler.finished(pausedRun, true);
+        assertEquals(3, started.size());                    // The high-priority job took the slot
+
+        // The high-priority job ends and the paused one resumes as a new run
+        scheduler.finished(started.get(2), false);
+        assertEquals(4, started.size());
+        DownloadScheduler.Job resumedRun = started.get(3);
+        assertEquals(pausedRun.getUrl(), resumedRun.getUrl());
+        assertNotSame(pausedRun, resumedRun);
+
+        // A second release of the old run must leave the resumed run alone
+        scheduler.finished(pausedRun, true);
+        scheduler.submit("http://host/extra", "dir", DownloadPriority.NORMAL);
+        assertEquals(4, started.size());                    // Both slots are still taken
+        assertEquals(1, scheduler.getQueuedCount());
+
+        scheduler.finished(resumedRun, false);
+        assertFalse(scheduler.contains(resumedRun.getUrl()));
+        assertEquals(5, started.size());
+        assertEquals(0, scheduler.getQueuedCount());
+    }
+}
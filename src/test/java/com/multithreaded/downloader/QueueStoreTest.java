@@ -0,0 +1,112 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class QueueStoreTest {
+
+    private static final String DIR = "/downloads";
+
+    @TempDir
+    Path directory;
+
+    private static QueueStore open(Path directory) throws IOException {
+        return QueueStore.open(directory, e -> { });       // close() throws the failure
+    }
+
+    private static QueueStore.Entry queued(String url, DownloadPriority priority) {
+        return new QueueStore.Entry(url, DIR, priority, false);
+    }
+
+    private static QueueStore.Entry running(String url, DownloadPriority priority) {
+        return new QueueStore.Entry(url, DIR, priority, true);
+    }
+
+    @Test
+    void keepsStartedDownloadsRunning() throws IOException {
+        try (QueueStore store = open(directory)) {
+            store.queued("http://host/a", DIR, DownloadPriority.HIGH);
+            store.queued("http://host/b", DIR, DownloadPriority.NORMAL);
+            store.queued("http://host/c", DIR, DownloadPriority.NORMAL);
+            store.started("http://host/a");
+            store.started("http://host/c");
+            store.queued("http://host/c", DIR, DownloadPriority.NORMAL);     // Paused
+        }
+
+        try (QueueStore store = open(directory)) {
+            assertEquals(List.of(running("http://host/a", DownloadPriority.HIGH),
+                    queued("http://host/b", DownloadPriority.NORMAL),
+                    queued("http://host/c", DownloadPriority.NORMAL)), store.recovered());
+        }
+    }
+
+    @Test
+    void cutsATornLastRecord() throws IOException {
+        try (QueueStore store = open(directory)) {
+            store.queued("http://host/a", DIR, DownloadPriority.NORMAL);
+            store.queued("http://host/b", DIR, DownloadPriority.NORMAL);
+        }
+        Path log = directory.resolve("queue-0.log");
+        try (FileChannel channel = FileChannel.open(log, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+        }
+
+        try (QueueStore store = open(directory)) {
+            assertEquals(List.of(queued("http://host/a", DownloadPriority.NORMAL)), store.recovered());
+            store.queued("http://host/c", DIR, DownloadPriority.NORMAL);
+        }
+
+        // Records written after the cut are not hidden behind the torn one
+        try (QueueStore store = open(directory)) {
+            assertEquals(List.of(queued("http://host/a", DownloadPriority.NORMAL),
+                    queued("http://host/c", DownloadPriority.NORMAL)), store.recovered());
+        }
+    }
+
+    @Test
+    void recoversFromACrashDuringCompaction() throws IOException, InterruptedException {
+        // Enough transitions to make the store write a snapshot and start queue-1.log
+        String filler = "http://host/" + "x".repeat(2000);
+        try (QueueStore store = open(directory)) {
+            store.queued("http://host/a", DIR, DownloadPriority.HIGH);
+            store.queued("http://host/b", DIR, DownloadPriority.NORMAL);
+            store.started("http://host/a");
+            for (int i = 0; i < 1500; i++) {
+                store.queued(filler + i, DIR, DownloadPriority.NORMAL);
+                store.removed(filler + i);
+            }
+            for (int i = 0; i < 500 && Files.exists(directory.resolve("queue-0.log")); i++) {
+                Thread.sleep(10);
+            }
+        }
+        assertTrue(Files.exists(directory.resolve("queue.snapshot")));
+        assertFalse(Files.exists(directory.resolve("queue-0.log")));
+
+        // The next compaction got as far as its new log: the old snapshot and both logs are left
+        Path next = directory.resolve("next");
+        try (QueueStore store = open(next)) {
+            store.removed("http://host/b");
+            store.queued("http://host/c", DIR, DownloadPriority.NORMAL);
+        }
+        Files.move(next.resolve("queue-0.log"), directory.resolve("queue-2.log"));
+        Files.write(directory.resolve("queue.snapshot.tmp"), new byte[]{1, 2, 3});
+
+        try (QueueStore store = open(directory)) {
+            assertEquals(List.of(running("http://host/a", DownloadPriority.HIGH),
+                    queued("http://host/c", DownloadPriority.NORMAL)), store.recovered());
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.multithreaded.downloader;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TransferRateTest {
+
+    private static final long SECOND = 1_000_000_000L;
+
+    @Test
+    void averagesOverTheWholeWindow() {
+        TransferRate rate = new TransferRate(3);
+        rate.sample(0, 0);
+        rate.sample(100, SECOND);
+        rate.sample(300, 2 * SECOND);
+        assertEquals(150, rate.getBytesPerSecond());
+
+        rate.sample(300, 3 * SECOND);                       // The first sample drops out of the window
+        assertEquals(100, rate.getBytesPerSecond());
+    }
+
+    @Test
+    void handlesWindowsOfMoreThanNineGigabytes() {
+        TransferRate rate = new TransferRate(2);
+        rate.sample(0, 0);
+        rate.sample(20_000_000_000L, 10 * SECOND);
+        assertEquals(2_000_000_000L, rate.getBytesPerSecond());
+    }
+}